@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration;
+
+import com.google.common.base.Strings;
+import com.quandoo.lib.elasticsearchmigration.model.input.MigrationType;
+import com.quandoo.lib.elasticsearchmigration.service.impl.NodeRoleSelector;
+import com.quandoo.lib.elasticsearchmigration.service.impl.NodeSniffer;
+import com.quandoo.lib.elasticsearchmigration.service.impl.SniffOnFailureListener;
+import lombok.Getter;
+import org.apache.http.Header;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.message.BasicHeader;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestClientBuilder;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Clients created from an {@link ElasticsearchConfig}, together with the sniffer updating their nodes
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+@Getter
+class ElasticsearchClients implements Closeable {
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final Map<MigrationType, RestClient> migrationTypeClients;
+    private final Optional<NodeSniffer> nodeSniffer;
+
+    ElasticsearchClients(final ElasticsearchConfig elasticsearchConfig) {
+        final SniffOnFailureListener sniffOnFailureListener = new SniffOnFailureListener();
+        this.restHighLevelClient = new RestHighLevelClient(createRestClientBuilder(elasticsearchConfig, RequestTimeouts.builder().build(), sniffOnFailureListener));
+        this.migrationTypeClients = createMigrationTypeClients(elasticsearchConfig, sniffOnFailureListener);
+        this.nodeSniffer = elasticsearchConfig.getSniff() ?
+                Optional.of(createNodeSniffer(elasticsearchConfig, sniffOnFailureListener)) :
+                Optional.empty();
+    }
+
+    /**
+     * The low level client in 7.x has no per request timeouts, so every distinct override gets a client of its own
+     */
+    private static Map<MigrationType, RestClient> createMigrationTypeClients(final ElasticsearchConfig elasticsearchConfig,
+                                                                            final SniffOnFailureListener sniffOnFailureListener) {
+        final Map<RequestTimeouts, RestClient> clients = new HashMap<>();
+        final Map<MigrationType, RestClient> migrationTypeClients = new EnumMap<>(MigrationType.class);
+        elasticsearchConfig.getTimeoutOverrides().forEach((migrationType, requestTimeouts) -> migrationTypeClients.put(
+                migrationType,
+                clients.computeIfAbsent(requestTimeouts, e -> createRestClientBuilder(elasticsearchConfig, e, sniffOnFailureListener).build())
+        ));
+
+        return Collections.unmodifiableMap(migrationTypeClients);
+    }
+
+    private NodeSniffer createNodeSniffer(final ElasticsearchConfig elasticsearchConfig, final SniffOnFailureListener sniffOnFailureListener) {
+        final Set<RestClient> restClients = new HashSet<>(migrationTypeClients.values());
+        restClients.add(restHighLevelClient.getLowLevelClient());
+        final NodeSniffer sniffer = new NodeSniffer(
+                restHighLevelClient.getLowLevelClient(),
+                restClients,
+                elasticsearchConfig.getUrls().iterator().next().getProtocol(),
+                elasticsearchConfig.getSniffIntervalInMillis(),
+                elasticsearchConfig.getSniffAfterFailureDelayInMillis()
+        );
+        sniffOnFailureListener.setNodeSniffer(sniffer);
+        sniffer.start();
+
+        return sniffer;
+    }
+
+    private static RestClientBuilder createRestClientBuilder(final ElasticsearchConfig elasticsearchConfig,
+                                                             final RequestTimeouts requestTimeouts,
+                                                             final SniffOnFailureListener sniffOnFailureListener) {
+        final RestClientBuilder builder = RestClient.builder(
+                elasticsearchConfig.getUrls().stream().map(e -> new HttpHost(e.getHost(), e.getPort(), e.getProtocol())).distinct().toArray(HttpHost[]::new)
+        );
+
+        builder.setHttpClientConfigCallback(httpClientBuilder -> {
+            if (!Strings.isNullOrEmpty(elasticsearchConfig.getUsername())) {
+                final CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+                credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(elasticsearchConfig.getUsername(), elasticsearchConfig.getPassword()));
+                httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+            }
+            if (elasticsearchConfig.getKeepAliveInMillis() != null) {
+                final long keepAliveInMillis = elasticsearchConfig.getKeepAliveInMillis();
+                httpClientBuilder.setKeepAliveStrategy((response, context) -> keepAliveInMillis);
+            }
+            if (elasticsearchConfig.getTcpKeepAlive()) {
+                httpClientBuilder.setDefaultIOReactorConfig(IOReactorConfig.custom().setSoKeepAlive(true).build());
+            }
+
+            return httpClientBuilder
+                    .setMaxConnPerRoute(elasticsearchConfig.getMaxConnectionsPerRoute())
+                    .setMaxConnTotal(elasticsearchConfig.getMaxConnectionsTotal());
+        });
+
+        builder.setRequestConfigCallback(requestConfigBuilder -> {
+            requestConfigBuilder
+                    .setConnectTimeout(Optional.ofNullable(requestTimeouts.getConnectTimeoutInMillis()).orElse(elasticsearchConfig.getConnectTimeoutInMillis()))
+                    .setSocketTimeout(Optional.ofNullable(requestTimeouts.getSocketTimeoutInMillis()).orElse(elasticsearchConfig.getSocketTimeoutInMillis()));
+            final Integer connectionRequestTimeoutInMillis = Optional.ofNullable(requestTimeouts.getConnectionRequestTimeoutInMillis())
+                    .orElse(elasticsearchConfig.getConnectionRequestTimeoutInMillis());
+            if (connectionRequestTimeoutInMillis != null) {
+                requestConfigBuilder.setConnectionRequestTimeout(connectionRequestTimeoutInMillis);
+            }
+            return requestConfigBuilder;
+        });
+
+        builder.setDefaultHeaders(elasticsearchConfig.getHeaders().entries().stream().map(e -> new BasicHeader(e.getKey(), e.getValue())).toArray(Header[]::new));
+
+        if (elasticsearchConfig.getPathPrefix() != null) {
+            builder.setPathPrefix(elasticsearchConfig.getPathPrefix());
+        }
+
+        if (elasticsearchConfig.getSniff()) {
+            builder.setNodeSelector(new NodeRoleSelector(elasticsearchConfig.getSniffNodeRoles()));
+            builder.setFailureListener(sniffOnFailureListener);
+        }
+
+        return builder;
+    }
+
+    @Override
+    public void close() throws IOException {
+        nodeSniffer.ifPresent(NodeSniffer::close);
+        try {
+            restHighLevelClient.close();
+        } finally {
+            // Types with the same timeouts share a client
+            for (RestClient client : new HashSet<>(migrationTypeClients.values())) {
+                client.close();
+            }
+        }
+    }
+}
@@ -18,11 +18,17 @@ package com.quandoo.lib.elasticsearchmigration;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.quandoo.lib.elasticsearchmigration.model.es.NodeRole;
+import com.quandoo.lib.elasticsearchmigration.model.es.WireFormat;
+import com.quandoo.lib.elasticsearchmigration.model.input.MigrationType;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.NonNull;
+import org.elasticsearch.client.RestClientBuilder;
 
 import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -43,6 +49,77 @@ public class ElasticsearchConfig {
     @Builder.Default
     private final Multimap<String, String> headers = HashMultimap.create();
 
+    @NonNull
+    @Builder.Default
+    private final WireFormat wireFormat = WireFormat.JSON;
+
+    @NonNull
+    @Builder.Default
+    private final Integer maxConnectionsPerRoute = RestClientBuilder.DEFAULT_MAX_CONN_PER_ROUTE;
+
+    @NonNull
+    @Builder.Default
+    private final Integer maxConnectionsTotal = RestClientBuilder.DEFAULT_MAX_CONN_TOTAL;
+
+    @NonNull
+    @Builder.Default
+    private final Integer connectTimeoutInMillis = RestClientBuilder.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+
+    @NonNull
+    @Builder.Default
+    private final Integer socketTimeoutInMillis = RestClientBuilder.DEFAULT_SOCKET_TIMEOUT_MILLIS;
+
+    /**
+     * Maximum time to wait for a pooled connection, not limited if not set
+     */
+    private final Integer connectionRequestTimeoutInMillis;
+
+    /**
+     * Timeouts of the requests of single changes of the given types, e.g. a longer socket timeout for REINDEX
+     */
+    @NonNull
+    @Builder.Default
+    private final Map<MigrationType, RequestTimeouts> timeoutOverrides = Collections.emptyMap();
+
+    @NonNull
+    @Builder.Default
+    private final Boolean compressRequests = false;
+
+    @NonNull
+    @Builder.Default
+    private final Integer compressionThresholdInBytes = 1024;
+
+    /**
+     * Time idle connections are kept open, as long as the server allows if not set
+     */
+    private final Integer keepAliveInMillis;
+
+    @NonNull
+    @Builder.Default
+    private final Boolean tcpKeepAlive = false;
+
+    /**
+     * Discover the nodes of the cluster from the given urls and spread the requests over them
+     */
+    @NonNull
+    @Builder.Default
+    private final Boolean sniff = false;
+
+    @NonNull
+    @Builder.Default
+    private final Integer sniffIntervalInMillis = 300000;
+
+    @NonNull
+    @Builder.Default
+    private final Integer sniffAfterFailureDelayInMillis = 60000;
+
+    /**
+     * Roles of the discovered nodes which receive requests, all but dedicated master nodes by default
+     */
+    @NonNull
+    @Builder.Default
+    private final Set<NodeRole> sniffNodeRoles = Sets.immutableEnumSet(NodeRole.DATA, NodeRole.INGEST, NodeRole.COORDINATING_ONLY);
+
     public static ElasticsearchConfigBuilder builder(@NonNull URL... urls) {
         return hiddenBuilder().urls(Sets.newHashSet(urls));
     }
@@ -15,79 +15,119 @@
  */
 package com.quandoo.lib.elasticsearchmigration;
 
-import com.google.common.base.Strings;
+import com.google.common.base.Stopwatch;
+import com.quandoo.lib.elasticsearchmigration.model.es.MigrationStepRecord;
+import com.quandoo.lib.elasticsearchmigration.model.input.MigrationType;
 import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSet;
-import com.quandoo.lib.elasticsearchmigration.service.MigrationClient;
+import com.quandoo.lib.elasticsearchmigration.service.MigrationMetrics;
 import com.quandoo.lib.elasticsearchmigration.service.MigrationSetProvider;
+import com.quandoo.lib.elasticsearchmigration.service.impl.BaselineGenerator;
+import com.quandoo.lib.elasticsearchmigration.service.impl.BundleMigrationSetProvider;
 import com.quandoo.lib.elasticsearchmigration.service.impl.DefaultMigrationClient;
 import com.quandoo.lib.elasticsearchmigration.service.impl.YamlDirectoryMigrationSetProvider;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.http.Header;
-import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
-import org.apache.http.message.BasicHeader;
 import org.elasticsearch.client.RestClient;
-import org.elasticsearch.client.RestClientBuilder;
 import org.elasticsearch.client.RestHighLevelClient;
 
-import java.util.stream.Collectors;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Closing it releases the connections of the clients it created, a client passed in stays open.
+ *
  * @author Emir Dizdarevic
  * @since 1.0.0
  */
 @Slf4j
-public class ElasticsearchMigration {
+public class ElasticsearchMigration implements AutoCloseable {
 
     private final ElasticsearchMigrationConfig elasticsearchMigrationConfig;
-    private final MigrationClient migrationClient;
+    private final DefaultMigrationClient migrationClient;
     private final MigrationSetProvider migrationSetProvider;
+    private final RestHighLevelClient restHighLevelClient;
+    private final Optional<ElasticsearchClients> ownedClients;
 
     public ElasticsearchMigration(@NonNull final ElasticsearchMigrationConfig elasticsearchMigrationConfig) {
-        this.elasticsearchMigrationConfig = elasticsearchMigrationConfig;
-        this.migrationClient = new DefaultMigrationClient(
-                elasticsearchMigrationConfig.getIdentifier(),
-                createElasticsearchClient(elasticsearchMigrationConfig.getElasticsearchConfig()),
-                elasticsearchMigrationConfig.getIgnorePreviousFailures(),
-                elasticsearchMigrationConfig.getAllowOlderVersions(),
-                elasticsearchMigrationConfig.getBackoffPeriodInMillis(),
-                elasticsearchMigrationConfig.getRetryCount()
-        );
-        this.migrationSetProvider = new YamlDirectoryMigrationSetProvider();
+        this(elasticsearchMigrationConfig, new ElasticsearchClients(elasticsearchMigrationConfig.getElasticsearchConfig()));
     }
 
-    private RestHighLevelClient createElasticsearchClient(ElasticsearchConfig elasticsearchConfig) {
+    /**
+     * Uses the given client, which is neither configured nor closed by this class. Only the wire format and the
+     * compression settings of the {@link ElasticsearchConfig} apply.
+     *
+     * @since 1.4.0
+     */
+    public ElasticsearchMigration(@NonNull final ElasticsearchMigrationConfig elasticsearchMigrationConfig, @NonNull final RestHighLevelClient restHighLevelClient) {
+        this(elasticsearchMigrationConfig, restHighLevelClient, Collections.emptyMap(), Optional.empty());
+    }
 
+    private ElasticsearchMigration(final ElasticsearchMigrationConfig elasticsearchMigrationConfig, final ElasticsearchClients elasticsearchClients) {
+        this(elasticsearchMigrationConfig, elasticsearchClients.getRestHighLevelClient(), elasticsearchClients.getMigrationTypeClients(), Optional.of(elasticsearchClients));
+    }
 
-        final RestClientBuilder builder = RestClient.builder(
-                elasticsearchConfig.getUrls().stream().map(e -> new HttpHost(e.getHost(), e.getPort(), e.getProtocol())).distinct().toArray(HttpHost[]::new)
+    private ElasticsearchMigration(final ElasticsearchMigrationConfig elasticsearchMigrationConfig,
+                                   final RestHighLevelClient restHighLevelClient,
+                                   final Map<MigrationType, RestClient> migrationTypeClients,
+                                   final Optional<ElasticsearchClients> ownedClients) {
+        this.elasticsearchMigrationConfig = elasticsearchMigrationConfig;
+        this.restHighLevelClient = restHighLevelClient;
+        this.ownedClients = ownedClients;
+        this.migrationClient = new DefaultMigrationClient(restHighLevelClient, elasticsearchMigrationConfig, migrationTypeClients);
+        final MigrationSetProvider yamlDirectoryMigrationSetProvider = new YamlDirectoryMigrationSetProvider(
+                elasticsearchMigrationConfig.getMetrics(),
+                elasticsearchMigrationConfig.getParserParallelism(),
+                elasticsearchMigrationConfig.getLazyParsing()
         );
-
-        if (!Strings.isNullOrEmpty(elasticsearchConfig.getUsername())) {
-            final CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-            credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(elasticsearchConfig.getUsername(), elasticsearchConfig.getPassword()));
-            builder.setHttpClientConfigCallback(httpClientBuilder -> httpClientBuilder
-                    .setDefaultCredentialsProvider(credentialsProvider));
-        }
-
-        builder.setDefaultHeaders(elasticsearchConfig.getHeaders().entries().stream().map(e -> new BasicHeader(e.getKey(), e.getValue())).toArray(Header[]::new));
-
-        if (elasticsearchConfig.getPathPrefix() != null) {
-            builder.setPathPrefix(elasticsearchConfig.getPathPrefix());
-        }
-
-        return new RestHighLevelClient(builder);
+        this.migrationSetProvider = elasticsearchMigrationConfig.getPrecompiledBundle() ?
+                new BundleMigrationSetProvider(elasticsearchMigrationConfig.getMetrics(), yamlDirectoryMigrationSetProvider) :
+                yamlDirectoryMigrationSetProvider;
     }
 
     public void migrate() {
         log.info("Starting ES schema migration...");
+        final Stopwatch total = Stopwatch.createStarted();
         final MigrationSet migrationSet = migrationSetProvider.getMigrationSet(elasticsearchMigrationConfig.getBasePackage());
         migrationClient.applyMigrationSet(migrationSet);
+        elasticsearchMigrationConfig.getMetrics().recordPhase(MigrationMetrics.Phase.TOTAL, Duration.ofNanos(total.elapsed(TimeUnit.NANOSECONDS)));
         log.info("Finished ES schema migration");
     }
+
+    /**
+     * @return the slowest recorded migration steps of all identifiers in the cluster, slowest first
+     */
+    public List<MigrationStepRecord> getSlowestSteps(final int size) {
+        return migrationClient.getSlowestSteps(size);
+    }
+
+    /**
+     * Generates the content of a baseline file (B{version}__{name}.yaml) from the current state of the cluster.
+     *
+     * @see BaselineGenerator#generate(Collection, Collection, Collection)
+     */
+    public String generateBaseline(@NonNull final Collection<String> indices, @NonNull final Collection<String> templates, @NonNull final Collection<String> pipelines) {
+        return new BaselineGenerator(restHighLevelClient).generate(indices, templates, pipelines);
+    }
+
+    /**
+     * Stops the background threads, closes the clients created from the {@link ElasticsearchConfig} and stops sniffing
+     *
+     * @since 1.4.0
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            migrationClient.close();
+        } finally {
+            if (ownedClients.isPresent()) {
+                ownedClients.get().close();
+            }
+        }
+    }
 }
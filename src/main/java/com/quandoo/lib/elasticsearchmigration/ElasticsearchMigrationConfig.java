@@ -15,6 +15,9 @@
  */
 package com.quandoo.lib.elasticsearchmigration;
 
+import com.quandoo.lib.elasticsearchmigration.model.migration.RefreshPolicy;
+import com.quandoo.lib.elasticsearchmigration.service.MigrationMetrics;
+import com.quandoo.lib.elasticsearchmigration.service.impl.NoopMigrationMetrics;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.NonNull;
@@ -44,6 +47,46 @@ public class ElasticsearchMigrationConfig {
     @NonNull
     @Builder.Default
     private final Integer retryCount = 5;
+    @NonNull
+    @Builder.Default
+    private final Long lockLeaseInMillis = 60000L;
+    @NonNull
+    @Builder.Default
+    private final Integer bulkMaxActions = 1000;
+    @NonNull
+    @Builder.Default
+    private final Long bulkMaxSizeInBytes = 5L * 1024 * 1024;
+    @NonNull
+    @Builder.Default
+    private final Integer bulkRetryCount = 3;
+    @NonNull
+    @Builder.Default
+    private final Integer bulkLoadParallelism = 2;
+    @NonNull
+    @Builder.Default
+    private final RefreshPolicy refreshPolicy = RefreshPolicy.WAIT_FOR;
+    @NonNull
+    @Builder.Default
+    private final Integer maxConcurrentMigrations = 1;
+    /**
+     * Number of applied versions whose history entries are written together while bootstrapping an empty history. Only
+     * versions whose changes can be applied again are buffered, the others are recorded before they are applied.
+     */
+    @NonNull
+    @Builder.Default
+    private final Integer bootstrapHistoryBatchSize = 1;
+    @NonNull
+    @Builder.Default
+    private final MigrationMetrics metrics = new NoopMigrationMetrics();
+    @NonNull
+    @Builder.Default
+    private final Boolean precompiledBundle = false;
+    @NonNull
+    @Builder.Default
+    private final Integer parserParallelism = Runtime.getRuntime().availableProcessors();
+    @NonNull
+    @Builder.Default
+    private final Boolean lazyParsing = false;
 
     @NonNull
     private final ElasticsearchConfig elasticsearchConfig;
@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * Timeouts of the requests of one migration type. Timeouts which aren't set are taken from the {@link ElasticsearchConfig}.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+@Getter
+@Builder
+@EqualsAndHashCode
+public class RequestTimeouts {
+
+    private final Integer connectTimeoutInMillis;
+    private final Integer socketTimeoutInMillis;
+    private final Integer connectionRequestTimeoutInMillis;
+}
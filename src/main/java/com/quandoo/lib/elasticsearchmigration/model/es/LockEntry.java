@@ -23,6 +23,7 @@ import lombok.NoArgsConstructor;
 import lombok.NonNull;
 
 import java.time.Instant;
+import java.util.Optional;
 
 /**
  * @author Emir Dizdarevic
@@ -36,4 +37,22 @@ public class LockEntry {
     @NonNull
     @JsonProperty(LockEntryMeta.CREATED_FIELD)
     private Instant created;
+    @JsonProperty(LockEntryMeta.OWNER_FIELD)
+    private String owner;
+    @JsonProperty(LockEntryMeta.HOST_FIELD)
+    private String host;
+    @JsonProperty(LockEntryMeta.EXPIRES_FIELD)
+    private Instant expires;
+
+    public Optional<String> getOwner() {
+        return Optional.ofNullable(owner);
+    }
+
+    public Optional<String> getHost() {
+        return Optional.ofNullable(host);
+    }
+
+    public Optional<Instant> getExpires() {
+        return Optional.ofNullable(expires);
+    }
 }
@@ -21,8 +21,10 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
+import lombok.experimental.Wither;
 
 import java.time.Instant;
+import java.util.List;
 
 /**
  * @author Emir Dizdarevic
@@ -54,4 +56,23 @@ public class MigrationEntry {
     @NonNull
     @JsonProperty(MigrationEntryMeta.CREATED_FIELD)
     private Instant created;
+
+    @JsonProperty(MigrationEntryMeta.CURRENT_STEP_FIELD)
+    private Integer currentStep;
+    @JsonProperty(MigrationEntryMeta.TASK_ID_FIELD)
+    private String taskId;
+    @JsonProperty(MigrationEntryMeta.VERSION_SORT_KEY_FIELD)
+    private String versionSortKey;
+    @JsonProperty(MigrationEntryMeta.BASELINE_FIELD)
+    private Boolean baseline;
+    @JsonProperty(MigrationEntryMeta.DURATION_IN_MILLIS_FIELD)
+    private Long durationInMillis;
+    @JsonProperty(MigrationEntryMeta.STEPS_FIELD)
+    private List<MigrationStep> steps;
+    /**
+     * Checksum of the unparsed changeset file, only recorded for changesets without referenced data files
+     */
+    @Wither
+    @JsonProperty(MigrationEntryMeta.RAW_SHA_256_CHECKSUM_FIELD)
+    private String rawSha256Checksum;
 }
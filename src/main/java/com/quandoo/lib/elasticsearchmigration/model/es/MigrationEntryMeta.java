@@ -30,7 +30,31 @@ public class MigrationEntryMeta {
     public static final String VERSION_FIELD = "version";
     public static final String NAME_FIELD = "name";
     public static final String SHA_256_CHECKSUM_FIELD = "sha256Checksum";
+    public static final String RAW_SHA_256_CHECKSUM_FIELD = "rawSha256Checksum";
     public static final String STATE_FIELD = "state";
     public static final String FAUILURE_MESSAGE_FIELD = "failureMessage";
     public static final String CREATED_FIELD = "created";
+    public static final String CURRENT_STEP_FIELD = "currentStep";
+    public static final String TASK_ID_FIELD = "taskId";
+    public static final String VERSION_SORT_KEY_FIELD = "versionSortKey";
+    public static final String BASELINE_FIELD = "baseline";
+    public static final String DURATION_IN_MILLIS_FIELD = "durationInMillis";
+    public static final String STEPS_FIELD = "steps";
+
+    public static final String STEP_FIELD = "step";
+    public static final String STEP_COUNT_FIELD = "stepCount";
+    public static final String TYPE_FIELD = "type";
+    public static final String STARTED_FIELD = "started";
+    public static final String FINISHED_FIELD = "finished";
+    public static final String REQUEST_BYTES_FIELD = "requestBytes";
+    public static final String RESPONSE_BYTES_FIELD = "responseBytes";
+    public static final String TOOK_FIELD = "took";
+    public static final String RETRIES_FIELD = "retries";
+
+    public static final String HEAD_ID_SUFFIX = "-head";
+    public static final String LATEST_VERSION_FIELD = "latestVersion";
+    public static final String VERSION_COUNT_FIELD = "versionCount";
+    public static final String CHAIN_HASH_FIELD = "chainHash";
+    public static final String RAW_CHAIN_HASH_FIELD = "rawChainHash";
+    public static final String UPDATED_FIELD = "updated";
 }
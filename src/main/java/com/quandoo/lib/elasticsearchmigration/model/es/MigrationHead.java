@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.es;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+
+import java.time.Instant;
+
+/**
+ * Summary of the migration history of one identifier, stored next to the {@link MigrationEntry}s in the version index.
+ * The chain hash covers version, name and checksum of all successfully applied versions in order. The raw chain hash
+ * does the same with the checksums of the unparsed files and is only present if all of those versions recorded one.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class MigrationHead {
+
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.IDENTIFIER_FIELD)
+    private String identifier;
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.STATE_FIELD)
+    private State state;
+    @JsonProperty(MigrationEntryMeta.LATEST_VERSION_FIELD)
+    private String latestVersion;
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.VERSION_COUNT_FIELD)
+    private Integer versionCount;
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.CHAIN_HASH_FIELD)
+    private String chainHash;
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.UPDATED_FIELD)
+    private Instant updated;
+    @JsonProperty(MigrationEntryMeta.RAW_CHAIN_HASH_FIELD)
+    private String rawChainHash;
+}
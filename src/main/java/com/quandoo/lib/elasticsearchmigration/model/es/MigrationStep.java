@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.es;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+
+import java.time.Instant;
+
+/**
+ * Execution statistics of one step of a version. Consecutive document changes sent together with _bulk are recorded
+ * as one step of type BULK covering stepCount steps. took is only set if Elasticsearch reports it.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class MigrationStep {
+
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.STEP_FIELD)
+    private Integer step;
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.STEP_COUNT_FIELD)
+    private Integer stepCount;
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.TYPE_FIELD)
+    private String type;
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.STARTED_FIELD)
+    private Instant started;
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.FINISHED_FIELD)
+    private Instant finished;
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.DURATION_IN_MILLIS_FIELD)
+    private Long durationInMillis;
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.REQUEST_BYTES_FIELD)
+    private Long requestBytes;
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.RESPONSE_BYTES_FIELD)
+    private Long responseBytes;
+    @JsonProperty(MigrationEntryMeta.TOOK_FIELD)
+    private Long took;
+    @NonNull
+    @JsonProperty(MigrationEntryMeta.RETRIES_FIELD)
+    private Integer retries;
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.es;
+
+/**
+ * Roles of discovered nodes which receive requests. A node matches if it has any of the selected roles.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public enum NodeRole {
+    MASTER,
+    DATA,
+    INGEST,
+    /**
+     * Nodes which are neither master eligible nor data nor ingest nodes
+     */
+    COORDINATING_ONLY
+}
@@ -44,7 +44,8 @@ import lombok.NoArgsConstructor;
         @JsonSubTypes.Type(value = CreateIngestPipelineMigrationFileEntry.class, name = "CREATE_INGEST_PIPELINE"),
         @JsonSubTypes.Type(value = DeleteIngestPipelineMigrationFileEntry.class, name = "DELETE_INGEST_PIPELINE"),
         @JsonSubTypes.Type(value = ReindexMigrationFileEntry.class, name = "REINDEX"),
-        @JsonSubTypes.Type(value = UpdateIndexSettingsMigrationFileEntry.class, name = "UPDATE_INDEX_SETTINGS")
+        @JsonSubTypes.Type(value = UpdateIndexSettingsMigrationFileEntry.class, name = "UPDATE_INDEX_SETTINGS"),
+        @JsonSubTypes.Type(value = BulkLoadMigrationFileEntry.class, name = "BULK_LOAD")
 })
 @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.EXISTING_PROPERTY, visible = true, property = "type")
 public abstract class BaseMigrationFileEntry {
@@ -37,4 +37,10 @@ public class ChecksumedMigrationFile {
 
     @NonNull
     private String sha256Checksum;
+
+    /**
+     * Checksum of the file as it is, before parsing and normalization
+     */
+    @NonNull
+    private String rawSha256Checksum;
 }
@@ -32,5 +32,6 @@ public enum MigrationType {
     CREATE_INGEST_PIPELINE,
     DELETE_INGEST_PIPELINE,
     REINDEX,
-    UPDATE_INDEX_SETTINGS
+    UPDATE_INDEX_SETTINGS,
+    BULK_LOAD
 }
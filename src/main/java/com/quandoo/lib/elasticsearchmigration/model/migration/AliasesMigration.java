@@ -15,13 +15,16 @@
  */
 package com.quandoo.lib.elasticsearchmigration.model.migration;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Multimap;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.NonNull;
 
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 /**
@@ -29,11 +32,15 @@ import java.util.Map;
  * @since 1.2.0
  */
 @EqualsAndHashCode
-@AllArgsConstructor
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
 public class AliasesMigration implements Migration {
 
     @NonNull
-    private final String definition;
+    private final byte[] definition;
+
+    public AliasesMigration(@NonNull final String definition) {
+        this(definition.getBytes(Charsets.UTF_8));
+    }
 
     @Override
     public Method getMethod() {
@@ -57,6 +64,11 @@ public class AliasesMigration implements Migration {
 
     @Override
     public String getBody() {
-        return definition;
+        return new String(definition, Charsets.UTF_8);
+    }
+
+    @Override
+    public ByteBuffer getBodyBytes() {
+        return ByteBuffer.wrap(definition);
     }
 }
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.migration;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multimap;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Loads the documents of a NDJSON file (one document per line, gzipped if the file name ends with .gz) into an index.
+ * The file is streamed to the _bulk endpoint, so {@link #getBody()} is always empty.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+public class BulkLoadMigration implements Migration {
+
+    @NonNull
+    private final String index;
+    @NonNull
+    private final String file;
+    @NonNull
+    private final Optional<String> idField;
+    @NonNull
+    private final Optional<OpType> opType;
+
+    @Override
+    public Method getMethod() {
+        return Method.POST;
+    }
+
+    @Override
+    public String getUrl() {
+        return "/_bulk";
+    }
+
+    @Override
+    public Map<String, String> getParameters() {
+        return ImmutableMap.of();
+    }
+
+    @Override
+    public Multimap<String, String> getHeaders() {
+        return HashMultimap.create();
+    }
+
+    @Override
+    public String getBody() {
+        return "";
+    }
+}
@@ -15,15 +15,17 @@
  */
 package com.quandoo.lib.elasticsearchmigration.model.migration;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Multimap;
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.Option;
-import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.NonNull;
 
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.Optional;
 
@@ -32,13 +34,19 @@ import java.util.Optional;
  * @since 1.0.0
  */
 @EqualsAndHashCode
-@AllArgsConstructor
 public class CreateIndexMigration implements Migration {
 
     @NonNull
     private final String index;
     @NonNull
-    private final String definition;
+    private final byte[] definition;
+    private final String waitForActiveShards;
+
+    public CreateIndexMigration(@NonNull final String index, @NonNull final String definition) {
+        this.index = index;
+        this.definition = definition.getBytes(Charsets.UTF_8);
+        this.waitForActiveShards = getWaitForActiveShards(this.definition);
+    }
 
     @Override
     public Method getMethod() {
@@ -52,9 +60,8 @@ public class CreateIndexMigration implements Migration {
 
     @Override
     public Map<String, String> getParameters() {
-        final Integer numberOfReplicas = (Integer) Optional.ofNullable(JsonPath.parse(definition, com.jayway.jsonpath.Configuration.defaultConfiguration().addOptions(Option.SUPPRESS_EXCEPTIONS)).read("$.settings.number_of_replicas")).orElse(0) + 1;
         return ImmutableMap.of(
-                "wait_for_active_shards", numberOfReplicas.toString()
+                "wait_for_active_shards", waitForActiveShards
         );
     }
 
@@ -65,6 +72,20 @@ public class CreateIndexMigration implements Migration {
 
     @Override
     public String getBody() {
-        return definition;
+        return new String(definition, Charsets.UTF_8);
+    }
+
+    @Override
+    public ByteBuffer getBodyBytes() {
+        return ByteBuffer.wrap(definition);
+    }
+
+    private static String getWaitForActiveShards(final byte[] definition) {
+        final Integer numberOfReplicas = (Integer) Optional.ofNullable(
+                JsonPath.using(com.jayway.jsonpath.Configuration.defaultConfiguration().addOptions(Option.SUPPRESS_EXCEPTIONS))
+                        .parse(new ByteArrayInputStream(definition))
+                        .read("$.settings.number_of_replicas")
+        ).orElse(0) + 1;
+        return numberOfReplicas.toString();
     }
 }
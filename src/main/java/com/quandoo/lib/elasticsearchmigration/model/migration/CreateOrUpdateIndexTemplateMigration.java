@@ -15,13 +15,16 @@
  */
 package com.quandoo.lib.elasticsearchmigration.model.migration;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Multimap;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.NonNull;
 
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 /**
@@ -29,13 +32,17 @@ import java.util.Map;
  * @since 1.0.0
  */
 @EqualsAndHashCode
-@AllArgsConstructor
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
 public class CreateOrUpdateIndexTemplateMigration implements Migration {
 
     @NonNull
     private final String template;
     @NonNull
-    private final String definition;
+    private final byte[] definition;
+
+    public CreateOrUpdateIndexTemplateMigration(@NonNull final String template, @NonNull final String definition) {
+        this(template, definition.getBytes(Charsets.UTF_8));
+    }
 
     @Override
     public Method getMethod() {
@@ -59,6 +66,11 @@ public class CreateOrUpdateIndexTemplateMigration implements Migration {
 
     @Override
     public String getBody() {
-        return definition;
+        return new String(definition, Charsets.UTF_8);
+    }
+
+    @Override
+    public ByteBuffer getBodyBytes() {
+        return ByteBuffer.wrap(definition);
     }
 }
@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.migration;
+
+import com.google.common.base.Charsets;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+/**
+ * A migration that targets a single document and can therefore be sent as one item of a _bulk request.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public interface DocumentMigration extends Migration {
+
+    String getIndex();
+    Optional<String> getDocumentId();
+    OpType getOpType();
+    Optional<String> getDocument();
+
+    /**
+     * The UTF-8 encoded document, see {@link #getBodyBytes()}
+     */
+    default Optional<ByteBuffer> getDocumentBytes() {
+        return getDocument().map(e -> ByteBuffer.wrap(e.getBytes(Charsets.UTF_8)));
+    }
+}
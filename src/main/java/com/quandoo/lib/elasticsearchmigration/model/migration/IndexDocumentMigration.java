@@ -15,13 +15,16 @@
  */
 package com.quandoo.lib.elasticsearchmigration.model.migration;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Multimap;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.NonNull;
 
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.Optional;
 
@@ -30,8 +33,8 @@ import java.util.Optional;
  * @since 1.0.0
  */
 @EqualsAndHashCode
-@AllArgsConstructor
-public class IndexDocumentMigration implements Migration {
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class IndexDocumentMigration implements DocumentMigration {
 
     @NonNull
     private final String index;
@@ -40,7 +43,11 @@ public class IndexDocumentMigration implements Migration {
     @NonNull
     private final Optional<OpType> opType;
     @NonNull
-    private final String definition;
+    private final byte[] definition;
+
+    public IndexDocumentMigration(@NonNull final String index, @NonNull final Optional<String> id, @NonNull final Optional<OpType> opType, @NonNull final String definition) {
+        this(index, id, opType, definition.getBytes(Charsets.UTF_8));
+    }
 
     @Override
     public Method getMethod() {
@@ -67,6 +74,36 @@ public class IndexDocumentMigration implements Migration {
 
     @Override
     public String getBody() {
-        return definition;
+        return new String(definition, Charsets.UTF_8);
+    }
+
+    @Override
+    public ByteBuffer getBodyBytes() {
+        return ByteBuffer.wrap(definition);
+    }
+
+    @Override
+    public String getIndex() {
+        return index;
+    }
+
+    @Override
+    public Optional<String> getDocumentId() {
+        return id;
+    }
+
+    @Override
+    public OpType getOpType() {
+        return opType.orElse(OpType.CREATE);
+    }
+
+    @Override
+    public Optional<String> getDocument() {
+        return Optional.of(getBody());
+    }
+
+    @Override
+    public Optional<ByteBuffer> getDocumentBytes() {
+        return Optional.of(ByteBuffer.wrap(definition));
     }
 }
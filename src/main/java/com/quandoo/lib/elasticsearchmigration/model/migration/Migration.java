@@ -15,8 +15,10 @@
  */
 package com.quandoo.lib.elasticsearchmigration.model.migration;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.Multimap;
 
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 /**
@@ -30,4 +32,14 @@ public interface Migration {
     Map<String, String> getParameters();
     Multimap<String, String> getHeaders();
     String getBody();
+
+    /**
+     * The UTF-8 encoded body. The built-in migrations encode it once when they are created and return a buffer over
+     * that array, so it must not be modified.
+     *
+     * @since 1.4.0
+     */
+    default ByteBuffer getBodyBytes() {
+        return ByteBuffer.wrap(getBody().getBytes(Charsets.UTF_8));
+    }
 }
@@ -15,9 +15,14 @@
  */
 package com.quandoo.lib.elasticsearchmigration.model.migration;
 
+import com.google.common.base.Suppliers;
+import lombok.AccessLevel;
 import lombok.Getter;
+import lombok.NonNull;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.Optional;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -32,18 +37,39 @@ public class MigrationMeta {
 
     private static final Pattern VERSION_PATTERN = Pattern.compile("^([0-9]{1}(\\.{1}[0-9]+)*)$");
 
-    private final String sha256Checksum;
+    @Getter(AccessLevel.NONE)
+    private final Supplier<String> sha256Checksum;
     private final String version;
     private final String name;
+    /**
+     * Checksum of the unparsed changeset file, if known. Equal raw checksums imply equal normalized checksums.
+     */
+    private final Optional<String> rawSha256Checksum;
 
     public MigrationMeta(final String sha256Checksum, final String version, final String name) {
+        this(sha256Checksum, version, name, Optional.empty());
+    }
+
+    public MigrationMeta(final String sha256Checksum, final String version, final String name, @NonNull final Optional<String> rawSha256Checksum) {
+        this(() -> sha256Checksum, version, name, rawSha256Checksum);
         checkNotNull(StringUtils.trimToNull(sha256Checksum), "sha256Checksum must not be null");
+    }
+
+    /**
+     * @param sha256Checksum computes the normalized checksum on first use, e.g. by parsing the changeset file
+     */
+    public MigrationMeta(@NonNull final Supplier<String> sha256Checksum, final String version, final String name, @NonNull final Optional<String> rawSha256Checksum) {
         checkNotNull(StringUtils.trimToNull(version), "version must not be null");
         checkArgument(VERSION_PATTERN.matcher(version).matches(), "version must be a valid version number like 1.0.0");
         checkNotNull(StringUtils.trimToNull(name), "name must not be null");
 
-        this.sha256Checksum = sha256Checksum;
+        this.sha256Checksum = Suppliers.memoize(sha256Checksum::get);
         this.version = version;
         this.name = name;
+        this.rawSha256Checksum = rawSha256Checksum;
+    }
+
+    public String getSha256Checksum() {
+        return sha256Checksum.get();
     }
 }
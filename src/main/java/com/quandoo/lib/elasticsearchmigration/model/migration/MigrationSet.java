@@ -20,6 +20,7 @@ import lombok.Getter;
 import lombok.NonNull;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * @author Emir Dizdarevic
@@ -31,4 +32,13 @@ public class MigrationSet {
 
     @NonNull
     private final List<MigrationSetEntry> migrations;
+    /**
+     * Squashed snapshot of all versions up to and including its own version. Applied instead of them if the history is empty.
+     */
+    @NonNull
+    private final Optional<MigrationSetEntry> baseline;
+
+    public MigrationSet(final List<MigrationSetEntry> migrations) {
+        this(migrations, Optional.empty());
+    }
 }
@@ -15,22 +15,96 @@
  */
 package com.quandoo.lib.elasticsearchmigration.model.migration;
 
-import lombok.AllArgsConstructor;
-import lombok.Getter;
 import lombok.NonNull;
 
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * @author Emir Dizdarevic
  * @since 1.0.0
  */
-@Getter
-@AllArgsConstructor
 public class MigrationSetEntry {
 
-    @NonNull
-    private final List<Migration> migration;
-    @NonNull
+    private final ReleasableSupplier<List<Migration>> migration;
     private final MigrationMeta migrationMeta;
+    private final ReleasableSupplier<Optional<RefreshPolicy>> refreshPolicy;
+    private final Runnable releaseHook;
+
+    public MigrationSetEntry(@NonNull final List<Migration> migration, @NonNull final MigrationMeta migrationMeta, @NonNull final Optional<RefreshPolicy> refreshPolicy) {
+        this(() -> migration, migrationMeta, () -> refreshPolicy);
+    }
+
+    public MigrationSetEntry(final List<Migration> migration, final MigrationMeta migrationMeta) {
+        this(migration, migrationMeta, Optional.empty());
+    }
+
+    /**
+     * Entry whose migrations are only loaded when they are needed, i.e. when the version is applied
+     */
+    public MigrationSetEntry(@NonNull final Supplier<List<Migration>> migration, @NonNull final MigrationMeta migrationMeta, @NonNull final Supplier<Optional<RefreshPolicy>> refreshPolicy) {
+        this(migration, migrationMeta, refreshPolicy, () -> {
+        });
+    }
+
+    /**
+     * @param releaseHook called by {@link #release()}, e.g. to drop a parsed file the suppliers share
+     */
+    public MigrationSetEntry(@NonNull final Supplier<List<Migration>> migration,
+                             @NonNull final MigrationMeta migrationMeta,
+                             @NonNull final Supplier<Optional<RefreshPolicy>> refreshPolicy,
+                             @NonNull final Runnable releaseHook) {
+        this.migration = new ReleasableSupplier<>(migration);
+        this.migrationMeta = migrationMeta;
+        this.refreshPolicy = new ReleasableSupplier<>(refreshPolicy);
+        this.releaseHook = releaseHook;
+    }
+
+    public List<Migration> getMigration() {
+        return migration.get();
+    }
+
+    public MigrationMeta getMigrationMeta() {
+        return migrationMeta;
+    }
+
+    public Optional<RefreshPolicy> getRefreshPolicy() {
+        return refreshPolicy.get();
+    }
+
+    /**
+     * Drops the loaded migrations, so the definitions of a lazily loaded entry can be collected once it is applied.
+     * They are loaded again if they are needed later.
+     */
+    public void release() {
+        migration.release();
+        refreshPolicy.release();
+        releaseHook.run();
+    }
+
+    /**
+     * Loads the value once and keeps it until it is released. Concurrent callers wait for the one loading it.
+     */
+    private static final class ReleasableSupplier<T> implements Supplier<T> {
+
+        private final Supplier<T> delegate;
+        private T value;
+
+        private ReleasableSupplier(final Supplier<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public synchronized T get() {
+            if (value == null) {
+                value = delegate.get();
+            }
+            return value;
+        }
+
+        private synchronized void release() {
+            value = null;
+        }
+    }
 }
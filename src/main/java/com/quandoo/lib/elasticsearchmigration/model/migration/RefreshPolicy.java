@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.migration;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public enum RefreshPolicy {
+    /**
+     * Every document change waits until it is visible for search
+     */
+    WAIT_FOR,
+    /**
+     * Document changes don't wait for a refresh, the touched indices are refreshed once the whole version is applied
+     */
+    DEFERRED
+}
@@ -15,28 +15,53 @@
  */
 package com.quandoo.lib.elasticsearchmigration.model.migration;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
+import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.Option;
-import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.NonNull;
 
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * @author Emir Dizdarevic
  * @since 1.2.0
  */
 @EqualsAndHashCode
-@AllArgsConstructor
-public class ReindexMigration implements Migration {
+public class ReindexMigration implements SlicedMigration {
 
     @NonNull
-    private final String definition;
+    private final byte[] definition;
+    @NonNull
+    private final Optional<Integer> slices;
+    private final Set<String> sourceIndices;
+
+    public ReindexMigration(@NonNull final String definition, @NonNull final Optional<Integer> slices) {
+        this.definition = definition.getBytes(Charsets.UTF_8);
+        this.slices = slices;
+        this.sourceIndices = readSourceIndices(this.definition);
+    }
+
+    public ReindexMigration(final String definition) {
+        this(definition, Optional.empty());
+    }
+
+    private ReindexMigration(final ReindexMigration migration, final Optional<Integer> slices) {
+        this.definition = migration.definition;
+        this.slices = slices;
+        this.sourceIndices = migration.sourceIndices;
+    }
 
     @Override
     public Method getMethod() {
@@ -50,10 +75,11 @@ public class ReindexMigration implements Migration {
 
     @Override
     public Map<String, String> getParameters() {
-        return ImmutableMap.of(
-                "wait_for_completion", "true",
-                "refresh", "true"
-        );
+        final ImmutableMap.Builder<String, String> parameters = ImmutableMap.<String, String>builder()
+                .put("wait_for_completion", "false")
+                .put("refresh", "true");
+        slices.filter(e -> e > 1).ifPresent(e -> parameters.put("slices", e.toString()));
+        return parameters.build();
     }
 
     @Override
@@ -63,6 +89,44 @@ public class ReindexMigration implements Migration {
 
     @Override
     public String getBody() {
-        return definition;
+        return new String(definition, Charsets.UTF_8);
+    }
+
+    @Override
+    public ByteBuffer getBodyBytes() {
+        return ByteBuffer.wrap(definition);
+    }
+
+    @Override
+    public Set<String> getSourceIndices() {
+        return sourceIndices;
+    }
+
+    private static Set<String> readSourceIndices(final byte[] definition) {
+        final DocumentContext documentContext = JsonPath.using(com.jayway.jsonpath.Configuration.defaultConfiguration().addOptions(Option.SUPPRESS_EXCEPTIONS))
+                .parse(new ByteArrayInputStream(definition));
+        if (documentContext.read("$.source.remote") != null) {
+            return ImmutableSet.of();
+        }
+
+        final Object index = documentContext.read("$.source.index");
+        final ImmutableSet.Builder<String> sourceIndices = ImmutableSet.builder();
+        if (index instanceof String) {
+            sourceIndices.addAll(Splitter.on(',').trimResults().omitEmptyStrings().split((String) index));
+        } else if (index instanceof Collection) {
+            ((Collection<?>) index).forEach(e -> sourceIndices.add(e.toString()));
+        }
+
+        return sourceIndices.build();
+    }
+
+    @Override
+    public Optional<Integer> getSlices() {
+        return slices;
+    }
+
+    @Override
+    public ReindexMigration withSlices(final int slices) {
+        return new ReindexMigration(this, Optional.of(slices));
     }
 }
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.model.migration;
+
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * A migration which scrolls over source indices and can be split into parallel slices.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public interface SlicedMigration extends Migration {
+
+    /**
+     * @return the local source indices, aliases or patterns. Empty if the sources can't be resolved in this cluster (e.g. remote reindex).
+     */
+    Set<String> getSourceIndices();
+
+    /**
+     * @return the number of slices requested in the changeset
+     */
+    Optional<Integer> getSlices();
+
+    SlicedMigration withSlices(int slices);
+}
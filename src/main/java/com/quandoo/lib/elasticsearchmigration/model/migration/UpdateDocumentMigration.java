@@ -15,29 +15,37 @@
  */
 package com.quandoo.lib.elasticsearchmigration.model.migration;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Multimap;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.NonNull;
 
+import java.nio.ByteBuffer;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * @author Emir Dizdarevic
  * @since 1.0.0
  */
 @EqualsAndHashCode
-@AllArgsConstructor
-public class UpdateDocumentMigration implements Migration {
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class UpdateDocumentMigration implements DocumentMigration {
 
     @NonNull
     private final String index;
     @NonNull
     private final String id;
     @NonNull
-    private final String definition;
+    private final byte[] definition;
+
+    public UpdateDocumentMigration(@NonNull final String index, @NonNull final String id, @NonNull final String definition) {
+        this(index, id, definition.getBytes(Charsets.UTF_8));
+    }
 
     @Override
     public Method getMethod() {
@@ -63,6 +71,36 @@ public class UpdateDocumentMigration implements Migration {
 
     @Override
     public String getBody() {
-        return definition;
+        return new String(definition, Charsets.UTF_8);
+    }
+
+    @Override
+    public ByteBuffer getBodyBytes() {
+        return ByteBuffer.wrap(definition);
+    }
+
+    @Override
+    public String getIndex() {
+        return index;
+    }
+
+    @Override
+    public Optional<String> getDocumentId() {
+        return Optional.of(id);
+    }
+
+    @Override
+    public OpType getOpType() {
+        return OpType.UPDATE;
+    }
+
+    @Override
+    public Optional<String> getDocument() {
+        return Optional.of(getBody());
+    }
+
+    @Override
+    public Optional<ByteBuffer> getDocumentBytes() {
+        return Optional.of(ByteBuffer.wrap(definition));
     }
 }
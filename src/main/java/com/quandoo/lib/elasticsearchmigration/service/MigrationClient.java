@@ -15,8 +15,11 @@
  */
 package com.quandoo.lib.elasticsearchmigration.service;
 
+import com.quandoo.lib.elasticsearchmigration.model.es.MigrationStepRecord;
 import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSet;
 
+import java.util.List;
+
 /**
  * @author Emir Dizdarevic
  * @since 1.0.0
@@ -24,4 +27,9 @@ import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSet;
 public interface MigrationClient {
 
     void applyMigrationSet(MigrationSet migrationSet);
+
+    /**
+     * @return the slowest recorded steps of all identifiers, slowest first
+     */
+    List<MigrationStepRecord> getSlowestSteps(int size);
 }
@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service;
+
+import java.time.Duration;
+
+/**
+ * Receives timings and counts of a migration run. Implementations are called from the migration threads, including the
+ * workers applying changes in parallel, and must be thread safe.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public interface MigrationMetrics {
+
+    enum Phase {
+        /**
+         * Classpath scan for changeset files
+         */
+        SCAN,
+        /**
+         * Schema validation of one changeset file
+         */
+        SCHEMA_VALIDATION,
+        /**
+         * Parsing and checksumming of one changeset file, or reading of the whole precompiled bundle
+         */
+        PARSE,
+        /**
+         * Reading the migration history, before and under the lock
+         */
+        HISTORY_LOAD,
+        /**
+         * Waiting for the migration lock
+         */
+        LOCK_WAIT,
+        /**
+         * Holding the migration lock
+         */
+        LOCK_HOLD,
+        /**
+         * Whole migration run
+         */
+        TOTAL
+    }
+
+    void recordPhase(Phase phase, Duration duration);
+
+    /**
+     * Called for every recorded step with the Elasticsearch requests it made
+     *
+     * @param migrationType changeset type of the step, e.g. CREATE_INDEX, or BULK for document changes sent together
+     */
+    void recordStep(String migrationType, Duration duration, long bytesSent, long bytesReceived, int retries);
+
+    /**
+     * Called every time the migration lock is found taken by another process
+     */
+    void incrementLockConflicts();
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.es.LockEntryMeta;
+import com.quandoo.lib.elasticsearchmigration.model.es.MigrationEntryMeta;
+import com.quandoo.lib.elasticsearchmigration.model.input.MigrationType;
+import lombok.NonNull;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Generates a baseline migration file from the current state of a cluster. The file contains the ingest pipelines,
+ * index templates and indices (with their mappings, settings and aliases) matching the given patterns. Settings which
+ * are assigned by Elasticsearch and can't be set on index creation are left out.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public class BaselineGenerator {
+
+    private static final List<String> INTERNAL_INDEX_SETTINGS = ImmutableList.of(
+            "uuid",
+            "creation_date",
+            "provided_name",
+            "version",
+            "resize",
+            "verified_before_close",
+            "history.uuid",
+            "routing.allocation.initial_recovery"
+    );
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper yamlMapper;
+
+    public BaselineGenerator(@NonNull final RestHighLevelClient restHighLevelClient) {
+        this.restHighLevelClient = restHighLevelClient;
+        this.jsonMapper = new ObjectMapper();
+        this.yamlMapper = createYamlMapper();
+    }
+
+    private ObjectMapper createYamlMapper() {
+        final YAMLFactory yamlFactory = new YAMLFactory();
+        yamlFactory.configure(YAMLGenerator.Feature.WRITE_DOC_START_MARKER, false);
+        yamlFactory.configure(YAMLGenerator.Feature.MINIMIZE_QUOTES, true);
+        yamlFactory.configure(YAMLGenerator.Feature.LITERAL_BLOCK_STYLE, true);
+
+        return new ObjectMapper(yamlFactory);
+    }
+
+    /**
+     * @param indices   index names or wildcard patterns, system indices and the migration indices are always skipped
+     * @param templates index template names or wildcard patterns
+     * @param pipelines ingest pipeline ids or wildcard patterns
+     * @return content of a baseline migration file
+     */
+    public String generate(@NonNull final Collection<String> indices, @NonNull final Collection<String> templates, @NonNull final Collection<String> pipelines) {
+        final JsonNode pipelineDefinitions = pipelines.isEmpty() ? jsonMapper.createObjectNode() : get("/_ingest/pipeline/" + Joiner.on(',').join(pipelines));
+        final JsonNode templateDefinitions = templates.isEmpty() ? jsonMapper.createObjectNode() : get("/_template/" + Joiner.on(',').join(templates));
+        final JsonNode indexDefinitions = indices.isEmpty() ? jsonMapper.createObjectNode() : get("/" + Joiner.on(',').join(indices) + "?expand_wildcards=open");
+
+        return toYaml(pipelineDefinitions, templateDefinitions, indexDefinitions);
+    }
+
+    private JsonNode get(final String endpoint) {
+        try {
+            final Response response = restHighLevelClient.getLowLevelClient().performRequest(new Request("GET", endpoint));
+            try (InputStream content = response.getEntity().getContent()) {
+                return jsonMapper.readTree(content);
+            }
+        } catch (ResponseException e) {
+            if (e.getResponse().getStatusLine().getStatusCode() == RestStatus.NOT_FOUND.getStatus()) {
+                return jsonMapper.createObjectNode();
+            }
+            throw new MigrationFailedException("Reading " + endpoint + " failed", e);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during baseline generation", e);
+        }
+    }
+
+    /**
+     * Converts the responses of the pipeline, template and index APIs into a migration file. Entries are sorted by name
+     * so generating the baseline twice from the same cluster yields the same file and checksum.
+     */
+    String toYaml(final JsonNode pipelineDefinitions, final JsonNode templateDefinitions, final JsonNode indexDefinitions) {
+        final ObjectNode migrationFile = jsonMapper.createObjectNode();
+        final ArrayNode migrations = migrationFile.putArray("migrations");
+
+        for (String id : sortedFieldNames(pipelineDefinitions)) {
+            migrations.add(createEntry(MigrationType.CREATE_INGEST_PIPELINE, "id", id, pipelineDefinitions.get(id)));
+        }
+        for (String template : sortedFieldNames(templateDefinitions)) {
+            migrations.add(createEntry(MigrationType.CREATE_OR_UPDATE_INDEX_TEMPLATE, "template", template, templateDefinitions.get(template)));
+        }
+        for (String index : sortedFieldNames(indexDefinitions)) {
+            if (index.startsWith(".") || index.equals(MigrationEntryMeta.INDEX) || index.equals(LockEntryMeta.INDEX)) {
+                continue;
+            }
+            migrations.add(createEntry(MigrationType.CREATE_INDEX, "index", index, toIndexDefinition(indexDefinitions.get(index))));
+        }
+
+        try {
+            return yamlMapper.writeValueAsString(migrationFile);
+        } catch (IOException e) {
+            throw new MigrationFailedException("Could not serialize baseline", e);
+        }
+    }
+
+    private ObjectNode toIndexDefinition(final JsonNode index) {
+        final ObjectNode definition = jsonMapper.createObjectNode();
+        final JsonNode settings = index.path("settings").path("index").deepCopy();
+        if (settings.isObject()) {
+            INTERNAL_INDEX_SETTINGS.forEach(e -> removeSetting((ObjectNode) settings, e.split("\\.")));
+            definition.putObject("settings").set("index", settings);
+        }
+        if (index.path("mappings").size() > 0) {
+            definition.set("mappings", index.get("mappings"));
+        }
+        if (index.path("aliases").size() > 0) {
+            definition.set("aliases", index.get("aliases"));
+        }
+
+        return definition;
+    }
+
+    private static void removeSetting(final ObjectNode settings, final String[] path) {
+        ObjectNode parent = settings;
+        for (int i = 0; i < path.length - 1; i++) {
+            final JsonNode child = parent.get(path[i]);
+            if (child == null || !child.isObject()) {
+                return;
+            }
+            parent = (ObjectNode) child;
+        }
+        parent.remove(path[path.length - 1]);
+    }
+
+    private ObjectNode createEntry(final MigrationType type, final String nameField, final String name, final JsonNode definition) {
+        final ObjectNode entry = jsonMapper.createObjectNode();
+        entry.put("type", type.name());
+        entry.put(nameField, name);
+        try {
+            entry.put("definition", jsonMapper.writerWithDefaultPrettyPrinter().writeValueAsString(definition));
+        } catch (IOException e) {
+            throw new MigrationFailedException("Could not serialize definition of " + name, e);
+        }
+
+        return entry;
+    }
+
+    private static List<String> sortedFieldNames(final JsonNode node) {
+        final List<String> fieldNames = Lists.newArrayList(node.fieldNames());
+        fieldNames.sort(String::compareTo);
+
+        return fieldNames;
+    }
+}
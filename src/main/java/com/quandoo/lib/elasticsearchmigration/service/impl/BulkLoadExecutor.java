@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.migration.BulkLoadMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.OpType;
+import com.quandoo.lib.elasticsearchmigration.util.ResourceUtils;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streams the NDJSON file of a {@link BulkLoadMigration} to the _bulk endpoint. The file is read line by line, batches
+ * are sent by a fixed number of workers and at most two batches per worker are in flight, so the reader blocks instead
+ * of buffering the file when the cluster is slower than the disk.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+@Slf4j
+class BulkLoadExecutor {
+
+    private static final int READ_BUFFER_SIZE = 65536;
+    private static final int IN_FLIGHT_BATCHES_PER_WORKER = 2;
+
+    private final DocumentBulkExecutor documentBulkExecutor;
+    private final ObjectMapper objectMapper;
+    private final int parallelism;
+
+    BulkLoadExecutor(@NonNull final DocumentBulkExecutor documentBulkExecutor, @NonNull final ObjectMapper objectMapper, final int parallelism) {
+        this.documentBulkExecutor = documentBulkExecutor;
+        this.objectMapper = objectMapper;
+        this.parallelism = parallelism;
+    }
+
+    void execute(final BulkLoadMigration migration, final StepStatistics statistics) {
+        final ExecutorService executorService = Executors.newFixedThreadPool(
+                parallelism,
+                new ThreadFactoryBuilder().setNameFormat("es-migration-bulk-load-%d").setDaemon(true).build()
+        );
+        final Semaphore inFlightBatches = new Semaphore(parallelism * IN_FLIGHT_BATCHES_PER_WORKER);
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        final AtomicLong loadedDocuments = new AtomicLong();
+
+        try (BufferedReader reader = open(migration)) {
+            List<DocumentBulkExecutor.BulkItem> batch = new ArrayList<>();
+            long batchSize = 0;
+            long lineNumber = 0;
+            String line;
+            while (failure.get() == null && (line = reader.readLine()) != null) {
+                lineNumber++;
+                if (StringUtils.isBlank(line)) {
+                    continue;
+                }
+
+                final DocumentBulkExecutor.BulkItem bulkItem = toBulkItem(migration, line, lineNumber);
+                if (documentBulkExecutor.exceedsBatchLimits(batch.size(), batchSize, bulkItem)) {
+                    submit(executorService, inFlightBatches, batch, failure, loadedDocuments, statistics);
+                    batch = new ArrayList<>();
+                    batchSize = 0;
+                }
+
+                batch.add(bulkItem);
+                batchSize += bulkItem.getPayload().length;
+            }
+
+            if (!batch.isEmpty() && failure.get() == null) {
+                submit(executorService, inFlightBatches, batch, failure, loadedDocuments, statistics);
+            }
+
+            // All permits are back once every submitted batch finished
+            inFlightBatches.acquire(parallelism * IN_FLIGHT_BATCHES_PER_WORKER);
+        } catch (IOException e) {
+            throw new MigrationFailedException("Could not read bulk load file " + migration.getFile(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MigrationFailedException("Interrupted while loading " + migration.getFile());
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        if (failure.get() != null) {
+            throw new MigrationFailedException("Loading " + migration.getFile() + " into " + migration.getIndex() + " failed after " + loadedDocuments.get() + " documents. Message: " + failure.get().getMessage(), failure.get());
+        }
+
+        log.info("Loaded {} documents from {} into {}", loadedDocuments.get(), migration.getFile(), migration.getIndex());
+    }
+
+    BufferedReader open(final BulkLoadMigration migration) throws IOException {
+        final InputStream inputStream = ResourceUtils.openResourceOrFile(migration.getFile(), this);
+        final InputStream decodedInputStream = migration.getFile().endsWith(".gz") ? new GZIPInputStream(inputStream, READ_BUFFER_SIZE) : inputStream;
+        return new BufferedReader(new InputStreamReader(decodedInputStream, Charsets.UTF_8), READ_BUFFER_SIZE);
+    }
+
+    private DocumentBulkExecutor.BulkItem toBulkItem(final BulkLoadMigration migration, final String line, final long lineNumber) {
+        final String description = migration.getFile() + ":" + lineNumber;
+        return documentBulkExecutor.toBulkItem(
+                description,
+                migration.getIndex(),
+                migration.getIdField().map(e -> extractId(line, e, description)),
+                migration.getOpType().orElse(OpType.CREATE),
+                Optional.of(line.getBytes(Charsets.UTF_8))
+        );
+    }
+
+    private String extractId(final String line, final String idField, final String description) {
+        try {
+            final JsonNode id = objectMapper.readTree(line).path(idField);
+            if (!id.isValueNode() || id.isNull()) {
+                throw new MigrationFailedException("Document " + description + " has no value for id field '" + idField + "'");
+            }
+
+            return id.asText();
+        } catch (IOException e) {
+            throw new MigrationFailedException("Document " + description + " is not valid JSON", e);
+        }
+    }
+
+    private void submit(final ExecutorService executorService,
+                        final Semaphore inFlightBatches,
+                        final List<DocumentBulkExecutor.BulkItem> batch,
+                        final AtomicReference<RuntimeException> failure,
+                        final AtomicLong loadedDocuments,
+                        final StepStatistics statistics) throws InterruptedException {
+        inFlightBatches.acquire();
+        try {
+            executorService.execute(() -> {
+                try {
+                    // The loaded index is refreshed once at the end of the load instead of waiting for every batch
+                    documentBulkExecutor.executeBatch(batch, "false", statistics);
+                    loadedDocuments.addAndGet(batch.size());
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    inFlightBatches.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlightBatches.release();
+            throw new MigrationFailedException("Could not schedule bulk load batch", e);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Stopwatch;
+import com.quandoo.lib.elasticsearchmigration.exception.InvalidSchemaException;
+import com.quandoo.lib.elasticsearchmigration.model.bundle.MigrationBundle;
+import com.quandoo.lib.elasticsearchmigration.model.bundle.MigrationBundleEntry;
+import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationMeta;
+import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSet;
+import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSetEntry;
+import com.quandoo.lib.elasticsearchmigration.service.MigrationMetrics;
+import com.quandoo.lib.elasticsearchmigration.service.MigrationSetProvider;
+import com.quandoo.lib.elasticsearchmigration.util.ResourceUtils;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Loads the bundle written by {@link MigrationBundleCompiler} at build time. The changesets in it are already validated
+ * and normalized and carry the checksums of the YAML parser, so nothing but the JSON deserialization happens at startup.
+ * Falls back to scanning for changeset files if the base package contains no bundle.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+@Slf4j
+public class BundleMigrationSetProvider implements MigrationSetProvider {
+
+    public static final String BUNDLE_FILE_NAME = "migrations.bundle.json";
+
+    private final ObjectMapper bundleMapper;
+    private final MigrationSetProvider fallbackProvider;
+    private final MigrationMetrics metrics;
+
+    public BundleMigrationSetProvider() {
+        this(new NoopMigrationMetrics());
+    }
+
+    public BundleMigrationSetProvider(@NonNull final MigrationMetrics metrics) {
+        this(metrics, new YamlDirectoryMigrationSetProvider(metrics));
+    }
+
+    /**
+     * @param fallbackProvider used if the base package contains no bundle
+     */
+    public BundleMigrationSetProvider(@NonNull final MigrationMetrics metrics, @NonNull final MigrationSetProvider fallbackProvider) {
+        this.bundleMapper = createBundleMapper();
+        this.fallbackProvider = fallbackProvider;
+        this.metrics = metrics;
+    }
+
+    static ObjectMapper createBundleMapper() {
+        return YamlParser.configureMapper(new ObjectMapper());
+    }
+
+    static String bundleLocation(final String basePackage) {
+        return basePackage.replace('.', '/') + "/" + BUNDLE_FILE_NAME;
+    }
+
+    @Override
+    public MigrationSet getMigrationSet(final String basePackage) {
+        checkNotNull(basePackage, "basePackage must not be null");
+
+        final String location = bundleLocation(basePackage);
+        final Stopwatch parse = Stopwatch.createStarted();
+        try (InputStream inputStream = ResourceUtils.getResourceAsStream(location, this)) {
+            if (inputStream == null) {
+                log.warn("No precompiled bundle " + location + " found, scanning for changeset files");
+                return fallbackProvider.getMigrationSet(basePackage);
+            }
+
+            log.info("Reading precompiled bundle " + location);
+            final MigrationSet migrationSet = read(inputStream);
+            metrics.recordPhase(MigrationMetrics.Phase.PARSE, Duration.ofNanos(parse.elapsed(TimeUnit.NANOSECONDS)));
+            return migrationSet;
+        } catch (IOException e) {
+            throw new InvalidSchemaException("Problem reading bundle " + location, e);
+        }
+    }
+
+    MigrationSet read(final InputStream inputStream) throws IOException {
+        final MigrationBundle migrationBundle = bundleMapper.readValue(inputStream, MigrationBundle.class);
+        if (migrationBundle.getFormatVersion() != MigrationBundle.FORMAT_VERSION) {
+            throw new InvalidSchemaException("Unsupported bundle format version " + migrationBundle.getFormatVersion() + ", the bundle has to be compiled again");
+        }
+
+        return new MigrationSet(
+                migrationBundle.getMigrations().stream().map(this::toMigrationSetEntry).collect(Collectors.toList()),
+                migrationBundle.getBaseline().map(this::toMigrationSetEntry)
+        );
+    }
+
+    private MigrationSetEntry toMigrationSetEntry(final MigrationBundleEntry migrationBundleEntry) {
+        return MigrationFileConverter.toMigrationSetEntry(
+                migrationBundleEntry.getMigrationFile(),
+                new MigrationMeta(
+                        migrationBundleEntry.getSha256Checksum(),
+                        migrationBundleEntry.getVersion(),
+                        migrationBundleEntry.getName(),
+                        Optional.of(migrationBundleEntry.getRawSha256Checksum())
+                )
+        );
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Lists the resources below a package. Unlike a full classpath scan only the package directory of every classpath root
+ * containing it is visited, exploded directories as well as jars (including nested jars handled by a {@link JarURLConnection}).
+ * Jars have to contain directory entries for the package, which is the default of the Maven jar and shade plugins.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+@Slf4j
+class ClasspathScanner {
+
+    private final Collection<ClassLoader> classLoaders;
+
+    ClasspathScanner() {
+        this(defaultClassLoaders());
+    }
+
+    ClasspathScanner(final Collection<ClassLoader> classLoaders) {
+        this.classLoaders = classLoaders;
+    }
+
+    private static Collection<ClassLoader> defaultClassLoaders() {
+        return Stream.of(Thread.currentThread().getContextClassLoader(), ClasspathScanner.class.getClassLoader())
+                .filter(e -> e != null)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return paths of the resources in the package and its sub packages whose file name matches the pattern, e.g. es/migration/V1_0_0__init.yaml
+     */
+    Set<String> getResources(final String basePackage, final Pattern pattern) {
+        final String packagePath = basePackage.replace('.', '/');
+        final Set<String> resources = new LinkedHashSet<>();
+        for (URL root : getRoots(packagePath)) {
+            try {
+                if ("file".equals(root.getProtocol())) {
+                    scanDirectory(Paths.get(root.toURI()), packagePath, pattern, resources);
+                    continue;
+                }
+
+                final URLConnection connection = root.openConnection();
+                if (connection instanceof JarURLConnection) {
+                    scanJar((JarURLConnection) connection, packagePath, pattern, resources);
+                } else {
+                    log.warn("Skipping classpath root " + root + " with unsupported protocol");
+                }
+            } catch (IOException | URISyntaxException e) {
+                throw new IllegalStateException("Failed to scan " + root + " for resources", e);
+            }
+        }
+
+        return resources;
+    }
+
+    private Set<URL> getRoots(final String packagePath) {
+        final Set<URL> roots = new LinkedHashSet<>();
+        for (ClassLoader classLoader : classLoaders) {
+            try {
+                roots.addAll(Collections.list(classLoader.getResources(packagePath)));
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to look up package " + packagePath, e);
+            }
+        }
+
+        return roots;
+    }
+
+    private void scanDirectory(final Path directory, final String packagePath, final Pattern pattern, final Set<String> resources) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.filter(Files::isRegularFile)
+                    .filter(e -> pattern.matcher(e.getFileName().toString()).matches())
+                    .map(e -> packagePath + "/" + directory.relativize(e).toString().replace('\\', '/'))
+                    .forEach(resources::add);
+        }
+    }
+
+    private void scanJar(final JarURLConnection connection, final String packagePath, final Pattern pattern, final Set<String> resources) throws IOException {
+        // A private copy, closing a cached jar file would break the class loader using it
+        connection.setUseCaches(false);
+        final String prefix = packagePath + "/";
+        try (JarFile jarFile = connection.getJarFile()) {
+            final Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                final JarEntry entry = entries.nextElement();
+                final String name = entry.getName();
+                if (entry.isDirectory() || !name.startsWith(prefix)) {
+                    continue;
+                }
+
+                final String fileName = name.substring(name.lastIndexOf('/') + 1);
+                if (pattern.matcher(fileName).matches()) {
+                    resources.add(name);
+                }
+            }
+        }
+    }
+}
@@ -20,61 +20,91 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.google.common.base.CaseFormat;
 import com.google.common.base.Charsets;
+import com.google.common.base.Enums;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.io.Resources;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.quandoo.lib.elasticsearchmigration.ElasticsearchConfig;
+import com.quandoo.lib.elasticsearchmigration.ElasticsearchMigrationConfig;
 import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
 import com.quandoo.lib.elasticsearchmigration.exception.MigrationLockedException;
 import com.quandoo.lib.elasticsearchmigration.exception.PreviousMigrationFailedException;
-import com.quandoo.lib.elasticsearchmigration.model.es.LockEntry;
 import com.quandoo.lib.elasticsearchmigration.model.es.LockEntryMeta;
 import com.quandoo.lib.elasticsearchmigration.model.es.MigrationEntry;
 import com.quandoo.lib.elasticsearchmigration.model.es.MigrationEntryMeta;
+import com.quandoo.lib.elasticsearchmigration.model.es.MigrationHead;
+import com.quandoo.lib.elasticsearchmigration.model.es.MigrationStep;
+import com.quandoo.lib.elasticsearchmigration.model.es.MigrationStepRecord;
 import com.quandoo.lib.elasticsearchmigration.model.es.State;
+import com.quandoo.lib.elasticsearchmigration.model.input.MigrationType;
+import com.quandoo.lib.elasticsearchmigration.model.migration.BulkLoadMigration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.CreateIndexMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.CreateIngestPipelineMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.CreateOrUpdateIndexTemplateMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.DeleteDocumentMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.DocumentMigration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.IndexDocumentMigration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.Migration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationMeta;
 import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSet;
 import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSetEntry;
 import com.quandoo.lib.elasticsearchmigration.model.migration.OpType;
+import com.quandoo.lib.elasticsearchmigration.model.migration.RefreshPolicy;
+import com.quandoo.lib.elasticsearchmigration.model.migration.SlicedMigration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.UpdateDocumentMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.UpdateIndexSettingsMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.UpdateMappingMigration;
 import com.quandoo.lib.elasticsearchmigration.service.MigrationClient;
+import com.quandoo.lib.elasticsearchmigration.service.MigrationMetrics;
 import com.jayway.jsonpath.JsonPath;
+import com.quandoo.lib.elasticsearchmigration.util.HashUtils;
 import com.quandoo.lib.elasticsearchmigration.util.VersionComparator;
+import com.quandoo.lib.elasticsearchmigration.util.VersionSortKey;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpEntity;
 import org.elasticsearch.ElasticsearchStatusException;
 import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
-import org.elasticsearch.action.delete.DeleteRequest;
-import org.elasticsearch.action.index.IndexRequest;
-import org.elasticsearch.action.search.SearchRequest;
-import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
 import org.elasticsearch.client.*;
-import org.elasticsearch.common.xcontent.XContentType;
-import org.elasticsearch.index.query.QueryBuilder;
-import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.rest.RestStatus;
-import org.elasticsearch.search.SearchHits;
-import org.elasticsearch.search.builder.SearchSourceBuilder;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.time.Instant;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -83,9 +113,15 @@ import java.util.stream.Collectors;
  * @since 1.0.0
  */
 @Slf4j
-public class DefaultMigrationClient implements MigrationClient {
+public class DefaultMigrationClient implements MigrationClient, AutoCloseable {
 
     private static final String WAIT_FOR_ACTIVE_SHARDS_FIELD = "wait_for_active_shards";
+    private static final String REFRESH_FIELD = "refresh";
+    private static final long INITIAL_LOCK_POLL_INTERVAL_IN_MILLIS = 200;
+    private static final String INITIAL_CHAIN_HASH = "";
+    private static final String ACCEPT_HEADER = "Accept";
+    private static final String BULK_STEP_TYPE = "BULK";
+    private static final Map<String, String> NO_REFRESH = ImmutableMap.of(REFRESH_FIELD, "false");
     private static final Pattern VERSION_REGEX_PATTERN = Pattern.compile("^((?:\\d+\\.)*\\d)$");
 
     static final String ELASTICSEARCH_MIGRATION_LOCK_INDEX;
@@ -106,11 +142,21 @@ public class DefaultMigrationClient implements MigrationClient {
     private final Boolean allowOlderVersions;
     private final Integer backoffPeriodInMillis;
     private final Integer retryCount;
+    private final RefreshPolicy refreshPolicy;
+    private final Integer bootstrapHistoryBatchSize;
+    private final MigrationMetrics metrics;
     private final ObjectMapper objectMapper;
+    private final WireFormatCodec wireFormatCodec;
+    private final DocumentBulkExecutor documentBulkExecutor;
+    private final BulkLoadExecutor bulkLoadExecutor;
+    private final ReindexTaskExecutor reindexTaskExecutor;
+    private final MigrationGraphExecutor migrationGraphExecutor;
+    private final Map<MigrationType, RestClient> migrationTypeClients;
+    private final LeaseLock globalLock;
+    private final MigrationHistoryReader migrationHistoryReader;
 
     private Integer numberOfNodesInCluster;
     private boolean init = false;
-    private final AtomicInteger currentTry = new AtomicInteger(0);
 
     public DefaultMigrationClient(@NonNull final String identifier,
                                   @NonNull final RestHighLevelClient restHighLevelClient,
@@ -118,21 +164,81 @@ public class DefaultMigrationClient implements MigrationClient {
                                   @NonNull final Boolean allowOlderVersions,
                                   @NonNull final Integer backoffPeriodInMillis,
                                   @NonNull final Integer retryCount) {
-        this.identifier = identifier;
+        this(
+                restHighLevelClient,
+                ElasticsearchMigrationConfig.builder(identifier, ElasticsearchConfig.builder(Collections.emptySet()).build())
+                        .ignorePreviousFailures(ignorePreviousFailures)
+                        .allowOlderVersions(allowOlderVersions)
+                        .backoffPeriodInMillis(backoffPeriodInMillis)
+                        .retryCount(retryCount)
+                        .build()
+        );
+    }
+
+    public DefaultMigrationClient(@NonNull final RestHighLevelClient restHighLevelClient,
+                                  @NonNull final ElasticsearchMigrationConfig elasticsearchMigrationConfig) {
+        this(restHighLevelClient, elasticsearchMigrationConfig, Collections.emptyMap());
+    }
+
+    /**
+     * @param migrationTypeClients clients used for the requests of single changes of the given types instead of the
+     *                             low level client of restHighLevelClient, e.g. with other timeouts
+     */
+    public DefaultMigrationClient(@NonNull final RestHighLevelClient restHighLevelClient,
+                                  @NonNull final ElasticsearchMigrationConfig elasticsearchMigrationConfig,
+                                  @NonNull final Map<MigrationType, RestClient> migrationTypeClients) {
+        this.identifier = elasticsearchMigrationConfig.getIdentifier();
         this.restHighLevelClient = restHighLevelClient;
-        this.ignorePreviousFailures = ignorePreviousFailures;
-        this.allowOlderVersions = allowOlderVersions;
-        this.backoffPeriodInMillis = backoffPeriodInMillis;
-        this.retryCount = retryCount;
+        this.ignorePreviousFailures = elasticsearchMigrationConfig.getIgnorePreviousFailures();
+        this.allowOlderVersions = elasticsearchMigrationConfig.getAllowOlderVersions();
+        this.backoffPeriodInMillis = elasticsearchMigrationConfig.getBackoffPeriodInMillis();
+        this.retryCount = elasticsearchMigrationConfig.getRetryCount();
+        this.refreshPolicy = elasticsearchMigrationConfig.getRefreshPolicy();
+        this.bootstrapHistoryBatchSize = elasticsearchMigrationConfig.getBootstrapHistoryBatchSize();
+        this.metrics = elasticsearchMigrationConfig.getMetrics();
         this.objectMapper = createObjectMapper();
+        final ElasticsearchConfig elasticsearchConfig = elasticsearchMigrationConfig.getElasticsearchConfig();
+        this.wireFormatCodec = new WireFormatCodec(
+                elasticsearchConfig.getWireFormat(),
+                objectMapper.getFactory(),
+                elasticsearchConfig.getCompressRequests() ? elasticsearchConfig.getCompressionThresholdInBytes() : -1
+        );
+        this.migrationTypeClients = ImmutableMap.copyOf(migrationTypeClients);
+        this.documentBulkExecutor = new DocumentBulkExecutor(
+                restHighLevelClient,
+                objectMapper,
+                elasticsearchMigrationConfig.getBulkMaxActions(),
+                elasticsearchMigrationConfig.getBulkMaxSizeInBytes(),
+                elasticsearchMigrationConfig.getBulkRetryCount(),
+                wireFormatCodec
+        );
+        this.bulkLoadExecutor = new BulkLoadExecutor(documentBulkExecutor, objectMapper, elasticsearchMigrationConfig.getBulkLoadParallelism());
+        this.reindexTaskExecutor = new ReindexTaskExecutor(restHighLevelClient, objectMapper, wireFormatCodec);
+        this.migrationGraphExecutor = new MigrationGraphExecutor(elasticsearchMigrationConfig.getMaxConcurrentMigrations(), this::getAliases);
+        this.migrationHistoryReader = new MigrationHistoryReader(restHighLevelClient, objectMapper, wireFormatCodec);
+        this.globalLock = new LeaseLock(restHighLevelClient, objectMapper, identifier + "-global", Duration.ofMillis(elasticsearchMigrationConfig.getLockLeaseInMillis()));
     }
 
     private void init() {
         if (!init) {
             init = true;
             numberOfNodesInCluster = getNumberOfNodesInCluster();
-            performRequestIgnoreExistingExceptions(new CreateIndexMigration(LockEntryMeta.INDEX, ELASTICSEARCH_MIGRATION_LOCK_INDEX));
-            performRequestIgnoreExistingExceptions(new CreateIndexMigration(MigrationEntryMeta.INDEX, ELASTICSEARCH_MIGRATION_VERSION_INDEX));
+            createOrUpdateSystemIndex(LockEntryMeta.INDEX, ELASTICSEARCH_MIGRATION_LOCK_INDEX);
+            createOrUpdateSystemIndex(MigrationEntryMeta.INDEX, ELASTICSEARCH_MIGRATION_VERSION_INDEX);
+        }
+    }
+
+    private void createOrUpdateSystemIndex(final String index, final String definition) {
+        if (!performRequestIgnoreExistingExceptions(new CreateIndexMigration(index, definition))) {
+            // Indices created by older versions have a strict mapping which lacks the fields added since
+            try {
+                final String properties = objectMapper.writeValueAsString(
+                        ImmutableMap.of("properties", objectMapper.readTree(definition).path("mappings").path("properties"))
+                );
+                performRequest(new UpdateMappingMigration(ImmutableSet.of(index), properties));
+            } catch (IOException e) {
+                throw new MigrationFailedException("Could not update mapping of '" + index + "' index", e);
+            }
         }
     }
 
@@ -155,56 +261,473 @@ public class DefaultMigrationClient implements MigrationClient {
 
     @Override
     public void applyMigrationSet(final MigrationSet migrationSet) {
-        try {
+        final List<MigrationSetEntry> orderedMigrationSetEntries = Lists.newArrayList(migrationSet.getMigrations());
+        orderedMigrationSetEntries.sort(new VersionComparator<>(VERSION_REGEX_PATTERN, 1, ".", e -> e.getMigrationMeta().getVersion()));
+
+        final Instant deadline = Instant.now().plusMillis((long) backoffPeriodInMillis * retryCount);
+        long pollInterval = INITIAL_LOCK_POLL_INTERVAL_IN_MILLIS;
+        while (true) {
+            final Stopwatch historyLoad = Stopwatch.createStarted();
+            final boolean applied = isMigrationSetApplied(orderedMigrationSetEntries);
+            metrics.recordPhase(MigrationMetrics.Phase.HISTORY_LOAD, Duration.ofNanos(historyLoad.elapsed(TimeUnit.NANOSECONDS)));
+            if (applied) {
+                log.info("All migrations already applied");
+                return;
+            }
+
             init();
 
-            performUnderGlobalLock(() -> {
-                refreshIndices(MigrationEntryMeta.INDEX);
-
-                final List<MigrationSetEntry> orderedMigrationSetEntries = Lists.newArrayList(migrationSet.getMigrations());
-                orderedMigrationSetEntries.sort(new VersionComparator<>(VERSION_REGEX_PATTERN, 1, ".", e -> e.getMigrationMeta().getVersion()));
-
-                final List<MigrationEntry> allMigrations = getAllMigrations();
-                log.info("Running checks...");
-                checkAllPreviousMigrationsAppliedSuccessfully(allMigrations);
-                checkForMetadataConflicts(allMigrations, orderedMigrationSetEntries.stream().map(e -> e.getMigrationMeta()).collect(Collectors.toList()));
-                log.info("Checks done");
-
-                final Set<String> appliedVersions = allMigrations.stream().map(e -> e.getVersion()).collect(Collectors.toSet());
-                for (MigrationSetEntry migrationSetEntry : orderedMigrationSetEntries) {
-                    log.info("Applying migration version " + migrationSetEntry.getMigrationMeta().getVersion());
-                    if (appliedVersions.contains(migrationSetEntry.getMigrationMeta().getVersion())) {
-                        log.info("Skipping migration. Already applied.");
-                    } else {
-                        try {
-                            insertNewMigrationEntry(migrationSetEntry);
-                            for (Migration migration : migrationSetEntry.getMigration()) {
-                                log.info("Applying change " + migration.getClass().getSimpleName());
-                                performRequest(migration);
-                            }
-                            updateMigrationEntry(migrationSetEntry.getMigrationMeta().getVersion(), State.SUCCESS, "");
-                        } catch (Exception e) {
-                            updateMigrationEntry(migrationSetEntry.getMigrationMeta().getVersion(), State.FAILURE, e.getCause().getMessage());
-                            throw new MigrationFailedException("Performing migration version " + migrationSetEntry.getMigrationMeta().getVersion() + " failed. Message: " + e.getCause().getMessage(), e);
-                        }
-                    }
+            if (globalLock.acquire()) {
+                metrics.recordPhase(MigrationMetrics.Phase.LOCK_WAIT, globalLock.getLastWaitTime());
+                try {
+                    applyMigrationSetUnderLock(orderedMigrationSetEntries, migrationSet.getBaseline());
+                } finally {
+                    globalLock.release();
+                    metrics.recordPhase(MigrationMetrics.Phase.LOCK_HOLD, globalLock.getLastHoldTime());
                 }
+                return;
+            }
 
-                return null;
-            });
-        } catch (MigrationLockedException e) {
-            if (currentTry.getAndIncrement() < retryCount) {
+            metrics.incrementLockConflicts();
+
+            log.info("Migration locked by another process. Waiting until {}", deadline);
+            do {
+                final long remaining = Duration.between(Instant.now(), deadline).toMillis();
+                if (remaining <= 0) {
+                    throw new MigrationLockedException("Migration is locked by another process");
+                }
+
+                // Jitter keeps many waiting clients from polling in lockstep
+                final long sleep = Math.min(pollInterval / 2 + ThreadLocalRandom.current().nextLong(pollInterval / 2 + 1), remaining);
+                log.debug("Checking migration lock again in {}ms", sleep);
+                sleep(sleep);
+                pollInterval = Math.min(pollInterval * 2, backoffPeriodInMillis);
+            } while (!globalLock.isAvailable());
+        }
+    }
+
+    @Override
+    public List<MigrationStepRecord> getSlowestSteps(final int size) {
+        try {
+            return migrationHistoryReader.readSlowestSteps(size);
+        } catch (ResponseException e) {
+            if (e.getResponse().getStatusLine().getStatusCode() == RestStatus.NOT_FOUND.getStatus()) {
+                return Collections.emptyList();
+            }
+            throw new MigrationFailedException("Could not access '" + MigrationEntryMeta.INDEX + "' index", e);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    /**
+     * Stops the background threads, the clients passed in stay open
+     *
+     * @since 1.4.0
+     */
+    @Override
+    public void close() {
+        globalLock.close();
+    }
+
+    private void applyMigrationSetUnderLock(final List<MigrationSetEntry> orderedMigrationSetEntries, final Optional<MigrationSetEntry> baseline) {
+        final Stopwatch historyLoad = Stopwatch.createStarted();
+        final Optional<MigrationHead> storedHead = getHead();
+        List<MigrationEntry> allMigrations = getMigrations(orderedMigrationSetEntries, storedHead);
+        backfillVersionSortKeys(allMigrations);
+        MigrationHead head = repairHead(allMigrations, storedHead);
+        metrics.recordPhase(MigrationMetrics.Phase.HISTORY_LOAD, Duration.ofNanos(historyLoad.elapsed(TimeUnit.NANOSECONDS)));
+        log.info("Running checks...");
+        checkAllPreviousMigrationsAppliedSuccessfully(allMigrations);
+        checkForMetadataConflicts(allMigrations, orderedMigrationSetEntries.stream().map(e -> e.getMigrationMeta()).collect(Collectors.toList()));
+        log.info("Checks done");
+        allMigrations = backfillRawChecksums(allMigrations, orderedMigrationSetEntries);
+        head = repairHead(allMigrations, Optional.of(head));
+
+        // On an empty history the entries of the applied versions are buffered and written in batches
+        final boolean bootstrap = allMigrations.isEmpty() && bootstrapHistoryBatchSize > 1;
+        if (allMigrations.isEmpty() && baseline.isPresent()) {
+            allMigrations = applyBaseline(baseline.get(), orderedMigrationSetEntries);
+            head = createHead(allMigrations);
+        }
+
+        final Map<String, MigrationEntry> appliedVersions = allMigrations.stream().collect(Collectors.toMap(e -> e.getVersion(), e -> e));
+        final List<DocumentMigration> pendingHistoryWrites = new ArrayList<>();
+        final List<MigrationSetEntry> pendingMigrationSetEntries = orderedMigrationSetEntries.stream()
+                .filter(e -> !appliedVersions.containsKey(e.getMigrationMeta().getVersion()) || isResumable(appliedVersions.get(e.getMigrationMeta().getVersion())))
+                .collect(Collectors.toList());
+        final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("es-migration-prefetch-%d").setDaemon(true).build()
+        );
+        try {
+            for (MigrationSetEntry migrationSetEntry : orderedMigrationSetEntries) {
                 try {
-                    log.info("Migration locked. Retrying in {}ms", backoffPeriodInMillis);
-                    Thread.sleep(backoffPeriodInMillis);
-                    applyMigrationSet(migrationSet);
-                } catch (InterruptedException e1) {
-                    // Should never happen
+                    head = applyMigrationSetEntry(migrationSetEntry, appliedVersions, pendingMigrationSetEntries, prefetchExecutor, bootstrap, pendingHistoryWrites, head);
+                } finally {
+                    // Applied versions are only needed again as metadata, so lazily loaded definitions can be collected
+                    migrationSetEntry.release();
+                }
+            }
+        } finally {
+            prefetchExecutor.shutdownNow();
+        }
+        flushHistoryWrites(pendingHistoryWrites, head);
+    }
+
+    private MigrationHead applyMigrationSetEntry(final MigrationSetEntry migrationSetEntry,
+                                                 final Map<String, MigrationEntry> appliedVersions,
+                                                 final List<MigrationSetEntry> pendingMigrationSetEntries,
+                                                 final ExecutorService prefetchExecutor,
+                                                 final boolean bootstrap,
+                                                 final List<DocumentMigration> pendingHistoryWrites,
+                                                 MigrationHead head) {
+        log.info("Applying migration version " + migrationSetEntry.getMigrationMeta().getVersion());
+        final MigrationEntry migrationEntry = appliedVersions.get(migrationSetEntry.getMigrationMeta().getVersion());
+        globalLock.checkHeld();
+        if (migrationEntry != null && !isResumable(migrationEntry)) {
+            log.info("Skipping migration. Already applied.");
+        } else {
+            prefetchNext(migrationSetEntry, pendingMigrationSetEntries, prefetchExecutor);
+            // A buffered version is applied again if the process dies before its entry is written, so only versions which
+            // can be repeated are buffered. The others get their entry beforehand, as reindex tasks need it anyway.
+            final boolean buffered = bootstrap && migrationEntry == null && migrationSetEntry.getMigration().stream().allMatch(DefaultMigrationClient::isRepeatable);
+            if (!buffered) {
+                flushHistoryWrites(pendingHistoryWrites, head);
+            }
+
+            final VersionStatistics statistics = new VersionStatistics(metrics);
+            try {
+                if (buffered) {
+                    applyMigrations(migrationSetEntry, 0, Optional.empty(), statistics);
+                } else if (migrationEntry == null) {
+                    insertNewMigrationEntry(migrationSetEntry);
+                    applyMigrations(migrationSetEntry, 0, Optional.empty(), statistics);
+                } else {
+                    log.info("Resuming migration at step {}", migrationEntry.getCurrentStep());
+                    applyMigrations(migrationSetEntry, migrationEntry.getCurrentStep(), Optional.of(migrationEntry.getTaskId()), statistics);
                 }
+                final MigrationHead nextHead = new MigrationHead(
+                        identifier,
+                        State.SUCCESS,
+                        migrationSetEntry.getMigrationMeta().getVersion(),
+                        head.getVersionCount() + 1,
+                        chainHash(head.getChainHash(), migrationSetEntry.getMigrationMeta()),
+                        Instant.now(),
+                        rawChainHash(head.getRawChainHash(), migrationSetEntry)
+                );
+                if (buffered) {
+                    pendingHistoryWrites.add(createMigrationEntryInsert(createMigrationEntry(migrationSetEntry, State.SUCCESS, "", false, Optional.of(statistics))));
+                    if (pendingHistoryWrites.size() >= bootstrapHistoryBatchSize) {
+                        flushHistoryWrites(pendingHistoryWrites, nextHead);
+                    }
+                } else {
+                    completeMigrationEntry(migrationSetEntry.getMigrationMeta().getVersion(), nextHead, statistics);
+                }
+                head = nextHead;
+            } catch (Exception e) {
+                final MigrationHead failureHead = new MigrationHead(identifier, State.FAILURE, head.getLatestVersion(), head.getVersionCount(), head.getChainHash(), Instant.now(), head.getRawChainHash());
+                if (buffered) {
+                    // The failure is written together with the buffered versions before the exception is thrown
+                    pendingHistoryWrites.add(createMigrationEntryInsert(createMigrationEntry(migrationSetEntry, State.FAILURE, getFailureMessage(e), false, Optional.of(statistics))));
+                    try {
+                        flushHistoryWrites(pendingHistoryWrites, failureHead);
+                    } catch (Exception flushException) {
+                        flushException.addSuppressed(e);
+                        throw new MigrationFailedException("Performing migration version " + migrationSetEntry.getMigrationMeta().getVersion() + " failed and the failure couldn't be recorded. Message: " + getFailureMessage(e), flushException);
+                    }
+                } else {
+                    updateMigrationEntry(migrationSetEntry.getMigrationMeta().getVersion(), State.FAILURE, getFailureMessage(e), statistics);
+                    writeHeadQuietly(failureHead);
+                }
+                throw new MigrationFailedException("Performing migration version " + migrationSetEntry.getMigrationMeta().getVersion() + " failed. Message: " + getFailureMessage(e), e);
+            }
+        }
+        return head;
+    }
+
+    /**
+     * @return whether applying the migration again leads to the same state instead of a failure or duplicated data
+     */
+    private static boolean isRepeatable(final Migration migration) {
+        if (migration instanceof IndexDocumentMigration) {
+            return ((IndexDocumentMigration) migration).getOpType() == OpType.INDEX && ((IndexDocumentMigration) migration).getDocumentId().isPresent();
+        }
+
+        return migration instanceof CreateOrUpdateIndexTemplateMigration ||
+                migration instanceof CreateIngestPipelineMigration ||
+                migration instanceof UpdateMappingMigration ||
+                migration instanceof UpdateIndexSettingsMigration ||
+                migration instanceof DeleteDocumentMigration;
+    }
+
+    /**
+     * Loads the definitions of the version after the given one while the given one is applied. Failures are ignored
+     * here, loading is retried when the version is applied and fails there with the actual error.
+     */
+    private static void prefetchNext(final MigrationSetEntry migrationSetEntry, final List<MigrationSetEntry> pendingMigrationSetEntries, final ExecutorService prefetchExecutor) {
+        final int index = pendingMigrationSetEntries.indexOf(migrationSetEntry);
+        if (index < 0 || index + 1 >= pendingMigrationSetEntries.size()) {
+            return;
+        }
+
+        final MigrationSetEntry next = pendingMigrationSetEntries.get(index + 1);
+        prefetchExecutor.execute(() -> {
+            try {
+                next.getMigration();
+                next.getRefreshPolicy();
+            } catch (Exception e) {
+                log.debug("Prefetching migration version " + next.getMigrationMeta().getVersion() + " failed", e);
+            }
+        });
+    }
+
+    /**
+     * Writes the buffered history entries and the head with one _bulk request
+     */
+    private void flushHistoryWrites(final List<DocumentMigration> pendingHistoryWrites, final MigrationHead head) {
+        if (pendingHistoryWrites.isEmpty()) {
+            return;
+        }
+
+        log.info("Recording {} migration versions", pendingHistoryWrites.size());
+        final List<DocumentMigration> historyWrites = new ArrayList<>(pendingHistoryWrites);
+        historyWrites.add(createHeadMigration(head));
+        pendingHistoryWrites.clear();
+        try {
+            documentBulkExecutor.execute(historyWrites, "false");
+        } catch (Exception e) {
+            throw new MigrationFailedException("Recording migration versions up to " + head.getLatestVersion() + " failed. Message: " + getFailureMessage(e), e);
+        }
+    }
+
+    /**
+     * Applies the baseline instead of the versions it covers. Those versions are recorded as applied with their own
+     * checksums, so the history is the same as if they were applied one by one and later runs verify it as usual.
+     */
+    private List<MigrationEntry> applyBaseline(final MigrationSetEntry baseline, final List<MigrationSetEntry> orderedMigrationSetEntries) {
+        final String baselineVersion = baseline.getMigrationMeta().getVersion();
+        final VersionComparator<String> versionComparator = new VersionComparator<>(VERSION_REGEX_PATTERN, 1, ".", e -> e);
+        final List<MigrationSetEntry> coveredMigrationSetEntries = orderedMigrationSetEntries.stream()
+                .filter(e -> versionComparator.compare(e.getMigrationMeta().getVersion(), baselineVersion) <= 0)
+                .collect(Collectors.toList());
+        final List<MigrationMeta> coveredMigrationMetas = coveredMigrationSetEntries.stream().map(e -> e.getMigrationMeta()).collect(Collectors.toList());
+        if (coveredMigrationMetas.isEmpty() || !Iterables.getLast(coveredMigrationMetas).getVersion().equals(baselineVersion)) {
+            throw new MigrationFailedException("Baseline version " + baselineVersion + " has no migration of the same version it replaces");
+        }
+
+        log.info("Applying baseline version {} instead of {} migration versions", baselineVersion, coveredMigrationMetas.size());
+        try {
+            documentBulkExecutor.execute(
+                    coveredMigrationSetEntries.stream().map(e -> createMigrationEntryInsert(createMigrationEntry(e, State.IN_PROGRESS, null, true, Optional.empty()))).collect(Collectors.toList()),
+                    "false"
+            );
+        } catch (Exception e) {
+            throw new MigrationFailedException("Recording baseline version " + baselineVersion + " failed. Message: " + getFailureMessage(e), e);
+        }
+
+        final List<MigrationEntry> appliedMigrations = coveredMigrationSetEntries.stream().map(e -> createMigrationEntry(e, State.SUCCESS, null, true, Optional.empty())).collect(Collectors.toList());
+        // The statistics of the baseline are recorded in the entry of its own version
+        final VersionStatistics statistics = new VersionStatistics(metrics);
+        try {
+            applyMigrations(baseline, 0, Optional.empty(), statistics);
+
+            final List<DocumentMigration> updates = new ArrayList<>();
+            for (MigrationMeta migrationMeta : coveredMigrationMetas) {
+                updates.add(createMigrationEntryUpdate(migrationMeta.getVersion(), State.SUCCESS, "", migrationMeta.getVersion().equals(baselineVersion) ? Optional.of(statistics) : Optional.empty()));
+            }
+            updates.add(createHeadMigration(createHead(appliedMigrations)));
+            documentBulkExecutor.execute(updates, "false");
+        } catch (Exception e) {
+            try {
+                final List<DocumentMigration> updates = new ArrayList<>();
+                for (MigrationMeta migrationMeta : coveredMigrationMetas) {
+                    updates.add(createMigrationEntryUpdate(migrationMeta.getVersion(), State.FAILURE, getFailureMessage(e), migrationMeta.getVersion().equals(baselineVersion) ? Optional.of(statistics) : Optional.empty()));
+                }
+                updates.add(createHeadMigration(new MigrationHead(identifier, State.FAILURE, null, 0, INITIAL_CHAIN_HASH, Instant.now(), INITIAL_CHAIN_HASH)));
+                documentBulkExecutor.execute(updates, "false");
+            } catch (Exception updateException) {
+                log.warn("Could not record failure of baseline version " + baselineVersion, updateException);
+            }
+            throw new MigrationFailedException("Performing baseline version " + baselineVersion + " failed. Message: " + getFailureMessage(e), e);
+        } finally {
+            baseline.release();
+            coveredMigrationSetEntries.forEach(MigrationSetEntry::release);
+        }
+
+        return appliedMigrations;
+    }
+
+    private void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MigrationLockedException("Interrupted while waiting for the migration lock", e);
+        }
+    }
+
+    /**
+     * Applies the migrations of a version starting at firstStep. If the version is resumed after the JVM died during a
+     * reindex, runningTaskId holds the reindex task of firstStep which is followed instead of starting a new reindex.
+     */
+    private void applyMigrations(final MigrationSetEntry migrationSetEntry, final int firstStep, final Optional<String> runningTaskId, final VersionStatistics versionStatistics) {
+        final List<Migration> migrations = migrationSetEntry.getMigration();
+        final List<DocumentMigration> documentMigrations = new ArrayList<>();
+        final List<Migration> otherMigrations = new ArrayList<>();
+        // Migrations applied as a group are recorded with their position in the changeset
+        final Map<Migration, Integer> stepIndices = new IdentityHashMap<>();
+        for (int step = firstStep; step < migrations.size(); step++) {
+            stepIndices.put(migrations.get(step), step);
+        }
+        // Indices written without waiting for a refresh, only tracked with the DEFERRED refresh policy
+        final Optional<Set<String>> deferredRefreshIndices = migrationSetEntry.getRefreshPolicy().orElse(refreshPolicy) == RefreshPolicy.DEFERRED ?
+                Optional.of(new LinkedHashSet<>()) :
+                Optional.empty();
+        for (int step = firstStep; step < migrations.size(); step++) {
+            final Migration migration = migrations.get(step);
+            if (DocumentBulkExecutor.supports(migration)) {
+                applyOtherMigrations(otherMigrations, deferredRefreshIndices, stepIndices, versionStatistics);
+                documentMigrations.add((DocumentMigration) migration);
+            } else if (migration instanceof BulkLoadMigration) {
+                applyDocumentMigrations(documentMigrations, deferredRefreshIndices, stepIndices, versionStatistics);
+                applyOtherMigrations(otherMigrations, deferredRefreshIndices, stepIndices, versionStatistics);
+                refreshDeferredIndices(deferredRefreshIndices);
+                log.info("Applying change " + migration.getClass().getSimpleName());
+                final StepStatistics statistics = new StepStatistics();
+                bulkLoadExecutor.execute((BulkLoadMigration) migration, statistics);
+                if (deferredRefreshIndices.isPresent()) {
+                    deferredRefreshIndices.get().add(((BulkLoadMigration) migration).getIndex());
+                } else {
+                    refreshIndices(((BulkLoadMigration) migration).getIndex());
+                }
+                versionStatistics.add(statistics.toStep(step, 1, getType(migration)));
+            } else if (migration instanceof SlicedMigration) {
+                applyDocumentMigrations(documentMigrations, deferredRefreshIndices, stepIndices, versionStatistics);
+                applyOtherMigrations(otherMigrations, deferredRefreshIndices, stepIndices, versionStatistics);
+                // The reindex reads its source with a scroll, which only sees refreshed documents
+                refreshDeferredIndices(deferredRefreshIndices);
+                final StepStatistics statistics = new StepStatistics();
+                final String taskId;
+                if (step == firstStep && runningTaskId.isPresent()) {
+                    taskId = runningTaskId.get();
+                    log.info("Reattaching to reindex task {}", taskId);
+                } else {
+                    log.info("Applying change " + migration.getClass().getSimpleName());
+                    taskId = reindexTaskExecutor.getTaskId(performRequest(slice((SlicedMigration) migration), Collections.emptyMap(), statistics));
+                    updateMigrationEntryTask(migrationSetEntry.getMigrationMeta().getVersion(), step, taskId);
+                }
+                final ReindexTaskExecutor.ReindexResult reindexResult = reindexTaskExecutor.awaitCompletion(taskId);
+                clearMigrationEntryTask(migrationSetEntry.getMigrationMeta().getVersion(), taskId);
+                reindexTaskExecutor.deleteTaskResult(taskId);
+                statistics.addTook(reindexResult.getTook());
+                statistics.addRetries(reindexResult.getRetries());
+                versionStatistics.add(statistics.toStep(step, 1, getType(migration)));
             } else {
-                throw e;
+                applyDocumentMigrations(documentMigrations, deferredRefreshIndices, stepIndices, versionStatistics);
+                otherMigrations.add(migration);
             }
         }
+
+        applyDocumentMigrations(documentMigrations, deferredRefreshIndices, stepIndices, versionStatistics);
+        applyOtherMigrations(otherMigrations, deferredRefreshIndices, stepIndices, versionStatistics);
+        refreshDeferredIndices(deferredRefreshIndices);
+    }
+
+    private void refreshDeferredIndices(final Optional<Set<String>> deferredRefreshIndices) {
+        if (deferredRefreshIndices.isPresent() && !deferredRefreshIndices.get().isEmpty()) {
+            log.info("Refreshing indices {}", deferredRefreshIndices.get());
+            refreshIndices(deferredRefreshIndices.get().toArray(new String[0]));
+            deferredRefreshIndices.get().clear();
+        }
+    }
+
+    /**
+     * @return the parameters overriding the ones of the migration. With a deferred refresh the refresh of writes to an index is
+     * turned off and the index, taken from the first segment of the URL, is remembered for the final refresh.
+     */
+    private Map<String, String> deferRefresh(final Migration migration, final Optional<Set<String>> deferredRefreshIndices) {
+        if (!deferredRefreshIndices.isPresent() || !migration.getParameters().containsKey(REFRESH_FIELD)) {
+            return Collections.emptyMap();
+        }
+
+        final Optional<String> index = Splitter.on('/').omitEmptyStrings().splitToList(migration.getUrl()).stream().findFirst().filter(e -> !e.startsWith("_"));
+        if (!index.isPresent()) {
+            return Collections.emptyMap();
+        }
+
+        deferredRefreshIndices.get().add(index.get());
+        return ImmutableMap.of(REFRESH_FIELD, "false");
+    }
+
+    /**
+     * Splits the migration into one slice per source shard, capped by the number of data nodes. Slices set in the changeset are taken as they are.
+     * Missing source indices are not counted, the reindex itself reports them.
+     */
+    SlicedMigration slice(final SlicedMigration migration) {
+        if (migration.getSlices().isPresent() || migration.getSourceIndices().isEmpty()) {
+            return migration;
+        }
+
+        final int numberOfShards = getNumberOfShards(Joiner.on(',').join(migration.getSourceIndices()));
+        final int slices = Math.max(1, Math.min(numberOfShards, getNumberOfDataNodes()));
+        log.info("Using {} slices for {} source shards", slices, numberOfShards);
+        return migration.withSlices(slices);
+    }
+
+    private void applyOtherMigrations(final List<Migration> otherMigrations,
+                                      final Optional<Set<String>> deferredRefreshIndices,
+                                      final Map<Migration, Integer> stepIndices,
+                                      final VersionStatistics versionStatistics) {
+        if (!otherMigrations.isEmpty()) {
+            final Map<Migration, Map<String, String>> parameterOverrides = new IdentityHashMap<>();
+            otherMigrations.forEach(e -> parameterOverrides.put(e, deferRefresh(e, deferredRefreshIndices)));
+            migrationGraphExecutor.execute(otherMigrations, e -> {
+                log.info("Applying change " + e.getClass().getSimpleName());
+                final StepStatistics statistics = new StepStatistics();
+                performRequest(e, parameterOverrides.get(e), statistics);
+                versionStatistics.add(statistics.toStep(stepIndices.get(e), 1, getType(e)));
+            });
+            otherMigrations.clear();
+        }
+    }
+
+    private void applyDocumentMigrations(final List<DocumentMigration> documentMigrations,
+                                         final Optional<Set<String>> deferredRefreshIndices,
+                                         final Map<Migration, Integer> stepIndices,
+                                         final VersionStatistics versionStatistics) {
+        if (!documentMigrations.isEmpty()) {
+            log.info("Applying {} document changes in bulk", documentMigrations.size());
+            final StepStatistics statistics = new StepStatistics();
+            if (deferredRefreshIndices.isPresent()) {
+                documentMigrations.forEach(e -> deferredRefreshIndices.get().add(e.getIndex()));
+                documentBulkExecutor.execute(documentMigrations, "false", statistics);
+            } else {
+                documentBulkExecutor.execute(documentMigrations, "wait_for", statistics);
+            }
+            versionStatistics.add(statistics.toStep(stepIndices.get(documentMigrations.get(0)), documentMigrations.size(), BULK_STEP_TYPE));
+            documentMigrations.clear();
+        }
+    }
+
+    private RestClient getRestClient(final Migration migration) {
+        final Optional<MigrationType> migrationType = Enums.getIfPresent(MigrationType.class, getType(migration)).toJavaUtil();
+        return migrationType.map(migrationTypeClients::get).orElse(restHighLevelClient.getLowLevelClient());
+    }
+
+    /**
+     * @return the migration type as used in changesets, e.g. CREATE_INDEX for {@link CreateIndexMigration}
+     */
+    private static String getType(final Migration migration) {
+        return CaseFormat.UPPER_CAMEL.to(CaseFormat.UPPER_UNDERSCORE, StringUtils.removeEnd(migration.getClass().getSimpleName(), "Migration"));
+    }
+
+    private static boolean isResumable(final MigrationEntry migrationEntry) {
+        // A baseline doesn't have the steps of the version it's recorded under
+        return migrationEntry.getState() == State.IN_PROGRESS && migrationEntry.getTaskId() != null && migrationEntry.getCurrentStep() != null && !Boolean.TRUE.equals(migrationEntry.getBaseline());
+    }
+
+    private static String getFailureMessage(final Exception e) {
+        return e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
     }
 
     private void refreshIndices(final String... index) {
@@ -216,64 +739,331 @@ public class DefaultMigrationClient implements MigrationClient {
         }
     }
 
-    private void insertNewMigrationEntry(MigrationSetEntry migrationSetEntry) throws JsonProcessingException {
-        performRequest(
-                new IndexDocumentMigration(
-                        MigrationEntryMeta.INDEX,
-                        Optional.of(identifier + "-" + migrationSetEntry.getMigrationMeta().getVersion()),
-                        Optional.of(OpType.CREATE),
-                        objectMapper.writeValueAsString(
-                                new MigrationEntry(
-                                        identifier,
-                                        migrationSetEntry.getMigrationMeta().getVersion(),
-                                        migrationSetEntry.getMigrationMeta().getName(),
-                                        migrationSetEntry.getMigrationMeta().getSha256Checksum(),
-                                        State.IN_PROGRESS,
-                                        null,
-                                        Instant.now()
-                                )
-                        )
-                )
+    private void insertNewMigrationEntry(MigrationSetEntry migrationSetEntry) {
+        performRequest(createMigrationEntryInsert(createMigrationEntry(migrationSetEntry, State.IN_PROGRESS, null, false, Optional.empty())), NO_REFRESH);
+    }
+
+    private MigrationEntry createMigrationEntry(final MigrationSetEntry migrationSetEntry,
+                                                final State state,
+                                                final String failureMessage,
+                                                final boolean baseline,
+                                                final Optional<VersionStatistics> statistics) {
+        final MigrationMeta migrationMeta = migrationSetEntry.getMigrationMeta();
+        return new MigrationEntry(
+                identifier,
+                migrationMeta.getVersion(),
+                migrationMeta.getName(),
+                migrationMeta.getSha256Checksum(),
+                state,
+                failureMessage,
+                Instant.now(),
+                null,
+                null,
+                VersionSortKey.of(migrationMeta.getVersion()),
+                baseline ? Boolean.TRUE : null,
+                statistics.map(e -> e.getDurationInMillis()).orElse(null),
+                statistics.map(e -> e.getSteps()).orElse(null),
+                getRecordableRawChecksum(migrationSetEntry).orElse(null)
         );
     }
 
-    private void updateMigrationEntry(String version, State state, String failureMessage) {
-        final Map<String, Map<String, String>> update = ImmutableMap.of(
-                "doc",
-                ImmutableMap.of(
-                        MigrationEntryMeta.STATE_FIELD, state.name(),
-                        MigrationEntryMeta.FAUILURE_MESSAGE_FIELD, failureMessage
-                )
+    /**
+     * The raw checksum doesn't cover data files, so it is only recorded for changesets which don't reference any
+     */
+    private static Optional<String> getRecordableRawChecksum(final MigrationSetEntry migrationSetEntry) {
+        if (!migrationSetEntry.getMigrationMeta().getRawSha256Checksum().isPresent() || migrationSetEntry.getMigration().stream().anyMatch(e -> e instanceof BulkLoadMigration)) {
+            return Optional.empty();
+        }
+
+        return migrationSetEntry.getMigrationMeta().getRawSha256Checksum();
+    }
+
+    private IndexDocumentMigration createMigrationEntryInsert(final MigrationEntry migrationEntry) {
+        try {
+            return new IndexDocumentMigration(
+                    MigrationEntryMeta.INDEX,
+                    Optional.of(identifier + "-" + migrationEntry.getVersion()),
+                    Optional.of(OpType.CREATE),
+                    objectMapper.writeValueAsString(migrationEntry)
+            );
+        } catch (JsonProcessingException e) {
+            throw new MigrationFailedException("Could not serialize migration entry of version " + migrationEntry.getVersion(), e);
+        }
+    }
+
+    private void updateMigrationEntry(String version, State state, String failureMessage, VersionStatistics statistics) {
+        try {
+            performRequest(createMigrationEntryUpdate(version, state, failureMessage, Optional.of(statistics)), NO_REFRESH);
+        } catch (Exception e) {
+            throw new MigrationFailedException("Performing migration version " + version + " failed. Message: " + getFailureMessage(e));
+        }
+    }
+
+    /**
+     * Marks the version as successful and moves the head forward within one _bulk request
+     */
+    private void completeMigrationEntry(String version, MigrationHead head, VersionStatistics statistics) {
+        try {
+            documentBulkExecutor.execute(ImmutableList.of(createMigrationEntryUpdate(version, State.SUCCESS, "", Optional.of(statistics)), createHeadMigration(head)), "false");
+        } catch (Exception e) {
+            throw new MigrationFailedException("Performing migration version " + version + " failed. Message: " + getFailureMessage(e), e);
+        }
+    }
+
+    private UpdateDocumentMigration createMigrationEntryUpdate(String version, State state, String failureMessage, Optional<VersionStatistics> statistics) throws JsonProcessingException {
+        final Map<String, Object> doc = new HashMap<>();
+        doc.put(MigrationEntryMeta.STATE_FIELD, state.name());
+        doc.put(MigrationEntryMeta.FAUILURE_MESSAGE_FIELD, failureMessage);
+        if (statistics.isPresent()) {
+            doc.put(MigrationEntryMeta.DURATION_IN_MILLIS_FIELD, statistics.get().getDurationInMillis());
+            doc.put(MigrationEntryMeta.STEPS_FIELD, statistics.get().getSteps());
+        }
+        final Map<String, Map<String, Object>> update = ImmutableMap.of("doc", doc);
+
+        return new UpdateDocumentMigration(
+                MigrationEntryMeta.INDEX,
+                identifier + "-" + version,
+                objectMapper.writeValueAsString(update)
         );
+    }
 
+    private void updateMigrationEntryTask(String version, int step, String taskId) {
         try {
-            performRequest(
-                    new UpdateDocumentMigration(
-                            MigrationEntryMeta.INDEX,
-                            identifier + "-" + version,
-                            objectMapper.writeValueAsString(update)
-                    )
+            performRequest(createMigrationEntryTaskUpdate(version, step, taskId), NO_REFRESH);
+        } catch (Exception e) {
+            throw new MigrationFailedException("Recording reindex task " + taskId + " of migration version " + version + " failed. Message: " + getFailureMessage(e), e);
+        }
+    }
+
+    /**
+     * The steps after a reindex aren't recorded, so once the reindex is done the version can't be resumed anymore. If it
+     * stops in a later step it is reported as failed instead of being resumed at the reindex and applying the steps after
+     * it twice.
+     */
+    private void clearMigrationEntryTask(String version, String taskId) {
+        try {
+            performRequest(createMigrationEntryTaskUpdate(version, null, null), NO_REFRESH);
+        } catch (Exception e) {
+            throw new MigrationFailedException("Recording completion of reindex task " + taskId + " of migration version " + version + " failed. Message: " + getFailureMessage(e), e);
+        }
+    }
+
+    /**
+     * Written as tree, null values have to be sent to remove the fields
+     */
+    private UpdateDocumentMigration createMigrationEntryTaskUpdate(String version, Integer step, String taskId) {
+        final ObjectNode update = objectMapper.createObjectNode();
+        final ObjectNode doc = update.putObject("doc");
+        doc.put(MigrationEntryMeta.CURRENT_STEP_FIELD, step);
+        doc.put(MigrationEntryMeta.TASK_ID_FIELD, taskId);
+
+        return new UpdateDocumentMigration(
+                MigrationEntryMeta.INDEX,
+                identifier + "-" + version,
+                update.toString()
+        );
+    }
+
+    /**
+     * Read-only check done before the system indices are created and the lock is taken. The history is read without a
+     * refresh, so a stale view only shows less applied versions and leads to the regular path under the lock. Only a
+     * history matching the local versions, names and checksums exactly counts as applied. Anything else, e.g. a changed
+     * or removed changeset, is left to the checks of the regular path.
+     */
+    private boolean isMigrationSetApplied(final List<MigrationSetEntry> orderedMigrationSetEntries) {
+        final List<MigrationMeta> migrationMetas = orderedMigrationSetEntries.stream().map(e -> e.getMigrationMeta()).collect(Collectors.toList());
+        final Optional<MigrationHead> head = getHead();
+        if (head.isPresent() && head.get().getState() == State.SUCCESS && head.get().getVersionCount() == migrationMetas.size()) {
+            // Unchanged files are verified with their raw checksums, without parsing them
+            if (head.get().getRawChainHash() != null && head.get().getRawChainHash().equals(rawChainHash(migrationMetas).orElse(null))) {
+                return true;
+            }
+            if (head.get().getChainHash().equals(chainHash(migrationMetas))) {
+                return true;
+            }
+        }
+
+        final List<MigrationEntry> allMigrations;
+        try {
+            allMigrations = readAllMigrations();
+        } catch (ResponseException e) {
+            if (e.getResponse().getStatusLine().getStatusCode() == RestStatus.NOT_FOUND.getStatus()) {
+                return false;
+            }
+            throw new MigrationFailedException("Could not access '" + MigrationEntryMeta.INDEX + "' index", e);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+
+        // An entry which isn't successful may belong to a version another process is applying right now, so failures
+        // and conflicts are only checked under the lock
+        if (allMigrations.stream().anyMatch(e -> e.getState() != State.SUCCESS)) {
+            return false;
+        }
+
+        // Only an exact match counts, conflicts and smaller local sets are reported by the checks under the lock
+        if (allMigrations.size() != migrationMetas.size()) {
+            return false;
+        }
+        for (int i = 0; i < allMigrations.size(); i++) {
+            if (!allMigrations.get(i).getVersion().equals(migrationMetas.get(i).getVersion()) ||
+                    !allMigrations.get(i).getName().equals(migrationMetas.get(i).getName()) ||
+                    !hasSameChecksum(allMigrations.get(i), migrationMetas.get(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Realtime read of the head document, so it's up to date even right after another client wrote it.
+     */
+    private Optional<MigrationHead> getHead() {
+        try {
+            final GetResponse getResponse = restHighLevelClient.get(new GetRequest(MigrationEntryMeta.INDEX, identifier + MigrationEntryMeta.HEAD_ID_SUFFIX), RequestOptions.DEFAULT);
+            return getResponse.isExists() ? Optional.of(objectMapper.readValue(getResponse.getSourceAsString(), MigrationHead.class)) : Optional.empty();
+        } catch (ElasticsearchStatusException e) {
+            if (e.status() == RestStatus.NOT_FOUND) {
+                return Optional.empty();
+            }
+            throw new MigrationFailedException("Could not access '" + MigrationEntryMeta.INDEX + "' index", e);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    /**
+     * Writes the head derived from the full history if the stored one is missing or differs, e.g. for histories written by older versions.
+     */
+    private MigrationHead repairHead(final List<MigrationEntry> migrationEntries, final Optional<MigrationHead> storedHead) {
+        final MigrationHead head = createHead(migrationEntries);
+        if (!storedHead.isPresent() ||
+                storedHead.get().getState() != head.getState() ||
+                !storedHead.get().getVersionCount().equals(head.getVersionCount()) ||
+                !storedHead.get().getChainHash().equals(head.getChainHash()) ||
+                !Objects.equals(storedHead.get().getRawChainHash(), head.getRawChainHash())) {
+            log.info("Updating head of migration history. Applied versions: {}", head.getVersionCount());
+            writeHead(head);
+        }
+
+        return head;
+    }
+
+    private MigrationHead createHead(final List<MigrationEntry> migrationEntries) {
+        String chainHash = INITIAL_CHAIN_HASH;
+        String rawChainHash = INITIAL_CHAIN_HASH;
+        String latestVersion = null;
+        int versionCount = 0;
+        for (MigrationEntry migrationEntry : migrationEntries) {
+            if (migrationEntry.getState() == State.SUCCESS) {
+                chainHash = chainHash(chainHash, migrationEntry.getVersion(), migrationEntry.getName(), migrationEntry.getSha256Checksum());
+                rawChainHash = rawChainHash == null || migrationEntry.getRawSha256Checksum() == null ?
+                        null :
+                        chainHash(rawChainHash, migrationEntry.getVersion(), migrationEntry.getName(), migrationEntry.getRawSha256Checksum());
+                latestVersion = migrationEntry.getVersion();
+                versionCount++;
+            }
+        }
+        final State state = migrationEntries.isEmpty() ? State.SUCCESS : Iterables.getLast(migrationEntries).getState();
+        return new MigrationHead(identifier, state, latestVersion, versionCount, chainHash, Instant.now(), rawChainHash);
+    }
+
+    private void writeHead(final MigrationHead head) {
+        performRequest(createHeadMigration(head), NO_REFRESH);
+    }
+
+    private IndexDocumentMigration createHeadMigration(final MigrationHead head) {
+        try {
+            return new IndexDocumentMigration(
+                    MigrationEntryMeta.INDEX,
+                    Optional.of(identifier + MigrationEntryMeta.HEAD_ID_SUFFIX),
+                    Optional.of(OpType.INDEX),
+                    objectMapper.writeValueAsString(head)
             );
+        } catch (JsonProcessingException e) {
+            throw new MigrationFailedException("Could not serialize head of migration history", e);
+        }
+    }
+
+    private void writeHeadQuietly(final MigrationHead head) {
+        try {
+            writeHead(head);
         } catch (Exception e) {
-            throw new MigrationFailedException("Performing migration version " + version + " failed. Message: " + e.getCause().getMessage());
+            log.warn("Could not update head of migration history", e);
         }
     }
 
+    private static String chainHash(final List<MigrationMeta> migrationMetas) {
+        String chainHash = INITIAL_CHAIN_HASH;
+        for (MigrationMeta migrationMeta : migrationMetas) {
+            chainHash = chainHash(chainHash, migrationMeta);
+        }
+
+        return chainHash;
+    }
+
+    /**
+     * @return the chain hash over the raw checksums, empty if a file has no raw checksum
+     */
+    private static Optional<String> rawChainHash(final List<MigrationMeta> migrationMetas) {
+        String rawChainHash = INITIAL_CHAIN_HASH;
+        for (MigrationMeta migrationMeta : migrationMetas) {
+            if (!migrationMeta.getRawSha256Checksum().isPresent()) {
+                return Optional.empty();
+            }
+            rawChainHash = chainHash(rawChainHash, migrationMeta.getVersion(), migrationMeta.getName(), migrationMeta.getRawSha256Checksum().get());
+        }
+
+        return Optional.of(rawChainHash);
+    }
+
+    /**
+     * @return the raw chain hash including the version, null if the version or one before it has no recorded raw checksum
+     */
+    private static String rawChainHash(final String previousRawChainHash, final MigrationSetEntry migrationSetEntry) {
+        final Optional<String> rawSha256Checksum = getRecordableRawChecksum(migrationSetEntry);
+        if (previousRawChainHash == null || !rawSha256Checksum.isPresent()) {
+            return null;
+        }
+
+        return chainHash(previousRawChainHash, migrationSetEntry.getMigrationMeta().getVersion(), migrationSetEntry.getMigrationMeta().getName(), rawSha256Checksum.get());
+    }
+
+    private static String chainHash(final String previousChainHash, final MigrationMeta migrationMeta) {
+        return chainHash(previousChainHash, migrationMeta.getVersion(), migrationMeta.getName(), migrationMeta.getSha256Checksum());
+    }
+
+    private static String chainHash(final String previousChainHash, final String version, final String name, final String sha256Checksum) {
+        return HashUtils.hashSha256(ByteBuffer.wrap(Joiner.on('\n').join(previousChainHash, version, name, sha256Checksum).getBytes(Charsets.UTF_8)));
+    }
+
     private void checkAllPreviousMigrationsAppliedSuccessfully(final List<MigrationEntry> migrationEntries) {
         if (!ignorePreviousFailures) {
             for (MigrationEntry migrationEntry : migrationEntries) {
-                if (migrationEntry.getState() != State.SUCCESS) {
+                if (migrationEntry.getState() != State.SUCCESS && !isResumable(migrationEntry)) {
                     throw new PreviousMigrationFailedException("Previous migration in FAILED state. Message: " + migrationEntry.getFailureMessage());
                 }
             }
         }
     }
 
+    /**
+     * Equal raw checksums need no parsing. Different raw checksums can still be the same normalized changeset, e.g. after reformatting.
+     */
+    private static boolean hasSameChecksum(final MigrationEntry migrationEntry, final MigrationMeta migrationMeta) {
+        if (migrationEntry.getRawSha256Checksum() != null && migrationEntry.getRawSha256Checksum().equals(migrationMeta.getRawSha256Checksum().orElse(null))) {
+            return true;
+        }
+
+        return migrationEntry.getSha256Checksum().equals(migrationMeta.getSha256Checksum());
+    }
+
     private void checkForMetadataConflicts(final List<MigrationEntry> migrationEntries, final List<MigrationMeta> migrationMetas) {
         for (int i = 0; i < Math.min(migrationEntries.size(), migrationMetas.size()); i++) {
             if (!migrationEntries.get(i).getVersion().equals(migrationMetas.get(i).getVersion())) {
                 throw new MigrationFailedException("Version mismatch for " + migrationMetas.get(i).getName() + ". Local version: " + migrationMetas.get(i).getVersion() + ", ES version: " + migrationEntries.get(i).getVersion());
-            } else if (!migrationEntries.get(i).getSha256Checksum().equals(migrationMetas.get(i).getSha256Checksum())) {
+            } else if (!hasSameChecksum(migrationEntries.get(i), migrationMetas.get(i))) {
                 throw new MigrationFailedException("Checksum mismatch for " + migrationMetas.get(i).getName() + ". Local checksum: " + migrationMetas.get(i).getVersion() + ":" + migrationMetas.get(i).getSha256Checksum() + ", ES checksum: " + migrationEntries.get(i).getVersion() + ":" + migrationEntries.get(i).getSha256Checksum());
             } else if (!migrationEntries.get(i).getName().equals(migrationMetas.get(i).getName())) {
                 throw new MigrationFailedException("Name mismatch. Local name: " + migrationMetas.get(i).getVersion() + ":" + migrationMetas.get(i).getName() + ", ES name: " + migrationEntries.get(i).getVersion() + ":" + migrationEntries.get(i).getName());
@@ -294,9 +1084,10 @@ public class DefaultMigrationClient implements MigrationClient {
         }
     }
 
-    public void performRequestIgnoreExistingExceptions(final Migration migration) {
+    public boolean performRequestIgnoreExistingExceptions(final Migration migration) {
         try {
             performRequest(migration);
+            return true;
         } catch (MigrationFailedException e) {
             if (e.getCause() instanceof ResponseException) {
                 final ResponseException responseException = (ResponseException) e.getCause();
@@ -304,7 +1095,7 @@ public class DefaultMigrationClient implements MigrationClient {
                         (responseException.getMessage().contains("index_already_exists_exception") || // ES 5.x
                                 responseException.getMessage().contains("resource_already_exists_exception") || // ES 6.x
                                 responseException.getMessage().contains("IndexAlreadyExistsException"))) { // ES 1.x and 2.x
-                    return;
+                    return false;
                 }
             }
 
@@ -312,39 +1103,168 @@ public class DefaultMigrationClient implements MigrationClient {
         }
     }
 
-    private List<MigrationEntry> getAllMigrations() {
-        try {
-            final QueryBuilder queryBuilder = QueryBuilders.boolQuery().must(QueryBuilders.termQuery(MigrationEntryMeta.IDENTIFIER_FIELD, identifier));
-            final SearchRequest searchRequest = new SearchRequest()
-                    .indices(MigrationEntryMeta.INDEX)
-                    .searchType(SearchType.DEFAULT)
-                    .source(SearchSourceBuilder.searchSource().query(queryBuilder).fetchSource(true).size(1000));
-
-            final SearchResponse searchResponse = restHighLevelClient.search(searchRequest, RequestOptions.DEFAULT);
-            if (searchResponse.status() == RestStatus.OK) {
-                final List<MigrationEntry> migrationEntries = transformHitsFromEs(searchResponse.getHits(), MigrationEntry.class);
-                migrationEntries.sort(new VersionComparator<>(VERSION_REGEX_PATTERN, 1, ".", e -> e.getVersion()));
+    /**
+     * Reads the entries of the local versions with a realtime _mget. The result is only used if it is consistent with the
+     * head, i.e. there are no applied versions unknown to the local migration set. Otherwise the whole history is searched,
+     * which needs a refresh of the version index first.
+     */
+    private List<MigrationEntry> getMigrations(final List<MigrationSetEntry> orderedMigrationSetEntries, final Optional<MigrationHead> head) {
+        if (head.isPresent()) {
+            final List<MigrationEntry> migrationEntries = multiGetMigrations(orderedMigrationSetEntries);
+            String chainHash = INITIAL_CHAIN_HASH;
+            int versionCount = 0;
+            for (MigrationEntry migrationEntry : migrationEntries) {
+                if (migrationEntry.getState() == State.SUCCESS) {
+                    chainHash = chainHash(chainHash, migrationEntry.getVersion(), migrationEntry.getName(), migrationEntry.getSha256Checksum());
+                    versionCount++;
+                }
+            }
+            final State state = migrationEntries.isEmpty() ? State.SUCCESS : Iterables.getLast(migrationEntries).getState();
+
+            if (head.get().getVersionCount() == versionCount && head.get().getChainHash().equals(chainHash) && head.get().getState() == state) {
                 return migrationEntries;
-            } else {
-                throw new MigrationFailedException("Could not access '" + MigrationEntryMeta.INDEX + "' index. Failures: " + Arrays.asList(searchResponse.getShardFailures()));
             }
+        }
+
+        refreshIndices(MigrationEntryMeta.INDEX);
+        return getAllMigrations();
+    }
+
+    private List<MigrationEntry> multiGetMigrations(final List<MigrationSetEntry> orderedMigrationSetEntries) {
+        if (orderedMigrationSetEntries.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        try {
+            final MultiGetRequest multiGetRequest = new MultiGetRequest();
+            orderedMigrationSetEntries.forEach(e -> multiGetRequest.add(MigrationEntryMeta.INDEX, identifier + "-" + e.getMigrationMeta().getVersion()));
+
+            final List<MigrationEntry> migrationEntries = new ArrayList<>();
+            for (MultiGetItemResponse itemResponse : restHighLevelClient.mget(multiGetRequest, RequestOptions.DEFAULT)) {
+                if (itemResponse.isFailed()) {
+                    throw new MigrationFailedException("Could not read migration entry " + itemResponse.getId() + ". Message: " + itemResponse.getFailure().getMessage());
+                } else if (itemResponse.getResponse().isExists()) {
+                    migrationEntries.add(objectMapper.readValue(itemResponse.getResponse().getSourceAsString(), MigrationEntry.class));
+                }
+            }
+
+            return migrationEntries;
         } catch (IOException e) {
             throw new MigrationFailedException("IO Exception during migration", e);
         }
     }
 
-    public void performRequest(final Migration migration) {
+    private List<MigrationEntry> getAllMigrations() {
         try {
-            final StringEntity stringEntity = new StringEntity(migration.getBody(), ContentType.APPLICATION_JSON);
+            return readAllMigrations();
+        } catch (ResponseException e) {
+            throw new MigrationFailedException("Could not access '" + MigrationEntryMeta.INDEX + "' index", e);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    private List<MigrationEntry> readAllMigrations() throws IOException {
+        final List<MigrationEntry> migrationEntries = migrationHistoryReader.readAll(identifier);
+        if (migrationEntries.stream().anyMatch(e -> e.getVersionSortKey() == null)) {
+            // Entries written before the sort key existed aren't sorted by ES
+            migrationEntries.sort(new VersionComparator<>(VERSION_REGEX_PATTERN, 1, ".", e -> e.getVersion()));
+        }
+
+        return migrationEntries;
+    }
+
+    /**
+     * Adds the raw checksums to applied entries written without one, e.g. by older library versions. Only called after
+     * the entries were verified against the local changesets.
+     */
+    private List<MigrationEntry> backfillRawChecksums(final List<MigrationEntry> migrationEntries, final List<MigrationSetEntry> orderedMigrationSetEntries) {
+        final List<MigrationEntry> backfilledMigrationEntries = new ArrayList<>(migrationEntries.size());
+        final List<DocumentMigration> updates = new ArrayList<>();
+        for (int i = 0; i < migrationEntries.size(); i++) {
+            final MigrationEntry migrationEntry = migrationEntries.get(i);
+            final Optional<String> rawSha256Checksum;
+            if (migrationEntry.getState() == State.SUCCESS && migrationEntry.getRawSha256Checksum() == null && i < orderedMigrationSetEntries.size()) {
+                rawSha256Checksum = getRecordableRawChecksum(orderedMigrationSetEntries.get(i));
+                orderedMigrationSetEntries.get(i).release();
+            } else {
+                rawSha256Checksum = Optional.empty();
+            }
+            if (!rawSha256Checksum.isPresent()) {
+                backfilledMigrationEntries.add(migrationEntry);
+                continue;
+            }
+
+            try {
+                updates.add(new UpdateDocumentMigration(
+                        MigrationEntryMeta.INDEX,
+                        identifier + "-" + migrationEntry.getVersion(),
+                        objectMapper.writeValueAsString(ImmutableMap.of("doc", ImmutableMap.of(MigrationEntryMeta.RAW_SHA_256_CHECKSUM_FIELD, rawSha256Checksum.get())))
+                ));
+            } catch (JsonProcessingException e) {
+                throw new MigrationFailedException("Could not serialize raw checksum", e);
+            }
+            backfilledMigrationEntries.add(migrationEntry.withRawSha256Checksum(rawSha256Checksum.get()));
+        }
+
+        if (!updates.isEmpty()) {
+            log.info("Adding raw checksums to {} migration entries", updates.size());
+            documentBulkExecutor.execute(updates, "false");
+        }
+
+        return backfilledMigrationEntries;
+    }
+
+    private void backfillVersionSortKeys(final List<MigrationEntry> migrationEntries) {
+        final List<DocumentMigration> updates = new ArrayList<>();
+        for (MigrationEntry migrationEntry : migrationEntries) {
+            if (migrationEntry.getVersionSortKey() == null) {
+                try {
+                    updates.add(new UpdateDocumentMigration(
+                            MigrationEntryMeta.INDEX,
+                            identifier + "-" + migrationEntry.getVersion(),
+                            objectMapper.writeValueAsString(ImmutableMap.of("doc", ImmutableMap.of(MigrationEntryMeta.VERSION_SORT_KEY_FIELD, VersionSortKey.of(migrationEntry.getVersion()))))
+                    ));
+                } catch (JsonProcessingException e) {
+                    throw new MigrationFailedException("Could not serialize version sort key", e);
+                }
+            }
+        }
+
+        if (!updates.isEmpty()) {
+            log.info("Adding version sort keys to {} migration entries", updates.size());
+            documentBulkExecutor.execute(updates, "false");
+        }
+    }
+
+    public Response performRequest(final Migration migration) {
+        return performRequest(migration, Collections.emptyMap());
+    }
+
+    private Response performRequest(final Migration migration, final Map<String, String> parameterOverrides) {
+        return performRequest(migration, parameterOverrides, new StepStatistics());
+    }
+
+    private Response performRequest(final Migration migration, final Map<String, String> parameterOverrides, final StepStatistics statistics) {
+        try {
+            final HttpEntity entity = wireFormatCodec.toEntity(migration.getBodyBytes());
             final Request request = new Request(migration.getMethod().name(), migration.getUrl());
-            request.addParameters(augmentParameters(migration.getParameters()));
-            request.setEntity(stringEntity);
+            final Map<String, String> parameters = new HashMap<>(migration.getParameters());
+            parameters.putAll(parameterOverrides);
+            request.addParameters(augmentParameters(parameters));
+            request.setEntity(entity);
 
             final RequestOptions.Builder builder = RequestOptions.DEFAULT.toBuilder();
             migration.getHeaders().entries().forEach(e -> builder.addHeader(e.getKey(), e.getValue()));
+            if (migration.getHeaders().keySet().stream().noneMatch(ACCEPT_HEADER::equalsIgnoreCase)) {
+                wireFormatCodec.acceptJson(builder);
+            }
             request.setOptions(builder.build());
+            statistics.addRequest(entity);
 
-            restHighLevelClient.getLowLevelClient().performRequest(request);
+            final Response response = getRestClient(migration).performRequest(request);
+            statistics.addResponse(response.getEntity());
+            return response;
         } catch (ResponseException e) {
             throw new MigrationFailedException("Error performing migration", e);
         } catch (IOException e) {
@@ -376,10 +1296,10 @@ public class DefaultMigrationClient implements MigrationClient {
         }
     }
 
-    public int getNumberOfShards(String index) {
+    public int getNumberOfDataNodes() {
         try {
-            final Response response = restHighLevelClient.getLowLevelClient().performRequest(new Request("GET", "/" + index + "_settings"));
-            return JsonPath.read(IOUtils.toString(response.getEntity().getContent(), Charsets.UTF_8), "$." + index + ".settings.index.number_of_shards");
+            final Response response = restHighLevelClient.getLowLevelClient().performRequest(new Request("GET", "/_nodes/data:true"));
+            return JsonPath.read(IOUtils.toString(response.getEntity().getContent(), Charsets.UTF_8), "$._nodes.total");
         } catch (ResponseException e) {
             throw new MigrationFailedException("Error performing migration", e);
         } catch (IOException e) {
@@ -387,70 +1307,70 @@ public class DefaultMigrationClient implements MigrationClient {
         }
     }
 
-
-    private <T> T performUnderGlobalLock(Action0<T> action) {
-        if (acquireGlobalLock()) {
-            try {
-                return action.call();
-            } finally {
-                releaseGlobalLock();
-            }
-        } else {
-            throw new MigrationLockedException("Migration is locked by another process");
-        }
-    }
-
-    private boolean acquireGlobalLock() {
+    /**
+     * @param index index name, alias, pattern or a comma separated list of those
+     * @return the number of primary shards of all resolved indices, missing indices are ignored
+     */
+    public int getNumberOfShards(String index) {
         try {
-            final IndexRequest indexRequest = new IndexRequest().index(LockEntryMeta.INDEX)
-                    .create(true)
-                    .id(identifier + "-global")
-                    .source(objectMapper.writeValueAsString(new LockEntry(Instant.now())), XContentType.JSON);
-            restHighLevelClient.index(indexRequest, RequestOptions.DEFAULT);
-            return true;
-        } catch (ElasticsearchStatusException e) {
-            if (e.status() == RestStatus.CONFLICT &&
-                    (e.getMessage().contains("version_conflict_engine_exception"))) {  // ES 6.x
-                return false;
-            }
-
-            throw new MigrationFailedException("Error acquiring lock", e);
+            final Request request = new Request("GET", "/" + index + "/_settings/index.number_of_shards");
+            request.addParameter("ignore_unavailable", "true");
+            final Response response = restHighLevelClient.getLowLevelClient().performRequest(request);
+            final List<String> numberOfShards = JsonPath.read(IOUtils.toString(response.getEntity().getContent(), Charsets.UTF_8), "$.*.settings.index.number_of_shards");
+            return numberOfShards.stream().mapToInt(Integer::parseInt).sum();
+        } catch (ResponseException e) {
+            throw new MigrationFailedException("Error performing migration", e);
         } catch (IOException e) {
             throw new MigrationFailedException("IO Exception during migration", e);
         }
     }
 
-    private boolean releaseGlobalLock() {
+    /**
+     * @return the names of all aliases in the cluster
+     */
+    public Set<String> getAliases() {
         try {
-            final DeleteRequest deleteRequest = new DeleteRequest().index(LockEntryMeta.INDEX).id(identifier + "-global");
-            restHighLevelClient.delete(deleteRequest, RequestOptions.DEFAULT);
-            return true;
+            final Request request = new Request("GET", "/_alias");
+            final Response response = restHighLevelClient.getLowLevelClient().performRequest(request);
+            final List<Map<String, Object>> aliases = JsonPath.read(IOUtils.toString(response.getEntity().getContent(), Charsets.UTF_8), "$.*.aliases");
+            return aliases.stream().flatMap(e -> e.keySet().stream()).collect(Collectors.toSet());
+        } catch (ResponseException e) {
+            throw new MigrationFailedException("Error performing migration", e);
         } catch (IOException e) {
             throw new MigrationFailedException("IO Exception during migration", e);
         }
     }
 
-    private <T> List<T> transformHitsFromEs(SearchHits hits, Class<T> clazz) {
-        return Arrays.asList(hits.getHits()).stream()
-                .map(hit -> transformSourceFromEs(hit.getSourceAsString(), clazz))
-                .collect(Collectors.toList());
-    }
+    /**
+     * Duration and recorded steps of one version. Steps of parallel migrations are added concurrently.
+     */
+    private static class VersionStatistics {
 
-    private <T> T transformSourceFromEs(String source, Class<T> clazz) {
-        try {
-            if (source != null) {
-                log.debug("Response from ES: {}", source);
-                return objectMapper.readValue(source, clazz);
-            } else {
-                return null;
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        private final Instant started = Instant.now();
+        private final List<MigrationStep> steps = Collections.synchronizedList(new ArrayList<>());
+        private final MigrationMetrics metrics;
+
+        VersionStatistics(final MigrationMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        void add(final MigrationStep step) {
+            steps.add(step);
+            metrics.recordStep(step.getType(), Duration.ofMillis(step.getDurationInMillis()), step.getRequestBytes(), step.getResponseBytes(), step.getRetries());
         }
-    }
 
-    @FunctionalInterface
-    private interface Action0<T> {
-        T call();
+        long getDurationInMillis() {
+            return Duration.between(started, Instant.now()).toMillis();
+        }
+
+        List<MigrationStep> getSteps() {
+            final List<MigrationStep> sortedSteps;
+            synchronized (steps) {
+                sortedSteps = new ArrayList<>(steps);
+            }
+            sortedSteps.sort(Comparator.comparing(e -> e.getStep()));
+
+            return sortedSteps;
+        }
     }
 }
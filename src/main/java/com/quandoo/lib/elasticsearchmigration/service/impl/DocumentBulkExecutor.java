@@ -0,0 +1,309 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Joiner;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.es.WireFormat;
+import com.quandoo.lib.elasticsearchmigration.model.migration.DocumentMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.IndexDocumentMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.Migration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.OpType;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.entity.ContentType;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Sends runs of {@link DocumentMigration}s as _bulk requests. Batches are cut by number of actions and payload size,
+ * items rejected with 429 are retried on their own and any other item failure fails the whole run.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+@Slf4j
+class DocumentBulkExecutor {
+
+    static final ContentType NDJSON_CONTENT_TYPE = ContentType.create("application/x-ndjson");
+
+    private static final String FILTER_PATH = "took,errors,items.*._index,items.*._id,items.*.status,items.*.error";
+    private static final long INITIAL_RETRY_BACKOFF_IN_MILLIS = 100;
+    private static final int MAX_REPORTED_FAILURES = 10;
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final ObjectMapper objectMapper;
+    private final int maxActions;
+    private final long maxSizeInBytes;
+    private final int retryCount;
+    private final WireFormatCodec wireFormatCodec;
+
+    DocumentBulkExecutor(@NonNull final RestHighLevelClient restHighLevelClient,
+                         @NonNull final ObjectMapper objectMapper,
+                         final int maxActions,
+                         final long maxSizeInBytes,
+                         final int retryCount) {
+        this(restHighLevelClient, objectMapper, maxActions, maxSizeInBytes, retryCount, new WireFormatCodec(WireFormat.JSON, objectMapper.getFactory()));
+    }
+
+    DocumentBulkExecutor(@NonNull final RestHighLevelClient restHighLevelClient,
+                         @NonNull final ObjectMapper objectMapper,
+                         final int maxActions,
+                         final long maxSizeInBytes,
+                         final int retryCount,
+                         @NonNull final WireFormatCodec wireFormatCodec) {
+        this.restHighLevelClient = restHighLevelClient;
+        this.objectMapper = objectMapper;
+        this.maxActions = maxActions;
+        this.maxSizeInBytes = maxSizeInBytes;
+        this.retryCount = retryCount;
+        this.wireFormatCodec = wireFormatCodec;
+    }
+
+    static boolean supports(final Migration migration) {
+        if (migration instanceof IndexDocumentMigration) {
+            // The index API only knows the 'index' and 'create' op types, anything else keeps the old single request behaviour
+            final OpType opType = ((IndexDocumentMigration) migration).getOpType();
+            return opType == OpType.INDEX || opType == OpType.CREATE;
+        }
+
+        return migration instanceof DocumentMigration;
+    }
+
+    void execute(final List<DocumentMigration> migrations, final String refresh) {
+        execute(migrations, refresh, new StepStatistics());
+    }
+
+    void execute(final List<DocumentMigration> migrations, final String refresh, final StepStatistics statistics) {
+        for (List<BulkItem> batch : partition(migrations)) {
+            executeBatch(batch, refresh, statistics);
+        }
+    }
+
+    boolean exceedsBatchLimits(final int batchActions, final long batchSizeInBytes, final BulkItem next) {
+        return batchActions > 0 && (batchActions >= maxActions || batchSizeInBytes + next.getPayload().length > maxSizeInBytes);
+    }
+
+    List<List<BulkItem>> partition(final List<DocumentMigration> migrations) {
+        final List<List<BulkItem>> batches = new LinkedList<>();
+        List<BulkItem> currentBatch = new ArrayList<>();
+        long currentBatchSize = 0;
+        for (DocumentMigration migration : migrations) {
+            final BulkItem bulkItem = toBulkItem(migration);
+            if (exceedsBatchLimits(currentBatch.size(), currentBatchSize, bulkItem)) {
+                batches.add(currentBatch);
+                currentBatch = new ArrayList<>();
+                currentBatchSize = 0;
+            }
+
+            currentBatch.add(bulkItem);
+            currentBatchSize += bulkItem.getPayload().length;
+        }
+
+        if (!currentBatch.isEmpty()) {
+            batches.add(currentBatch);
+        }
+
+        return batches;
+    }
+
+    BulkItem toBulkItem(final DocumentMigration migration) {
+        return toBulkItem(
+                migration.getIndex() + "/" + migration.getDocumentId().orElse("<auto>") + " (" + migration.getOpType() + ")",
+                migration.getIndex(),
+                migration.getDocumentId(),
+                migration.getOpType(),
+                // Line breaks can only appear as whitespace in valid JSON, so flattening them keeps the document as is
+                migration.getDocumentBytes().map(DocumentBulkExecutor::flattenLineBreaks)
+        );
+    }
+
+    /**
+     * Copies the document with line breaks replaced by spaces. They are single bytes in UTF-8, so no decoding is needed.
+     */
+    private static byte[] flattenLineBreaks(final ByteBuffer document) {
+        final byte[] bytes = new byte[document.remaining()];
+        document.duplicate().get(bytes);
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n' || bytes[i] == '\r') {
+                bytes[i] = ' ';
+            }
+        }
+        return bytes;
+    }
+
+    BulkItem toBulkItem(final String description, final String index, final Optional<String> id, final OpType opType, final Optional<byte[]> document) {
+        try {
+            final ObjectNode metadata = objectMapper.createObjectNode();
+            metadata.put("_index", index);
+            id.ifPresent(e -> metadata.put("_id", e));
+            final ObjectNode action = objectMapper.createObjectNode();
+            action.set(opType.name().toLowerCase(), metadata);
+
+            final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            payload.write(wireFormatCodec.encodeBulkLine(objectMapper.writeValueAsBytes(action)));
+            if (document.isPresent()) {
+                payload.write(wireFormatCodec.encodeBulkLine(document.get()));
+            }
+
+            return new BulkItem(description, payload.toByteArray());
+        } catch (IOException e) {
+            throw new MigrationFailedException("Could not serialize bulk action for index " + index, e);
+        }
+    }
+
+    void executeBatch(final List<BulkItem> batch, final String refresh, final StepStatistics statistics) {
+        List<BulkItem> pending = batch;
+        for (int attempt = 0; ; attempt++) {
+            final List<BulkItem> rejected = new LinkedList<>();
+            final List<String> failures = new LinkedList<>();
+            send(pending, refresh, rejected, failures, statistics);
+
+            if (!failures.isEmpty()) {
+                throw new MigrationFailedException("Bulk request failed for " + failures.size() + " item(s): " + summarize(failures));
+            } else if (rejected.isEmpty()) {
+                return;
+            } else if (attempt >= retryCount) {
+                throw new MigrationFailedException("Bulk request rejected for " + rejected.size() + " item(s) after " + retryCount + " retries: " + summarize(describe(rejected)));
+            }
+
+            final long backoff = INITIAL_RETRY_BACKOFF_IN_MILLIS << attempt;
+            log.info("{} bulk item(s) rejected by the cluster. Retrying in {}ms", rejected.size(), backoff);
+            sleep(backoff);
+            statistics.addRetry();
+            pending = rejected;
+        }
+    }
+
+    private void send(final List<BulkItem> items, final String refresh, final List<BulkItem> rejected, final List<String> failures, final StepStatistics statistics) {
+        try {
+            final Request request = new Request("POST", "/_bulk");
+            request.addParameter("refresh", refresh);
+            request.addParameter("filter_path", FILTER_PATH);
+            request.setEntity(wireFormatCodec.toBulkEntity(concat(items)));
+            final RequestOptions.Builder options = request.getOptions().toBuilder();
+            wireFormatCodec.acceptJson(options);
+            request.setOptions(options);
+            statistics.addRequest(request.getEntity());
+
+            final Response response = restHighLevelClient.getLowLevelClient().performRequest(request);
+            statistics.addResponse(response.getEntity());
+            final JsonNode result;
+            try (JsonParser parser = wireFormatCodec.createParser(response.getEntity())) {
+                result = objectMapper.readTree(parser);
+            }
+            if (result.has("took")) {
+                statistics.addTook(result.path("took").asLong());
+            }
+            if (!result.path("errors").asBoolean(false)) {
+                return;
+            }
+
+            final Iterator<JsonNode> itemResults = result.path("items").elements();
+            for (BulkItem item : items) {
+                final JsonNode itemResult = itemResults.hasNext() ? itemResults.next().elements().next() : objectMapper.missingNode();
+                if (!itemResult.has("error")) {
+                    continue;
+                }
+
+                if (itemResult.path("status").asInt() == RestStatus.TOO_MANY_REQUESTS.getStatus()) {
+                    rejected.add(item);
+                } else {
+                    failures.add(item.getDescription() + ": " + describeError(itemResult.path("error")));
+                }
+            }
+        } catch (ResponseException e) {
+            if (e.getResponse().getStatusLine().getStatusCode() == RestStatus.TOO_MANY_REQUESTS.getStatus()) {
+                rejected.addAll(items);
+            } else {
+                throw new MigrationFailedException("Error performing bulk migration", e);
+            }
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    private byte[] concat(final List<BulkItem> items) {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (BulkItem item : items) {
+            body.write(item.getPayload(), 0, item.getPayload().length);
+        }
+
+        return body.toByteArray();
+    }
+
+    private String describeError(final JsonNode error) {
+        if (error.isObject()) {
+            return error.path("type").asText() + ": " + error.path("reason").asText();
+        }
+
+        try {
+            return objectMapper.writeValueAsString(error);
+        } catch (JsonProcessingException e) {
+            return error.toString();
+        }
+    }
+
+    private List<String> describe(final List<BulkItem> items) {
+        final List<String> descriptions = new LinkedList<>();
+        items.forEach(e -> descriptions.add(e.getDescription()));
+        return descriptions;
+    }
+
+    private String summarize(final List<String> failures) {
+        final String reported = Joiner.on("; ").join(failures.subList(0, Math.min(failures.size(), MAX_REPORTED_FAILURES)));
+        return failures.size() > MAX_REPORTED_FAILURES ? reported + "; ... and " + (failures.size() - MAX_REPORTED_FAILURES) + " more" : reported;
+    }
+
+    private void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MigrationFailedException("Interrupted while retrying bulk request", e);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static class BulkItem {
+
+        @NonNull
+        private final String description;
+        @NonNull
+        private final byte[] payload;
+    }
+}
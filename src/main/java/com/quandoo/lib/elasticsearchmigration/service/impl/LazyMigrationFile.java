@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.quandoo.lib.elasticsearchmigration.model.input.ChecksumedMigrationFile;
+
+/**
+ * Changeset file which is parsed on demand. The parsed file is kept until it is released, only computing the checksum
+ * doesn't keep it, so verifying applied versions doesn't hold their definitions on the heap.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+class LazyMigrationFile {
+
+    private final String resource;
+    private final YamlParser yamlParser;
+    private ChecksumedMigrationFile checksumedMigrationFile;
+
+    LazyMigrationFile(final String resource, final YamlParser yamlParser) {
+        this.resource = resource;
+        this.yamlParser = yamlParser;
+    }
+
+    synchronized ChecksumedMigrationFile load() {
+        if (checksumedMigrationFile == null) {
+            checksumedMigrationFile = yamlParser.parse(resource);
+        }
+        return checksumedMigrationFile;
+    }
+
+    String getSha256Checksum() {
+        synchronized (this) {
+            if (checksumedMigrationFile != null) {
+                return checksumedMigrationFile.getSha256Checksum();
+            }
+        }
+        return yamlParser.parse(resource).getSha256Checksum();
+    }
+
+    synchronized void release() {
+        checksumedMigrationFile = null;
+    }
+}
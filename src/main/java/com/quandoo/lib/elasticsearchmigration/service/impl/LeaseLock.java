@@ -0,0 +1,314 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.es.LockEntry;
+import com.quandoo.lib.elasticsearchmigration.model.es.LockEntryMeta;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lock stored as lease in the lock index. The holder renews the lease from a background heartbeat, a lease which isn't
+ * renewed in time (e.g. the holder got killed) is taken over by the next process trying to acquire the lock.
+ * Every write is conditional on the sequence number and primary term read before, so only one process can win a takeover.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+@Slf4j
+class LeaseLock implements AutoCloseable {
+
+    private static final int HEARTBEATS_PER_LEASE = 3;
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final ObjectMapper objectMapper;
+    private final String id;
+    private final Duration leaseDuration;
+    private final String owner = UUID.randomUUID().toString();
+    private final String host = resolveHost();
+    private final ScheduledExecutorService heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("es-migration-lock-heartbeat-%d").setDaemon(true).build()
+    );
+
+    private ScheduledFuture<?> heartbeat;
+    private boolean held;
+    private boolean lost;
+    private long seqNo;
+    private long primaryTerm;
+    private Instant acquired;
+    private Instant lastRenewal;
+    private Instant waitingSince;
+    private Duration lastWaitTime = Duration.ZERO;
+    private Duration lastHoldTime = Duration.ZERO;
+
+    LeaseLock(@NonNull final RestHighLevelClient restHighLevelClient,
+              @NonNull final ObjectMapper objectMapper,
+              @NonNull final String id,
+              @NonNull final Duration leaseDuration) {
+        this.restHighLevelClient = restHighLevelClient;
+        this.objectMapper = objectMapper;
+        this.id = id;
+        this.leaseDuration = leaseDuration;
+    }
+
+    synchronized boolean acquire() {
+        final Instant now = Instant.now();
+        if (waitingSince == null) {
+            waitingSince = now;
+        }
+
+        if (!create(now) && !takeOverExpired(now)) {
+            return false;
+        }
+
+        held = true;
+        lost = false;
+        lastRenewal = now;
+        acquired = Instant.now();
+        lastWaitTime = Duration.between(waitingSince, acquired);
+        waitingSince = null;
+        final long heartbeatInterval = leaseDuration.toMillis() / HEARTBEATS_PER_LEASE;
+        heartbeat = heartbeatExecutor.scheduleWithFixedDelay(this::renew, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+        log.info("Acquired migration lock {} after waiting {}ms", id, lastWaitTime.toMillis());
+        return true;
+    }
+
+    synchronized void release() {
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+            heartbeat = null;
+        }
+
+        if (acquired != null) {
+            lastHoldTime = Duration.between(acquired, Instant.now());
+            acquired = null;
+            log.info("Released migration lock {} after holding it {}ms", id, lastHoldTime.toMillis());
+        }
+
+        if (!held) {
+            return;
+        }
+
+        held = false;
+        try {
+            restHighLevelClient.delete(
+                    new DeleteRequest().index(LockEntryMeta.INDEX).id(id).setIfSeqNo(seqNo).setIfPrimaryTerm(primaryTerm),
+                    RequestOptions.DEFAULT
+            );
+        } catch (ElasticsearchStatusException e) {
+            if (e.status() != RestStatus.CONFLICT && e.status() != RestStatus.NOT_FOUND) {
+                throw new MigrationFailedException("Error releasing lock", e);
+            }
+            log.warn("Migration lock {} was taken over by another process before it was released", id);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    /**
+     * Read-only check whether the lock is free or expired, used to poll the lock while waiting for it.
+     */
+    synchronized boolean isAvailable() {
+        try {
+            final GetResponse getResponse = restHighLevelClient.get(new GetRequest(LockEntryMeta.INDEX, id), RequestOptions.DEFAULT);
+            return !getResponse.isExists() || !expiresAt(objectMapper.readValue(getResponse.getSourceAsString(), LockEntry.class)).isAfter(Instant.now());
+        } catch (ElasticsearchStatusException e) {
+            if (e.status() == RestStatus.NOT_FOUND) {
+                return true;
+            }
+
+            throw new MigrationFailedException("Error reading lock", e);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    /**
+     * Fails if the lease got lost since it was acquired, e.g. because the heartbeat couldn't reach the cluster for a whole lease.
+     */
+    synchronized void checkHeld() {
+        if (held && isExpired(Instant.now())) {
+            markLost("expired without being renewed");
+        }
+        if (lost) {
+            throw new MigrationFailedException("Migration lock " + id + " was lost. Another process may be applying migrations");
+        }
+    }
+
+    /**
+     * Stops the heartbeat thread, the lock can't be used anymore afterwards
+     */
+    @Override
+    public synchronized void close() {
+        heartbeatExecutor.shutdownNow();
+    }
+
+    synchronized Duration getLastWaitTime() {
+        return lastWaitTime;
+    }
+
+    synchronized Duration getLastHoldTime() {
+        return lastHoldTime;
+    }
+
+    private boolean create(final Instant now) {
+        try {
+            final IndexResponse indexResponse = restHighLevelClient.index(
+                    newIndexRequest(now).create(true),
+                    RequestOptions.DEFAULT
+            );
+            remember(indexResponse);
+            return true;
+        } catch (ElasticsearchStatusException e) {
+            if (e.status() == RestStatus.CONFLICT) {
+                return false;
+            }
+
+            throw new MigrationFailedException("Error acquiring lock", e);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    private boolean takeOverExpired(final Instant now) {
+        try {
+            final GetResponse getResponse = restHighLevelClient.get(new GetRequest(LockEntryMeta.INDEX, id), RequestOptions.DEFAULT);
+            if (!getResponse.isExists()) {
+                // Released in the meantime
+                return create(now);
+            }
+
+            final LockEntry lockEntry = objectMapper.readValue(getResponse.getSourceAsString(), LockEntry.class);
+            final Instant expires = expiresAt(lockEntry);
+            if (expires.isAfter(now)) {
+                log.info("Migration locked by {} on {} until {}", lockEntry.getOwner().orElse("<unknown>"), lockEntry.getHost().orElse("<unknown>"), expires);
+                return false;
+            }
+
+            final IndexResponse indexResponse = restHighLevelClient.index(
+                    newIndexRequest(now).setIfSeqNo(getResponse.getSeqNo()).setIfPrimaryTerm(getResponse.getPrimaryTerm()),
+                    RequestOptions.DEFAULT
+            );
+            remember(indexResponse);
+            log.warn("Took over migration lock {} of {} on {} which expired at {}", id, lockEntry.getOwner().orElse("<unknown>"), lockEntry.getHost().orElse("<unknown>"), expires);
+            return true;
+        } catch (ElasticsearchStatusException e) {
+            if (e.status() == RestStatus.CONFLICT) {
+                // Another process was faster
+                return false;
+            }
+
+            throw new MigrationFailedException("Error acquiring lock", e);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    private synchronized void renew() {
+        if (!held) {
+            return;
+        }
+
+        final Instant now = Instant.now();
+        if (isExpired(now)) {
+            // Another process may have taken it over already, a late renewal must not hide that
+            markLost("expired without being renewed");
+            return;
+        }
+
+        try {
+            remember(restHighLevelClient.index(
+                    newIndexRequest(now).setIfSeqNo(seqNo).setIfPrimaryTerm(primaryTerm),
+                    RequestOptions.DEFAULT
+            ));
+            lastRenewal = now;
+            log.debug("Renewed migration lock {}", id);
+        } catch (ElasticsearchStatusException e) {
+            if (e.status() == RestStatus.CONFLICT || e.status() == RestStatus.NOT_FOUND) {
+                markLost("was taken over by another process");
+            } else {
+                log.warn("Renewing migration lock {} failed. Retrying with the next heartbeat", id, e);
+            }
+        } catch (Exception e) {
+            log.warn("Renewing migration lock {} failed. Retrying with the next heartbeat", id, e);
+        }
+    }
+
+    /**
+     * @return whether the lease written with the last successful renewal ran out, so another process may take it over
+     */
+    private boolean isExpired(final Instant now) {
+        return !now.isBefore(lastRenewal.plus(leaseDuration));
+    }
+
+    private void markLost(final String reason) {
+        log.error("Migration lock {} {}", id, reason);
+        held = false;
+        lost = true;
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+        }
+    }
+
+    private IndexRequest newIndexRequest(final Instant now) throws IOException {
+        return new IndexRequest()
+                .index(LockEntryMeta.INDEX)
+                .id(id)
+                .source(objectMapper.writeValueAsString(new LockEntry(acquired != null ? acquired : now, owner, host, now.plus(leaseDuration))), XContentType.JSON);
+    }
+
+    private Instant expiresAt(final LockEntry lockEntry) {
+        // Locks written by older versions have no expiry, they are treated as a lease starting at creation
+        return lockEntry.getExpires().orElse(lockEntry.getCreated().plus(leaseDuration));
+    }
+
+    private void remember(final IndexResponse indexResponse) {
+        seqNo = indexResponse.getSeqNo();
+        primaryTerm = indexResponse.getPrimaryTerm();
+    }
+
+    private static String resolveHost() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.quandoo.lib.elasticsearchmigration.service.MigrationMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.NonNull;
+
+import java.time.Duration;
+
+/**
+ * Publishes the migration metrics to a Micrometer registry. micrometer-core is an optional dependency, it has to be
+ * added by the application using this class.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public class MicrometerMigrationMetrics implements MigrationMetrics {
+
+    private static final String PREFIX = "elasticsearch.migration.";
+
+    private final MeterRegistry meterRegistry;
+
+    public MicrometerMigrationMetrics(@NonNull final MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void recordPhase(final Phase phase, final Duration duration) {
+        meterRegistry.timer(PREFIX + "phase", "phase", phase.name()).record(duration);
+    }
+
+    @Override
+    public void recordStep(final String migrationType, final Duration duration, final long bytesSent, final long bytesReceived, final int retries) {
+        meterRegistry.timer(PREFIX + "step", "type", migrationType).record(duration);
+        meterRegistry.counter(PREFIX + "bytes.sent", "type", migrationType).increment(bytesSent);
+        meterRegistry.counter(PREFIX + "bytes.received", "type", migrationType).increment(bytesReceived);
+        meterRegistry.counter(PREFIX + "retries", "type", migrationType).increment(retries);
+    }
+
+    @Override
+    public void incrementLockConflicts() {
+        meterRegistry.counter(PREFIX + "lock.conflicts").increment();
+    }
+}
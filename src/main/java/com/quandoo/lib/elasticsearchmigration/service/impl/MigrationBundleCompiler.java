@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Iterables;
+import com.quandoo.lib.elasticsearchmigration.model.bundle.MigrationBundle;
+import com.quandoo.lib.elasticsearchmigration.model.bundle.MigrationBundleEntry;
+import com.quandoo.lib.elasticsearchmigration.model.input.ChecksumedMigrationFile;
+import com.quandoo.lib.elasticsearchmigration.service.Parser;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Validates, normalizes and checksums the changeset files of a base package at build time and writes them as one bundle
+ * which is read by {@link BundleMigrationSetProvider}. Meant to be run after the resources were copied, e.g. in the
+ * process-classes phase:
+ * <pre>
+ * java com.quandoo.lib.elasticsearchmigration.service.impl.MigrationBundleCompiler &lt;basePackage&gt; &lt;outputDirectory&gt;
+ * </pre>
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+@Slf4j
+public class MigrationBundleCompiler {
+
+    private final Parser yamlParser;
+    private final ObjectMapper bundleMapper;
+
+    public MigrationBundleCompiler() {
+        this.yamlParser = new YamlParser();
+        this.bundleMapper = BundleMigrationSetProvider.createBundleMapper();
+    }
+
+    public static void main(final String[] args) throws IOException {
+        checkArgument(args.length == 2, "Usage: MigrationBundleCompiler <basePackage> <outputDirectory>");
+        new MigrationBundleCompiler().compileTo(args[0], Paths.get(args[1]));
+    }
+
+    /**
+     * Writes the bundle of the base package to the place {@link BundleMigrationSetProvider} looks for it
+     *
+     * @return the written bundle file
+     */
+    public Path compileTo(@NonNull final String basePackage, @NonNull final Path outputDirectory) throws IOException {
+        final MigrationBundle migrationBundle = compile(basePackage);
+        final Path bundleFile = outputDirectory.resolve(BundleMigrationSetProvider.bundleLocation(basePackage));
+        Files.createDirectories(bundleFile.getParent());
+        try (OutputStream outputStream = Files.newOutputStream(bundleFile)) {
+            write(migrationBundle, outputStream);
+        }
+
+        log.info("Compiled " + migrationBundle.getMigrations().size() + " changesets into " + bundleFile);
+        return bundleFile;
+    }
+
+    public MigrationBundle compile(@NonNull final String basePackage) {
+        final ClasspathScanner classpathScanner = new ClasspathScanner();
+        final List<MigrationBundleEntry> migrations = YamlDirectoryMigrationSetProvider.sortedResources(classpathScanner, basePackage, YamlDirectoryMigrationSetProvider.MIGRATION_FILE_PATH_PATTERN).stream()
+                .map(e -> toMigrationBundleEntry(e, YamlDirectoryMigrationSetProvider.MIGRATION_FILE_PATH_PATTERN))
+                .collect(Collectors.toList());
+
+        final List<String> sortedBaselineResources = YamlDirectoryMigrationSetProvider.sortedResources(classpathScanner, basePackage, YamlDirectoryMigrationSetProvider.BASELINE_FILE_PATH_PATTERN);
+        final Optional<MigrationBundleEntry> baseline = sortedBaselineResources.isEmpty() ?
+                Optional.empty() :
+                Optional.of(toMigrationBundleEntry(Iterables.getLast(sortedBaselineResources), YamlDirectoryMigrationSetProvider.BASELINE_FILE_PATH_PATTERN));
+
+        return new MigrationBundle(MigrationBundle.FORMAT_VERSION, migrations, baseline);
+    }
+
+    void write(final MigrationBundle migrationBundle, final OutputStream outputStream) throws IOException {
+        bundleMapper.writeValue(outputStream, migrationBundle);
+    }
+
+    private MigrationBundleEntry toMigrationBundleEntry(final String resource, final Pattern pattern) {
+        final Matcher matcher = YamlDirectoryMigrationSetProvider.matchResource(resource, pattern);
+        final ChecksumedMigrationFile checksumedMigrationFile = yamlParser.parse(resource);
+
+        return new MigrationBundleEntry(
+                YamlDirectoryMigrationSetProvider.toVersion(matcher),
+                matcher.group(2),
+                checksumedMigrationFile.getSha256Checksum(),
+                checksumedMigrationFile.getRawSha256Checksum(),
+                checksumedMigrationFile.getMigrationFile()
+        );
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.Option;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.migration.AliasesMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.CreateIndexMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.CreateOrUpdateIndexTemplateMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.Migration;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs a run of migrations concurrently while keeping the order of every two migrations which touch the same resource.
+ * The resources (index, template, pipeline) are derived from the URL of a migration. Migrations with unknown resources
+ * (aliases, wildcards, anything else) are barriers which run after all previous and before all following migrations.
+ * Aliases are the ones existing in the cluster when the run starts and the ones created by migrations of the run.
+ * Index changes and template or pipeline changes keep their order among each other as the latter apply to indices implicitly.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+@Slf4j
+class MigrationGraphExecutor {
+
+    private static final String INDEX_PREFIX = "index:";
+    private static final String TEMPLATE_PREFIX = "template:";
+    private static final String PIPELINE_PREFIX = "pipeline:";
+
+    private final int maxConcurrentMigrations;
+    private final Supplier<Set<String>> existingAliases;
+
+    /**
+     * @param existingAliases supplies the names of the aliases in the cluster, only called for runs applied in parallel
+     */
+    MigrationGraphExecutor(final int maxConcurrentMigrations, @NonNull final Supplier<Set<String>> existingAliases) {
+        this.maxConcurrentMigrations = maxConcurrentMigrations;
+        this.existingAliases = existingAliases;
+    }
+
+    /**
+     * @param aliases names which may resolve to other indices
+     * @return the resources touched by the migration or empty if they are unknown
+     */
+    static Optional<Set<String>> getResources(final Migration migration, final Set<String> aliases) {
+        final List<String> segments = Splitter.on('/').omitEmptyStrings().splitToList(migration.getUrl());
+        if (segments.size() == 2 && segments.get(0).equals("_template")) {
+            return Optional.of(ImmutableSet.of(TEMPLATE_PREFIX + segments.get(1)));
+        } else if (segments.size() == 3 && segments.get(0).equals("_ingest") && segments.get(1).equals("pipeline")) {
+            return Optional.of(ImmutableSet.of(PIPELINE_PREFIX + segments.get(2)));
+        } else if (segments.isEmpty() || segments.get(0).startsWith("_")) {
+            return Optional.empty();
+        } else if (migration instanceof CreateIndexMigration && createsAliases(migration)) {
+            // Aliases can be used as index names by any later migration
+            return Optional.empty();
+        }
+
+        final List<String> indices = Splitter.on(',').trimResults().omitEmptyStrings().splitToList(segments.get(0));
+        if (indices.stream().anyMatch(e -> isExpression(e) || aliases.contains(e))) {
+            // Wildcards, date math and aliases may resolve to the indices of any other migration
+            return Optional.empty();
+        }
+
+        final ImmutableSet.Builder<String> resources = ImmutableSet.builder();
+        indices.forEach(e -> resources.add(INDEX_PREFIX + e));
+        return Optional.of(resources.build());
+    }
+
+    /**
+     * @param existingAliases names of the aliases in the cluster before the migrations are applied
+     * @return the indices of the previous migrations each migration has to wait for
+     */
+    static List<Set<Integer>> plan(final List<Migration> migrations, final Set<String> existingAliases) {
+        final Set<String> aliases = new HashSet<>(existingAliases);
+        migrations.forEach(e -> aliases.addAll(getCreatedAliases(e)));
+
+        final List<Optional<Set<String>>> resources = new ArrayList<>();
+        migrations.forEach(e -> resources.add(getResources(e, aliases)));
+
+        final List<Set<Integer>> dependencies = new ArrayList<>();
+        for (int i = 0; i < migrations.size(); i++) {
+            final Set<Integer> migrationDependencies = new HashSet<>();
+            for (int j = 0; j < i; j++) {
+                if (dependsOn(resources.get(i), resources.get(j))) {
+                    migrationDependencies.add(j);
+                }
+            }
+            dependencies.add(migrationDependencies);
+        }
+
+        return dependencies;
+    }
+
+    void execute(final List<Migration> migrations, final Consumer<Migration> action) {
+        if (maxConcurrentMigrations <= 1 || migrations.size() <= 1) {
+            migrations.forEach(action);
+            return;
+        }
+
+        final List<Set<Integer>> dependencies = plan(migrations, existingAliases.get());
+        final ExecutorService executorService = Executors.newFixedThreadPool(
+                Math.min(maxConcurrentMigrations, migrations.size()),
+                new ThreadFactoryBuilder().setNameFormat("es-migration-%d").setDaemon(true).build()
+        );
+        final CompletionService<Integer> completionService = new ExecutorCompletionService<>(executorService);
+        final Map<Integer, RuntimeException> failures = Collections.synchronizedMap(new TreeMap<>());
+        final Set<Integer> submitted = new HashSet<>();
+        final Set<Integer> completed = new HashSet<>();
+
+        try {
+            int running = 0;
+            while (completed.size() < migrations.size()) {
+                if (failures.isEmpty()) {
+                    for (int i = 0; i < migrations.size(); i++) {
+                        if (!submitted.contains(i) && completed.containsAll(dependencies.get(i))) {
+                            submitted.add(i);
+                            running++;
+                            submit(completionService, migrations.get(i), i, action, failures);
+                        }
+                    }
+                }
+
+                if (running == 0) {
+                    break;
+                }
+
+                completed.add(completionService.take().get());
+                running--;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MigrationFailedException("Interrupted while applying migrations", e);
+        } catch (ExecutionException e) {
+            throw new MigrationFailedException("Applying migration failed", e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        synchronized (failures) {
+            if (!failures.isEmpty()) {
+                // The failure of the first migration in order is the one sequential execution would have reported
+                throw failures.values().iterator().next();
+            }
+        }
+    }
+
+    private void submit(final CompletionService<Integer> completionService,
+                        final Migration migration,
+                        final int index,
+                        final Consumer<Migration> action,
+                        final Map<Integer, RuntimeException> failures) {
+        completionService.submit(() -> {
+            try {
+                action.accept(migration);
+            } catch (RuntimeException e) {
+                failures.put(index, e);
+            }
+            return index;
+        });
+    }
+
+    private static boolean dependsOn(final Optional<Set<String>> resources, final Optional<Set<String>> previousResources) {
+        if (!resources.isPresent() || !previousResources.isPresent()) {
+            return true;
+        }
+
+        for (String resource : resources.get()) {
+            if (previousResources.get().contains(resource)) {
+                return true;
+            }
+            if (resource.startsWith(INDEX_PREFIX) && previousResources.get().stream().anyMatch(e -> !e.startsWith(INDEX_PREFIX))) {
+                return true;
+            }
+            if (!resource.startsWith(INDEX_PREFIX) && previousResources.get().stream().anyMatch(e -> e.startsWith(INDEX_PREFIX))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isExpression(final String index) {
+        return index.contains("*") || index.startsWith("<") || index.startsWith("%3C") || index.startsWith("-");
+    }
+
+    /**
+     * @return the names of the aliases the migration creates, directly or for indices matching a template
+     */
+    private static Set<String> getCreatedAliases(final Migration migration) {
+        final Set<String> aliases = new HashSet<>();
+        if (migration instanceof CreateIndexMigration || migration instanceof CreateOrUpdateIndexTemplateMigration) {
+            final Object definedAliases = readBody(migration, "$.aliases");
+            if (definedAliases instanceof Map) {
+                ((Map<?, ?>) definedAliases).keySet().forEach(e -> aliases.add(String.valueOf(e)));
+            }
+        } else if (migration instanceof AliasesMigration) {
+            addNames(readBody(migration, "$.actions[*].*.alias"), aliases);
+            addNames(readBody(migration, "$.actions[*].*.aliases"), aliases);
+        }
+
+        return aliases;
+    }
+
+    private static void addNames(final Object names, final Set<String> aliases) {
+        if (names instanceof Collection) {
+            ((Collection<?>) names).forEach(e -> addNames(e, aliases));
+        } else if (names instanceof String) {
+            aliases.add((String) names);
+        }
+    }
+
+    private static Object readBody(final Migration migration, final String path) {
+        return JsonPath.parse(migration.getBody(), com.jayway.jsonpath.Configuration.defaultConfiguration().addOptions(Option.SUPPRESS_EXCEPTIONS)).read(path);
+    }
+
+    private static boolean createsAliases(final Migration migration) {
+        final Object aliases = readBody(migration, "$.aliases");
+        return aliases instanceof Map && !((Map<?, ?>) aliases).isEmpty();
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.quandoo.lib.elasticsearchmigration.model.es.MigrationEntry;
+import com.quandoo.lib.elasticsearchmigration.model.es.MigrationEntryMeta;
+import com.quandoo.lib.elasticsearchmigration.model.es.MigrationStep;
+import com.quandoo.lib.elasticsearchmigration.model.es.MigrationStepRecord;
+import lombok.NonNull;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.lucene.search.join.ScoreMode;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.InnerHitBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.NestedSortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortMode;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reads the whole migration history of an identifier page by page with search_after, sorted by the version sort key.
+ * Entries written before the sort key existed come last in no particular order. Hits are deserialized straight from the
+ * response stream.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+class MigrationHistoryReader {
+
+    private static final int PAGE_SIZE = 1000;
+    // Sorts after every sort key, used instead of a null sort value which can't be passed to search_after
+    private static final String MISSING_SORT_KEY = "~";
+    private static final String FILTER_PATH = "hits.hits._source,hits.hits.sort";
+    // Default of index.max_inner_result_window
+    static final int MAX_SLOWEST_STEPS = 100;
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final ObjectMapper objectMapper;
+    private final WireFormatCodec wireFormatCodec;
+
+    MigrationHistoryReader(@NonNull final RestHighLevelClient restHighLevelClient, @NonNull final ObjectMapper objectMapper, @NonNull final WireFormatCodec wireFormatCodec) {
+        this.restHighLevelClient = restHighLevelClient;
+        this.objectMapper = objectMapper;
+        this.wireFormatCodec = wireFormatCodec;
+    }
+
+    List<MigrationEntry> readAll(final String identifier) throws IOException {
+        final List<MigrationEntry> migrationEntries = new ArrayList<>();
+        Optional<Object[]> searchAfter = Optional.empty();
+        do {
+            final Request request = new Request("POST", "/" + MigrationEntryMeta.INDEX + "/_search");
+            request.addParameter("filter_path", FILTER_PATH);
+            request.setEntity(new StringEntity(createSearchSource(identifier, searchAfter).toString(), ContentType.APPLICATION_JSON));
+            wireFormatCodec.acceptWireFormat(request);
+
+            final Response response = restHighLevelClient.getLowLevelClient().performRequest(request);
+            try (JsonParser parser = wireFormatCodec.createParser(response.getEntity())) {
+                searchAfter = readPage(parser, migrationEntries);
+            }
+        } while (searchAfter.isPresent());
+
+        return migrationEntries;
+    }
+
+    /**
+     * Reads the slowest recorded steps of all identifiers. The entries with the slowest steps are searched first and
+     * their slowest steps are taken from the inner hits, so at most {@link #MAX_SLOWEST_STEPS} steps are returned.
+     */
+    List<MigrationStepRecord> readSlowestSteps(final int size) throws IOException {
+        final int limitedSize = Math.max(0, Math.min(size, MAX_SLOWEST_STEPS));
+        final String durationField = MigrationEntryMeta.STEPS_FIELD + "." + MigrationEntryMeta.DURATION_IN_MILLIS_FIELD;
+        final SearchSourceBuilder searchSourceBuilder = SearchSourceBuilder.searchSource()
+                .query(QueryBuilders.nestedQuery(MigrationEntryMeta.STEPS_FIELD, QueryBuilders.matchAllQuery(), ScoreMode.None)
+                        .ignoreUnmapped(true)
+                        .innerHit(new InnerHitBuilder()
+                                .setSize(limitedSize)
+                                .addSort(SortBuilders.fieldSort(durationField).order(SortOrder.DESC))))
+                .size(limitedSize)
+                .fetchSource(new String[]{MigrationEntryMeta.IDENTIFIER_FIELD, MigrationEntryMeta.VERSION_FIELD, MigrationEntryMeta.NAME_FIELD}, null)
+                .sort(SortBuilders.fieldSort(durationField).order(SortOrder.DESC).sortMode(SortMode.MAX).setNestedSort(new NestedSortBuilder(MigrationEntryMeta.STEPS_FIELD)));
+
+        final Request request = new Request("POST", "/" + MigrationEntryMeta.INDEX + "/_search");
+        request.setEntity(new StringEntity(searchSourceBuilder.toString(), ContentType.APPLICATION_JSON));
+        wireFormatCodec.acceptWireFormat(request);
+        final Response response = restHighLevelClient.getLowLevelClient().performRequest(request);
+        try (JsonParser parser = wireFormatCodec.createParser(response.getEntity())) {
+            final List<MigrationStepRecord> stepRecords = toStepRecords(objectMapper.readTree(parser));
+            return stepRecords.subList(0, Math.min(stepRecords.size(), limitedSize));
+        }
+    }
+
+    /**
+     * @return the steps of all inner hits, slowest first
+     */
+    List<MigrationStepRecord> toStepRecords(final JsonNode searchResponse) throws IOException {
+        final List<MigrationStepRecord> stepRecords = new ArrayList<>();
+        for (JsonNode hit : searchResponse.path("hits").path("hits")) {
+            final JsonNode source = hit.path("_source");
+            for (JsonNode innerHit : hit.path("inner_hits").path(MigrationEntryMeta.STEPS_FIELD).path("hits").path("hits")) {
+                stepRecords.add(new MigrationStepRecord(
+                        source.path(MigrationEntryMeta.IDENTIFIER_FIELD).asText(),
+                        source.path(MigrationEntryMeta.VERSION_FIELD).asText(),
+                        source.path(MigrationEntryMeta.NAME_FIELD).asText(),
+                        objectMapper.treeToValue(innerHit.path("_source"), MigrationStep.class)
+                ));
+            }
+        }
+        stepRecords.sort(Comparator.comparing((MigrationStepRecord e) -> e.getStep().getDurationInMillis()).reversed());
+
+        return stepRecords;
+    }
+
+    /**
+     * @return the sort values of the last hit if the page was full
+     */
+    Optional<Object[]> readPage(final JsonParser parser, final List<MigrationEntry> migrationEntries) throws IOException {
+        Object[] lastSortValues = null;
+        int hits = 0;
+        if (!moveToField(parser, "hits") || !moveToField(parser, "hits") || parser.currentToken() != JsonToken.START_ARRAY) {
+            return Optional.empty();
+        }
+
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            hits++;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("_source".equals(field)) {
+                    migrationEntries.add(objectMapper.readValue(parser, MigrationEntry.class));
+                } else if ("sort".equals(field)) {
+                    lastSortValues = objectMapper.readValue(parser, Object[].class);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        return hits == PAGE_SIZE ? Optional.ofNullable(lastSortValues) : Optional.empty();
+    }
+
+    private SearchSourceBuilder createSearchSource(final String identifier, final Optional<Object[]> searchAfter) {
+        final SearchSourceBuilder searchSourceBuilder = SearchSourceBuilder.searchSource()
+                // The head document of the identifier has no version
+                .query(QueryBuilders.boolQuery()
+                        .filter(QueryBuilders.termQuery(MigrationEntryMeta.IDENTIFIER_FIELD, identifier))
+                        .filter(QueryBuilders.existsQuery(MigrationEntryMeta.VERSION_FIELD)))
+                .size(PAGE_SIZE)
+                .fetchSource(true)
+                // unmappedType covers version indices whose mapping wasn't upgraded yet
+                .sort(SortBuilders.fieldSort(MigrationEntryMeta.VERSION_SORT_KEY_FIELD).order(SortOrder.ASC).missing(MISSING_SORT_KEY).unmappedType("keyword"))
+                .sort(SortBuilders.fieldSort(MigrationEntryMeta.VERSION_FIELD).order(SortOrder.ASC));
+        searchAfter.ifPresent(searchSourceBuilder::searchAfter);
+        return searchSourceBuilder;
+    }
+
+    /**
+     * Moves the parser to the value of the given field of the current object, skipping all other fields
+     */
+    private boolean moveToField(final JsonParser parser, final String field) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT && parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String currentField = parser.getCurrentName();
+            parser.nextToken();
+            if (field.equals(currentField)) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.google.common.collect.Sets;
+import com.quandoo.lib.elasticsearchmigration.model.es.NodeRole;
+import lombok.NonNull;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.NodeSelector;
+
+import java.util.Iterator;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Selects the nodes with any of the given roles. Nodes with unknown roles, i.e. the configured urls before the first
+ * sniff, are always selected.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public class NodeRoleSelector implements NodeSelector {
+
+    private final Set<NodeRole> nodeRoles;
+
+    public NodeRoleSelector(@NonNull final Set<NodeRole> nodeRoles) {
+        checkArgument(!nodeRoles.isEmpty(), "nodeRoles must not be empty");
+        this.nodeRoles = Sets.immutableEnumSet(nodeRoles);
+    }
+
+    @Override
+    public void select(final Iterable<Node> nodes) {
+        for (Iterator<Node> iterator = nodes.iterator(); iterator.hasNext(); ) {
+            final Node.Roles roles = iterator.next().getRoles();
+            if (roles != null && !matches(roles)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    boolean matches(final Node.Roles roles) {
+        return nodeRoles.contains(NodeRole.MASTER) && roles.isMasterEligible() ||
+                nodeRoles.contains(NodeRole.DATA) && roles.isData() ||
+                nodeRoles.contains(NodeRole.INGEST) && roles.isIngest() ||
+                nodeRoles.contains(NodeRole.COORDINATING_ONLY) && !roles.isMasterEligible() && !roles.isData() && !roles.isIngest();
+    }
+
+    @Override
+    public String toString() {
+        return "ROLES" + nodeRoles;
+    }
+}
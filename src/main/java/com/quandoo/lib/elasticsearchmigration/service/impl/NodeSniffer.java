@@ -0,0 +1,223 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Discovers the nodes of the cluster from the nodes info API (_nodes/http) and sets them on the clients, which
+ * distribute their requests round robin over them. The nodes are refreshed periodically and right after a request to a
+ * node failed. The failed node is removed right away and stays out until the next sniff, after the delay after failure.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+@Slf4j
+public class NodeSniffer implements Closeable {
+
+    private final RestClient restClient;
+    private final Set<RestClient> restClients;
+    private final String scheme;
+    private final long sniffIntervalInMillis;
+    private final long sniffAfterFailureDelayInMillis;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Set<HttpHost> failedHosts = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService sniffExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("es-migration-sniffer-%d").setDaemon(true).build()
+    );
+
+    private ScheduledFuture<?> nextSniff;
+    private long scheduledSniffs;
+
+    /**
+     * @param restClient  client used to query the nodes
+     * @param restClients clients which get the discovered nodes, usually including restClient
+     * @param scheme      scheme of the discovered http addresses
+     */
+    public NodeSniffer(@NonNull final RestClient restClient,
+                       @NonNull final Collection<RestClient> restClients,
+                       @NonNull final String scheme,
+                       final long sniffIntervalInMillis,
+                       final long sniffAfterFailureDelayInMillis) {
+        this.restClient = restClient;
+        this.restClients = ImmutableSet.copyOf(restClients);
+        this.scheme = scheme;
+        this.sniffIntervalInMillis = sniffIntervalInMillis;
+        this.sniffAfterFailureDelayInMillis = sniffAfterFailureDelayInMillis;
+    }
+
+    /**
+     * Sniffs in the background right away and then every sniff interval
+     */
+    public void start() {
+        schedule(0, sniffIntervalInMillis);
+    }
+
+    /**
+     * Removes the node and sniffs right away, the next sniff follows after the delay after failure
+     */
+    public void sniffOnFailure(@NonNull final Node node) {
+        failedHosts.add(node.getHost());
+        removeNodes(Collections.singleton(node.getHost()));
+        schedule(0, sniffAfterFailureDelayInMillis);
+    }
+
+    private synchronized void schedule(final long delayInMillis, final long nextDelayInMillis) {
+        if (sniffExecutor.isShutdown()) {
+            return;
+        }
+        if (nextSniff != null) {
+            nextSniff.cancel(false);
+        }
+
+        final long sniff = ++scheduledSniffs;
+        nextSniff = sniffExecutor.schedule(() -> {
+            refresh();
+            synchronized (this) {
+                // A sniff scheduled while this one ran, e.g. after a failure, is pending and schedules the next one itself
+                if (sniff == scheduledSniffs) {
+                    schedule(nextDelayInMillis, sniffIntervalInMillis);
+                }
+            }
+        }, delayInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void refresh() {
+        final Set<HttpHost> failed = new HashSet<>();
+        for (Iterator<HttpHost> iterator = failedHosts.iterator(); iterator.hasNext(); ) {
+            failed.add(iterator.next());
+            iterator.remove();
+        }
+        removeNodes(failed);
+
+        try {
+            final List<Node> nodes = sniff().stream().filter(e -> !failed.contains(e.getHost())).collect(Collectors.toList());
+            if (nodes.isEmpty()) {
+                log.warn("No nodes with an http address found, keeping {}", restClient.getNodes());
+                return;
+            }
+
+            log.debug("Sniffed nodes {}", nodes);
+            restClients.forEach(e -> e.setNodes(nodes));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Sniffing nodes failed, keeping {}", restClient.getNodes(), e);
+        }
+    }
+
+    /**
+     * The last node of a client is kept, it's the only one left to try
+     */
+    private void removeNodes(final Set<HttpHost> hosts) {
+        if (hosts.isEmpty()) {
+            return;
+        }
+
+        for (RestClient client : restClients) {
+            final List<Node> remaining = client.getNodes().stream().filter(e -> !hosts.contains(e.getHost())).collect(Collectors.toList());
+            if (!remaining.isEmpty() && remaining.size() < client.getNodes().size()) {
+                log.info("Removing failed nodes {}", hosts);
+                client.setNodes(remaining);
+            }
+        }
+    }
+
+    List<Node> sniff() throws IOException {
+        final Response response = restClient.performRequest(new Request("GET", "/_nodes/http"));
+        try (InputStream content = response.getEntity().getContent()) {
+            return parseNodes(objectMapper.readTree(content), scheme);
+        }
+    }
+
+    /**
+     * Nodes without an http section, i.e. with http disabled, are skipped
+     */
+    static List<Node> parseNodes(final JsonNode nodesInfo, final String scheme) {
+        final List<Node> nodes = new ArrayList<>();
+        nodesInfo.path("nodes").forEach(nodeInfo -> {
+            final JsonNode http = nodeInfo.path("http");
+            if (!http.hasNonNull("publish_address")) {
+                return;
+            }
+
+            final HttpHost publishAddress = parseAddress(http.get("publish_address").asText(), scheme);
+            final Set<HttpHost> boundAddresses = new HashSet<>();
+            http.path("bound_address").forEach(e -> boundAddresses.add(parseAddress(e.asText(), scheme)));
+            final Set<String> roles = new HashSet<>();
+            nodeInfo.path("roles").forEach(e -> roles.add(e.asText()));
+            final Map<String, List<String>> attributes = new LinkedHashMap<>();
+            nodeInfo.path("attributes").fields().forEachRemaining(e -> attributes.put(e.getKey(), Collections.singletonList(e.getValue().asText())));
+
+            nodes.add(new Node(
+                    publishAddress,
+                    boundAddresses,
+                    nodeInfo.path("name").asText(null),
+                    nodeInfo.path("version").asText(null),
+                    new Node.Roles(roles.contains("master"), roles.contains("data"), roles.contains("ingest")),
+                    attributes
+            ));
+        });
+
+        return ImmutableList.copyOf(nodes);
+    }
+
+    /**
+     * @param address either ip:port or hostname/ip:port if the node publishes a hostname, which is preferred then
+     */
+    static HttpHost parseAddress(final String address, final String scheme) {
+        final int separator = address.indexOf('/');
+        final String hostname = separator < 0 ? null : address.substring(0, separator);
+        final URI uri = URI.create(scheme + "://" + address.substring(separator + 1));
+
+        return new HttpHost(Strings.isNullOrEmpty(hostname) ? uri.getHost() : hostname, uri.getPort(), scheme);
+    }
+
+    @Override
+    public synchronized void close() {
+        sniffExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Joiner;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.rest.RestStatus;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Follows reindex tasks which were submitted with wait_for_completion=false until they are done.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+@Slf4j
+class ReindexTaskExecutor {
+
+    private static final long INITIAL_POLL_INTERVAL_IN_MILLIS = 500;
+    private static final long MAX_POLL_INTERVAL_IN_MILLIS = 30000;
+    private static final int MAX_REPORTED_FAILURES = 10;
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final ObjectMapper objectMapper;
+    private final WireFormatCodec wireFormatCodec;
+
+    ReindexTaskExecutor(@NonNull final RestHighLevelClient restHighLevelClient, @NonNull final ObjectMapper objectMapper, @NonNull final WireFormatCodec wireFormatCodec) {
+        this.restHighLevelClient = restHighLevelClient;
+        this.objectMapper = objectMapper;
+        this.wireFormatCodec = wireFormatCodec;
+    }
+
+    String getTaskId(final Response submitResponse) {
+        try {
+            final JsonNode task = readTree(submitResponse).path("task");
+            if (!task.isTextual()) {
+                throw new MigrationFailedException("Reindex was not started as task. Response: " + task);
+            }
+
+            return task.asText();
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    ReindexResult awaitCompletion(final String taskId) {
+        long pollInterval = INITIAL_POLL_INTERVAL_IN_MILLIS;
+        while (true) {
+            final JsonNode task = getTask(taskId);
+            if (task.path("completed").asBoolean(false)) {
+                return toResult(taskId, task);
+            }
+
+            final JsonNode status = task.path("task").path("status");
+            log.info("Reindex task {} running. Total: {}, created: {}, updated: {}, deleted: {}",
+                    taskId, status.path("total").asLong(), status.path("created").asLong(), status.path("updated").asLong(), status.path("deleted").asLong());
+            sleep(pollInterval);
+            pollInterval = Math.min(pollInterval * 2, MAX_POLL_INTERVAL_IN_MILLIS);
+        }
+    }
+
+    ReindexResult toResult(final String taskId, final JsonNode task) {
+        if (task.has("error")) {
+            final JsonNode error = task.path("error");
+            throw new MigrationFailedException("Reindex task " + taskId + " failed. Message: " + error.path("type").asText() + ": " + error.path("reason").asText());
+        }
+
+        final JsonNode response = task.path("response");
+        final List<String> failures = new LinkedList<>();
+        response.path("failures").forEach(e -> failures.add(
+                e.path("index").asText() + "/" + e.path("id").asText() + ": " + e.path("cause").path("type").asText() + ": " + e.path("cause").path("reason").asText()
+        ));
+        final ReindexResult reindexResult = new ReindexResult(
+                response.path("total").asLong(),
+                response.path("created").asLong(),
+                response.path("updated").asLong(),
+                response.path("deleted").asLong(),
+                response.path("version_conflicts").asLong(),
+                failures.size(),
+                response.path("took").asLong(),
+                response.path("retries").path("bulk").asInt() + response.path("retries").path("search").asInt()
+        );
+
+        if (!failures.isEmpty()) {
+            throw new MigrationFailedException("Reindex task " + taskId + " finished with " + failures.size() + " failure(s): "
+                    + Joiner.on("; ").join(failures.subList(0, Math.min(failures.size(), MAX_REPORTED_FAILURES))));
+        }
+
+        log.info("Reindex task {} done. Total: {}, created: {}, updated: {}, deleted: {}, version conflicts: {}",
+                taskId, reindexResult.getTotal(), reindexResult.getCreated(), reindexResult.getUpdated(), reindexResult.getDeleted(), reindexResult.getVersionConflicts());
+        return reindexResult;
+    }
+
+    /**
+     * Removes the result of a finished task from the .tasks index. It's only logged if that fails, the result isn't
+     * needed anymore.
+     */
+    void deleteTaskResult(final String taskId) {
+        try {
+            restHighLevelClient.getLowLevelClient().performRequest(new Request("DELETE", "/.tasks/_doc/" + taskId));
+        } catch (ResponseException e) {
+            if (e.getResponse().getStatusLine().getStatusCode() != RestStatus.NOT_FOUND.getStatus()) {
+                log.warn("Could not delete result of reindex task {}", taskId, e);
+            }
+        } catch (IOException e) {
+            log.warn("Could not delete result of reindex task {}", taskId, e);
+        }
+    }
+
+    private JsonNode getTask(final String taskId) {
+        try {
+            final Response response = restHighLevelClient.getLowLevelClient().performRequest(new Request("GET", "/_tasks/" + taskId));
+            return readTree(response);
+        } catch (ResponseException e) {
+            if (e.getResponse().getStatusLine().getStatusCode() == RestStatus.NOT_FOUND.getStatus()) {
+                throw new MigrationFailedException("Reindex task " + taskId + " does not exist anymore. The outcome of the reindex has to be checked manually", e);
+            }
+
+            throw new MigrationFailedException("Error polling reindex task " + taskId, e);
+        } catch (IOException e) {
+            throw new MigrationFailedException("IO Exception during migration", e);
+        }
+    }
+
+    private JsonNode readTree(final Response response) throws IOException {
+        try (JsonParser parser = wireFormatCodec.createParser(response.getEntity())) {
+            return objectMapper.readTree(parser);
+        }
+    }
+
+    private void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MigrationFailedException("Interrupted while waiting for reindex task", e);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static class ReindexResult {
+
+        private final long total;
+        private final long created;
+        private final long updated;
+        private final long deleted;
+        private final long versionConflicts;
+        private final long failures;
+        private final long took;
+        private final int retries;
+    }
+}
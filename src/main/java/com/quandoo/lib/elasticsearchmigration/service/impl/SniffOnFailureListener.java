@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import lombok.NonNull;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.RestClient;
+
+/**
+ * Triggers a sniff when a request to a node failed. The listener is registered when the clients are built, before the
+ * sniffer using them exists, so the sniffer is set afterwards.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public class SniffOnFailureListener extends RestClient.FailureListener {
+
+    private volatile NodeSniffer nodeSniffer;
+
+    public void setNodeSniffer(@NonNull final NodeSniffer nodeSniffer) {
+        this.nodeSniffer = nodeSniffer;
+    }
+
+    @Override
+    public void onFailure(final Node node) {
+        final NodeSniffer sniffer = nodeSniffer;
+        if (sniffer != null) {
+            sniffer.sniffOnFailure(node);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.quandoo.lib.elasticsearchmigration.model.es.MigrationStep;
+import org.apache.http.HttpEntity;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the request statistics of one step. Safe to use from the parallel workers of a bulk load.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+class StepStatistics {
+
+    private static final long NOT_REPORTED = -1;
+
+    private final Instant started = Instant.now();
+    private final AtomicLong requestBytes = new AtomicLong();
+    private final AtomicLong responseBytes = new AtomicLong();
+    private final AtomicLong took = new AtomicLong(NOT_REPORTED);
+    private final AtomicInteger retries = new AtomicInteger();
+
+    void addRequest(final HttpEntity entity) {
+        if (entity != null && entity.getContentLength() > 0) {
+            requestBytes.addAndGet(entity.getContentLength());
+        }
+    }
+
+    void addResponse(final HttpEntity entity) {
+        // Chunked responses don't tell their length up front
+        if (entity != null && entity.getContentLength() > 0) {
+            responseBytes.addAndGet(entity.getContentLength());
+        }
+    }
+
+    void addTook(final long tookInMillis) {
+        took.accumulateAndGet(tookInMillis, (current, added) -> current == NOT_REPORTED ? added : current + added);
+    }
+
+    void addRetry() {
+        retries.incrementAndGet();
+    }
+
+    void addRetries(final int count) {
+        retries.addAndGet(count);
+    }
+
+    MigrationStep toStep(final int step, final int stepCount, final String type) {
+        final Instant finished = Instant.now();
+        return new MigrationStep(
+                step,
+                stepCount,
+                type,
+                started,
+                finished,
+                Duration.between(started, finished).toMillis(),
+                requestBytes.get(),
+                responseBytes.get(),
+                took.get() == NOT_REPORTED ? null : took.get(),
+                retries.get()
+        );
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.quandoo.lib.elasticsearchmigration.model.es.WireFormat;
+import lombok.NonNull;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NByteArrayEntity;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Converts JSON request bodies into the configured {@link WireFormat} and creates parsers for responses in any of the
+ * formats. Elasticsearch answers in the format of the Accept header and without one in the format of the request body,
+ * so requests with a binary body ask for JSON unless the response is parsed in the binary format. Error messages stay
+ * readable that way. Bodies from the compression threshold on are sent gzipped.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+class WireFormatCodec {
+
+    static final ContentType SMILE_CONTENT_TYPE = ContentType.create("application/smile");
+    static final ContentType CBOR_CONTENT_TYPE = ContentType.create("application/cbor");
+
+    private static final byte NEW_LINE = '\n';
+    // Stream separator of SMILE documents in _bulk requests
+    private static final byte SMILE_SEPARATOR = (byte) 0xFF;
+
+    private final WireFormat wireFormat;
+    private final JsonFactory jsonFactory;
+    private final JsonFactory smileFactory = new SmileFactory();
+    private final JsonFactory cborFactory = new CBORFactory();
+    private final int compressionThresholdInBytes;
+
+    WireFormatCodec(@NonNull final WireFormat wireFormat, @NonNull final JsonFactory jsonFactory) {
+        this(wireFormat, jsonFactory, -1);
+    }
+
+    /**
+     * @param compressionThresholdInBytes size from which bodies are gzipped, negative to never compress them
+     */
+    WireFormatCodec(@NonNull final WireFormat wireFormat, @NonNull final JsonFactory jsonFactory, final int compressionThresholdInBytes) {
+        this.wireFormat = wireFormat;
+        this.jsonFactory = jsonFactory;
+        this.compressionThresholdInBytes = compressionThresholdInBytes;
+    }
+
+    HttpEntity toEntity(final ByteBuffer json) throws IOException {
+        if (wireFormat == WireFormat.JSON || !json.hasRemaining()) {
+            if (json.hasArray()) {
+                return toEntity(json.array(), json.arrayOffset() + json.position(), json.remaining(), ContentType.APPLICATION_JSON);
+            }
+
+            final byte[] bytes = new byte[json.remaining()];
+            json.duplicate().get(bytes);
+            return toEntity(bytes, 0, bytes.length, ContentType.APPLICATION_JSON);
+        }
+
+        final byte[] encoded = encode(json, getFactory(wireFormat));
+        return toEntity(encoded, 0, encoded.length, getContentType(wireFormat));
+    }
+
+    HttpEntity toBulkEntity(final byte[] body) throws IOException {
+        return toEntity(body, 0, body.length, getBulkContentType());
+    }
+
+    private HttpEntity toEntity(final byte[] body, final int offset, final int length, final ContentType contentType) throws IOException {
+        if (compressionThresholdInBytes < 0 || length < compressionThresholdInBytes) {
+            return new NByteArrayEntity(body, offset, length, contentType);
+        }
+
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(body, offset, length);
+        }
+        final NByteArrayEntity entity = new NByteArrayEntity(compressed.toByteArray(), contentType);
+        entity.setContentEncoding("gzip");
+        return entity;
+    }
+
+    /**
+     * CBOR has no stream separator, so _bulk bodies are only sent as SMILE or JSON
+     */
+    WireFormat getBulkWireFormat() {
+        return wireFormat == WireFormat.SMILE ? WireFormat.SMILE : WireFormat.JSON;
+    }
+
+    ContentType getBulkContentType() {
+        return getBulkWireFormat() == WireFormat.SMILE ? SMILE_CONTENT_TYPE : DocumentBulkExecutor.NDJSON_CONTENT_TYPE;
+    }
+
+    /**
+     * Encodes one line of a _bulk body including its separator
+     */
+    byte[] encodeBulkLine(final byte[] json) throws IOException {
+        if (getBulkWireFormat() == WireFormat.JSON) {
+            final byte[] line = new byte[json.length + 1];
+            System.arraycopy(json, 0, line, 0, json.length);
+            line[json.length] = NEW_LINE;
+            return line;
+        }
+
+        final byte[] encoded = encode(ByteBuffer.wrap(json), smileFactory);
+        final byte[] line = new byte[encoded.length + 1];
+        System.arraycopy(encoded, 0, line, 0, encoded.length);
+        line[encoded.length] = SMILE_SEPARATOR;
+        return line;
+    }
+
+    /**
+     * Asks for the response in the configured format
+     */
+    void acceptWireFormat(final Request request) {
+        if (wireFormat != WireFormat.JSON) {
+            request.setOptions(request.getOptions().toBuilder().addHeader("Accept", getContentType(wireFormat).getMimeType()));
+        }
+    }
+
+    /**
+     * Asks for a JSON response to a request whose body is sent in the configured format
+     */
+    void acceptJson(final RequestOptions.Builder options) {
+        if (wireFormat != WireFormat.JSON) {
+            options.addHeader("Accept", ContentType.APPLICATION_JSON.getMimeType());
+        }
+    }
+
+    /**
+     * @return a parser for the format given by the content type of the entity, JSON if it has none
+     */
+    JsonParser createParser(final HttpEntity entity) throws IOException {
+        return getFactory(getWireFormat(entity.getContentType())).createParser(entity.getContent());
+    }
+
+    private byte[] encode(final ByteBuffer json, final JsonFactory factory) throws IOException {
+        final ByteArrayOutputStream encoded = new ByteArrayOutputStream(json.remaining());
+        try (JsonParser parser = createJsonParser(json); JsonGenerator generator = factory.createGenerator(encoded)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+
+        return encoded.toByteArray();
+    }
+
+    private JsonParser createJsonParser(final ByteBuffer json) throws IOException {
+        if (json.hasArray()) {
+            return jsonFactory.createParser(json.array(), json.arrayOffset() + json.position(), json.remaining());
+        }
+
+        final byte[] bytes = new byte[json.remaining()];
+        json.duplicate().get(bytes);
+        return jsonFactory.createParser(bytes);
+    }
+
+    private JsonFactory getFactory(final WireFormat wireFormat) {
+        switch (wireFormat) {
+            case SMILE:
+                return smileFactory;
+            case CBOR:
+                return cborFactory;
+            default:
+                return jsonFactory;
+        }
+    }
+
+    private static ContentType getContentType(final WireFormat wireFormat) {
+        switch (wireFormat) {
+            case SMILE:
+                return SMILE_CONTENT_TYPE;
+            case CBOR:
+                return CBOR_CONTENT_TYPE;
+            default:
+                return ContentType.APPLICATION_JSON;
+        }
+    }
+
+    private static WireFormat getWireFormat(final Header contentType) {
+        if (contentType != null) {
+            final String mimeType = ContentType.parse(contentType.getValue()).getMimeType();
+            if (SMILE_CONTENT_TYPE.getMimeType().equalsIgnoreCase(mimeType)) {
+                return WireFormat.SMILE;
+            } else if (CBOR_CONTENT_TYPE.getMimeType().equalsIgnoreCase(mimeType)) {
+                return WireFormat.CBOR;
+            }
+        }
+
+        return WireFormat.JSON;
+    }
+}
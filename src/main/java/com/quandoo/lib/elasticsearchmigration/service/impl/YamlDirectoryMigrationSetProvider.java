@@ -15,53 +15,34 @@
  */
 package com.quandoo.lib.elasticsearchmigration.service.impl;
 
-import com.quandoo.lib.elasticsearchmigration.model.input.AliasesMigrationFileEntry;
-import com.quandoo.lib.elasticsearchmigration.model.input.BaseMigrationFileEntry;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.quandoo.lib.elasticsearchmigration.model.input.ChecksumedMigrationFile;
-import com.quandoo.lib.elasticsearchmigration.model.input.CreateIndexMigrationFileEntry;
-import com.quandoo.lib.elasticsearchmigration.model.input.CreateOrUpdateIndexTemplateMigrationFileEntry;
-import com.quandoo.lib.elasticsearchmigration.model.input.CreateIngestPipelineMigrationFileEntry;
-import com.quandoo.lib.elasticsearchmigration.model.input.DeleteDocumentMigrationFileEntry;
-import com.quandoo.lib.elasticsearchmigration.model.input.DeleteIndexMigrationFileEntry;
-import com.quandoo.lib.elasticsearchmigration.model.input.DeleteIndexTemplateMigrationFileEntry;
-import com.quandoo.lib.elasticsearchmigration.model.input.DeleteIngestPipelineMigrationFileEntry;
-import com.quandoo.lib.elasticsearchmigration.model.input.IndexDocumentMigrationFileEntry;
-import com.quandoo.lib.elasticsearchmigration.model.input.ReindexMigrationFileEntry;
-import com.quandoo.lib.elasticsearchmigration.model.input.UpdateDocumentMigrationFileEntry;
-import com.quandoo.lib.elasticsearchmigration.model.input.UpdateIndexSettingsMigrationFileEntry;
-import com.quandoo.lib.elasticsearchmigration.model.input.UpdateMappingMigrationFileEntry;
-import com.quandoo.lib.elasticsearchmigration.model.migration.AliasesMigration;
-import com.quandoo.lib.elasticsearchmigration.model.migration.CreateIndexMigration;
-import com.quandoo.lib.elasticsearchmigration.model.migration.CreateOrUpdateIndexTemplateMigration;
-import com.quandoo.lib.elasticsearchmigration.model.migration.CreateIngestPipelineMigration;
-import com.quandoo.lib.elasticsearchmigration.model.migration.DeleteDocumentMigration;
-import com.quandoo.lib.elasticsearchmigration.model.migration.DeleteIndexMigration;
-import com.quandoo.lib.elasticsearchmigration.model.migration.DeleteIndexTemplateMigration;
-import com.quandoo.lib.elasticsearchmigration.model.migration.DeleteIngestPipelineMigration;
-import com.quandoo.lib.elasticsearchmigration.model.migration.IndexDocumentMigration;
-import com.quandoo.lib.elasticsearchmigration.model.migration.Migration;
 import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationMeta;
 import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSet;
 import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSetEntry;
-import com.quandoo.lib.elasticsearchmigration.model.migration.OpType;
-import com.quandoo.lib.elasticsearchmigration.model.migration.ReindexMigration;
-import com.quandoo.lib.elasticsearchmigration.model.migration.UpdateDocumentMigration;
-import com.quandoo.lib.elasticsearchmigration.model.migration.UpdateIndexSettingsMigration;
-import com.quandoo.lib.elasticsearchmigration.model.migration.UpdateMappingMigration;
+import com.quandoo.lib.elasticsearchmigration.service.MigrationMetrics;
 import com.quandoo.lib.elasticsearchmigration.service.MigrationSetProvider;
-import com.quandoo.lib.elasticsearchmigration.service.Parser;
 import com.quandoo.lib.elasticsearchmigration.util.VersionComparator;
-import org.reflections.Reflections;
-import org.reflections.scanners.ResourcesScanner;
+import lombok.NonNull;
 
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -70,111 +51,146 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public class YamlDirectoryMigrationSetProvider implements MigrationSetProvider {
 
-    private static final Pattern MIGRATION_FILE_PATH_PATTERN = Pattern.compile("^.*V([0-9]{1,3}(?:_[0-9]+)*)__([a-zA-Z0-9][a-zA-Z0-9_-]*)\\.yaml$");
+    static final Pattern MIGRATION_FILE_PATH_PATTERN = Pattern.compile("^.*V([0-9]{1,3}(?:_[0-9]+)*)__([a-zA-Z0-9][a-zA-Z0-9_-]*)\\.yaml$");
+    static final Pattern BASELINE_FILE_PATH_PATTERN = Pattern.compile("^.*B([0-9]{1,3}(?:_[0-9]+)*)__([a-zA-Z0-9][a-zA-Z0-9_-]*)\\.yaml$");
 
-    private final Parser yamlParser;
+    private final YamlParser yamlParser;
+    private final ClasspathScanner classpathScanner;
+    private final MigrationMetrics metrics;
+    private final int parserParallelism;
+    private final boolean lazyParsing;
 
     public YamlDirectoryMigrationSetProvider() {
-        this.yamlParser = new YamlParser();
+        this(new NoopMigrationMetrics());
+    }
+
+    public YamlDirectoryMigrationSetProvider(@NonNull final MigrationMetrics metrics) {
+        this(metrics, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parserParallelism number of files which are parsed and validated concurrently
+     */
+    public YamlDirectoryMigrationSetProvider(@NonNull final MigrationMetrics metrics, final int parserParallelism) {
+        this(metrics, parserParallelism, false);
+    }
+
+    /**
+     * @param parserParallelism number of files which are parsed and validated concurrently
+     * @param lazyParsing       only checksum the unparsed files up front, they are parsed when their normalized checksum or their migrations are needed
+     */
+    public YamlDirectoryMigrationSetProvider(@NonNull final MigrationMetrics metrics, final int parserParallelism, final boolean lazyParsing) {
+        checkArgument(parserParallelism > 0, "parserParallelism must be greater than 0");
+        this.yamlParser = new YamlParser(metrics);
+        this.classpathScanner = new ClasspathScanner();
+        this.metrics = metrics;
+        this.parserParallelism = parserParallelism;
+        this.lazyParsing = lazyParsing;
     }
 
     @Override
     public MigrationSet getMigrationSet(final String basePackage) {
         checkNotNull(basePackage, "basePackage must not be null");
 
-        final Set<String> resources = new Reflections(basePackage, new ResourcesScanner()).getResources(MIGRATION_FILE_PATH_PATTERN);
+        final Stopwatch scan = Stopwatch.createStarted();
+        final List<String> sortedResources = sortedResources(classpathScanner, basePackage, MIGRATION_FILE_PATH_PATTERN);
+        final List<String> sortedBaselineResources = sortedResources(classpathScanner, basePackage, BASELINE_FILE_PATH_PATTERN);
+        metrics.recordPhase(MigrationMetrics.Phase.SCAN, Duration.ofNanos(scan.elapsed(TimeUnit.NANOSECONDS)));
+
+        final List<MigrationSetEntry> migrationSetEntries = toMigrationSetEntries(sortedResources, MIGRATION_FILE_PATH_PATTERN);
+
+        // Only the latest baseline is of interest, older ones are covered by it
+        final Optional<MigrationSetEntry> baseline = sortedBaselineResources.isEmpty() ?
+                Optional.empty() :
+                Optional.of(toMigrationSetEntry(Iterables.getLast(sortedBaselineResources), BASELINE_FILE_PATH_PATTERN));
+
+        return new MigrationSet(migrationSetEntries, baseline);
+    }
+
+    static List<String> sortedResources(final ClasspathScanner classpathScanner, final String basePackage, final Pattern pattern) {
+        final Set<String> resources = classpathScanner.getResources(basePackage, pattern);
         final List<String> sortedResources = new ArrayList<>(resources);
-        sortedResources.sort(new VersionComparator(MIGRATION_FILE_PATH_PATTERN, 1, "_", e -> e));
-
-        final List<MigrationSetEntry> migrationSetEntries = new LinkedList<>();
-        for (String resource : sortedResources) {
-            final String resourceName = resource.lastIndexOf("/") != -1 ? resource.substring(resource.lastIndexOf("/") + 1) : resource;
-            final Matcher matcher = MIGRATION_FILE_PATH_PATTERN.matcher(resourceName);
-            matcher.matches();
-
-            final ChecksumedMigrationFile checksumedMigrationFile = yamlParser.parse(resource);
-            migrationSetEntries.add(
-                    new MigrationSetEntry(
-                            checksumedMigrationFile.getMigrationFile().getMigrations().stream().map(this::convertToMigration).collect(Collectors.toList()),
-                            new MigrationMeta(
-                                    checksumedMigrationFile.getSha256Checksum(),
-                                    matcher.group(1).replaceAll("_", "."),
-                                    matcher.group(2)
-                            )
-                    )
-            );
+        sortedResources.sort(new VersionComparator(pattern, 1, "_", e -> e));
+
+        return sortedResources;
+    }
+
+    /**
+     * Parses the files concurrently, the entries keep the order of the resources. The first failing file in that order is reported.
+     */
+    private List<MigrationSetEntry> toMigrationSetEntries(final List<String> resources, final Pattern pattern) {
+        if (parserParallelism == 1 || resources.size() <= 1) {
+            return resources.stream().map(e -> toMigrationSetEntry(e, pattern)).collect(Collectors.toList());
         }
 
-        return new MigrationSet(migrationSetEntries);
+        final ExecutorService executorService = Executors.newFixedThreadPool(
+                Math.min(parserParallelism, resources.size()),
+                new ThreadFactoryBuilder().setNameFormat("es-migration-parser-%d").setDaemon(true).build()
+        );
+        try {
+            final List<Future<MigrationSetEntry>> futures = new ArrayList<>(resources.size());
+            for (String resource : resources) {
+                futures.add(executorService.submit(() -> toMigrationSetEntry(resource, pattern)));
+            }
+
+            final List<MigrationSetEntry> migrationSetEntries = new ArrayList<>(resources.size());
+            for (Future<MigrationSetEntry> future : futures) {
+                migrationSetEntries.add(future.get());
+            }
+
+            return migrationSetEntries;
+        } catch (ExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException("Parsing changesets failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while parsing changesets");
+        } finally {
+            executorService.shutdownNow();
+        }
     }
 
-    private Migration convertToMigration(BaseMigrationFileEntry baseMigrationFileEntry) {
-        switch (baseMigrationFileEntry.getType()) {
-            case CREATE_INDEX:
-                final CreateIndexMigrationFileEntry createIndexMigrationFileEntry = (CreateIndexMigrationFileEntry) baseMigrationFileEntry;
-                return new CreateIndexMigration(createIndexMigrationFileEntry.getIndex(), createIndexMigrationFileEntry.getDefinition());
-            case DELETE_INDEX:
-                final DeleteIndexMigrationFileEntry deleteIndexMigrationFileEntry = (DeleteIndexMigrationFileEntry) baseMigrationFileEntry;
-                return new DeleteIndexMigration(deleteIndexMigrationFileEntry.getIndex());
-            case CREATE_OR_UPDATE_INDEX_TEMPLATE:
-                final CreateOrUpdateIndexTemplateMigrationFileEntry createOrUpdateIndexTemplateMigrationFileEntry = (CreateOrUpdateIndexTemplateMigrationFileEntry) baseMigrationFileEntry;
-                return new CreateOrUpdateIndexTemplateMigration(createOrUpdateIndexTemplateMigrationFileEntry.getTemplate(), createOrUpdateIndexTemplateMigrationFileEntry.getDefinition());
-            case DELETE_INDEX_TEMPLATE:
-                final DeleteIndexTemplateMigrationFileEntry deleteIndexTemplateMigrationFileEntry = (DeleteIndexTemplateMigrationFileEntry) baseMigrationFileEntry;
-                return new DeleteIndexTemplateMigration(deleteIndexTemplateMigrationFileEntry.getTemplate());
-            case UPDATE_MAPPING:
-                final UpdateMappingMigrationFileEntry updateMappingMigrationFileEntry = (UpdateMappingMigrationFileEntry) baseMigrationFileEntry;
-                return new UpdateMappingMigration(updateMappingMigrationFileEntry.getIndices(), updateMappingMigrationFileEntry.getDefinition());
-            case INDEX_DOCUMENT:
-                final IndexDocumentMigrationFileEntry indexDocumentMigrationFileEntry = (IndexDocumentMigrationFileEntry) baseMigrationFileEntry;
-                return new IndexDocumentMigration(
-                        indexDocumentMigrationFileEntry.getIndex(),
-                        indexDocumentMigrationFileEntry.getId(),
-                        indexDocumentMigrationFileEntry.getOpType().map(e -> OpType.valueOf(e.name())),
-                        indexDocumentMigrationFileEntry.getDefinition()
-                );
-            case DELETE_DOCUMENT:
-                final DeleteDocumentMigrationFileEntry deleteDocumentMigrationFileEntry = (DeleteDocumentMigrationFileEntry) baseMigrationFileEntry;
-                return new DeleteDocumentMigration(
-                        deleteDocumentMigrationFileEntry.getIndex(),
-                        deleteDocumentMigrationFileEntry.getId()
-                );
-            case UPDATE_DOCUMENT:
-                final UpdateDocumentMigrationFileEntry updateDocumentMigrationFileEntry = (UpdateDocumentMigrationFileEntry) baseMigrationFileEntry;
-                return new UpdateDocumentMigration(
-                        updateDocumentMigrationFileEntry.getIndex(),
-                        updateDocumentMigrationFileEntry.getId(),
-                        updateDocumentMigrationFileEntry.getDefinition()
-                );
-            case ALIASES:
-                final AliasesMigrationFileEntry aliasesMigrationFileEntry = (AliasesMigrationFileEntry) baseMigrationFileEntry;
-                return new AliasesMigration(
-                        aliasesMigrationFileEntry.getDefinition()
-                );
-            case CREATE_INGEST_PIPELINE:
-                final CreateIngestPipelineMigrationFileEntry createIngestPipelineMigrationFileEntry = (CreateIngestPipelineMigrationFileEntry) baseMigrationFileEntry;
-                return new CreateIngestPipelineMigration(
-                        createIngestPipelineMigrationFileEntry.getId(),
-                        createIngestPipelineMigrationFileEntry.getDefinition()
-                );
-            case DELETE_INGEST_PIPELINE:
-                final DeleteIngestPipelineMigrationFileEntry deleteIngestPipelineMigrationFileEntry = (DeleteIngestPipelineMigrationFileEntry) baseMigrationFileEntry;
-                return new DeleteIngestPipelineMigration(
-                        deleteIngestPipelineMigrationFileEntry.getId()
-                );
-            case REINDEX:
-                final ReindexMigrationFileEntry reindexMigrationFileEntry = (ReindexMigrationFileEntry) baseMigrationFileEntry;
-                return new ReindexMigration(
-                        reindexMigrationFileEntry.getDefinition()
-                );
-            case UPDATE_INDEX_SETTINGS:
-                final UpdateIndexSettingsMigrationFileEntry updateIndexSettingsMigrationFileEntry = (UpdateIndexSettingsMigrationFileEntry) baseMigrationFileEntry;
-                return new UpdateIndexSettingsMigration(
-                        updateIndexSettingsMigrationFileEntry.getIndex(),
-                        updateIndexSettingsMigrationFileEntry.getDefinition()
-                );
-            default:
-                throw new IllegalStateException("Unknown migration type " + baseMigrationFileEntry.getType());
+    private MigrationSetEntry toMigrationSetEntry(final String resource, final Pattern pattern) {
+        final Matcher matcher = matchResource(resource, pattern);
+        if (lazyParsing) {
+            final LazyMigrationFile lazyMigrationFile = new LazyMigrationFile(resource, yamlParser);
+            return new MigrationSetEntry(
+                    () -> MigrationFileConverter.toMigrations(lazyMigrationFile.load().getMigrationFile()),
+                    new MigrationMeta(
+                            lazyMigrationFile::getSha256Checksum,
+                            toVersion(matcher),
+                            matcher.group(2),
+                            Optional.of(yamlParser.calculateRawChecksum(resource))
+                    ),
+                    () -> MigrationFileConverter.toRefreshPolicy(lazyMigrationFile.load().getMigrationFile()),
+                    lazyMigrationFile::release
+            );
         }
+
+        final ChecksumedMigrationFile checksumedMigrationFile = yamlParser.parse(resource);
+        return MigrationFileConverter.toMigrationSetEntry(
+                checksumedMigrationFile.getMigrationFile(),
+                new MigrationMeta(
+                        checksumedMigrationFile.getSha256Checksum(),
+                        toVersion(matcher),
+                        matcher.group(2),
+                        Optional.of(checksumedMigrationFile.getRawSha256Checksum())
+                )
+        );
+    }
+
+    /**
+     * @return a matcher of the file name of the resource, group 1 is the version and group 2 the name
+     */
+    static Matcher matchResource(final String resource, final Pattern pattern) {
+        final String resourceName = resource.lastIndexOf("/") != -1 ? resource.substring(resource.lastIndexOf("/") + 1) : resource;
+        final Matcher matcher = pattern.matcher(resourceName);
+        matcher.matches();
+
+        return matcher;
+    }
+
+    static String toVersion(final Matcher matcher) {
+        return matcher.group(1).replaceAll("_", ".");
     }
 }
@@ -31,13 +31,17 @@ import com.github.fge.jsonschema.main.JsonSchema;
 import com.github.fge.jsonschema.main.JsonSchemaFactory;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.common.base.Stopwatch;
 import com.google.common.io.Resources;
 import com.quandoo.lib.elasticsearchmigration.exception.InvalidSchemaException;
+import com.quandoo.lib.elasticsearchmigration.model.input.BulkLoadMigrationFileEntry;
 import com.quandoo.lib.elasticsearchmigration.model.input.ChecksumedMigrationFile;
 import com.quandoo.lib.elasticsearchmigration.model.input.MigrationFile;
+import com.quandoo.lib.elasticsearchmigration.service.MigrationMetrics;
 import com.quandoo.lib.elasticsearchmigration.service.Parser;
 import com.quandoo.lib.elasticsearchmigration.util.HashUtils;
 import com.quandoo.lib.elasticsearchmigration.util.ResourceUtils;
+import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -45,13 +49,21 @@ import org.apache.commons.lang3.StringUtils;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
+ * Thread safe, one instance is shared by the threads parsing changesets concurrently. The mappers and the schema are
+ * immutable after construction.
+ *
  * @author Emir Dizdarevic
  * @since 1.0.0
  */
@@ -71,8 +83,14 @@ public class YamlParser implements Parser {
     private final ObjectMapper yamlMapper;
     private final ObjectMapper jsonMapper;
     private final JsonSchema jsonSchema;
+    private final MigrationMetrics metrics;
 
     public YamlParser() {
+        this(new NoopMigrationMetrics());
+    }
+
+    public YamlParser(@NonNull final MigrationMetrics metrics) {
+        this.metrics = metrics;
         this.yamlMapper = createYamlMapper();
         this.jsonMapper = createJsonMapper();
         this.jsonSchema = createJsonSchema();
@@ -84,19 +102,25 @@ public class YamlParser implements Parser {
         yamlFactory.configure(YAMLGenerator.Feature.USE_NATIVE_TYPE_ID, false);
         yamlFactory.configure(YAMLGenerator.Feature.LITERAL_BLOCK_STYLE, true);
 
-        final ObjectMapper yamlMapper = new ObjectMapper(yamlFactory);
-        yamlMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        yamlMapper.configure(DeserializationFeature.READ_ENUMS_USING_TO_STRING, true);
-        yamlMapper.configure(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS, true);
-        yamlMapper.configure(DeserializationFeature.USE_BIG_INTEGER_FOR_INTS, true);
-        yamlMapper.configure(SerializationFeature.WRITE_ENUMS_USING_TO_STRING, true);
-        yamlMapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
-        yamlMapper.setSerializationInclusion(JsonInclude.Include.NON_ABSENT);
-
-        yamlMapper.registerModule(new Jdk8Module());
-        yamlMapper.registerModule(new JavaTimeModule());
+        return configureMapper(new ObjectMapper(yamlFactory));
+    }
 
-        return yamlMapper;
+    /**
+     * Applies the settings changeset files are read and normalized with. Also used for the precompiled bundle.
+     */
+    static ObjectMapper configureMapper(final ObjectMapper objectMapper) {
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        objectMapper.configure(DeserializationFeature.READ_ENUMS_USING_TO_STRING, true);
+        objectMapper.configure(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS, true);
+        objectMapper.configure(DeserializationFeature.USE_BIG_INTEGER_FOR_INTS, true);
+        objectMapper.configure(SerializationFeature.WRITE_ENUMS_USING_TO_STRING, true);
+        objectMapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        objectMapper.setSerializationInclusion(JsonInclude.Include.NON_ABSENT);
+
+        objectMapper.registerModule(new Jdk8Module());
+        objectMapper.registerModule(new JavaTimeModule());
+
+        return objectMapper;
     }
 
     private JsonSchema createJsonSchema() {
@@ -117,10 +141,9 @@ public class YamlParser implements Parser {
         return new ObjectMapper();
     }
 
-    private void checkSchema(String path) {
+    private void checkSchema(final String path, final byte[] content) {
         try {
-            final InputStream inputStream = ResourceUtils.getResourceAsStream(path, this);
-            final JsonNode yaml = yamlMapper.readTree(inputStream);
+            final JsonNode yaml = yamlMapper.readTree(content);
             final ProcessingReport report = jsonSchema.validate(yaml);
             final List<String> errors = new LinkedList<>();
             if (!report.isSuccess()) {
@@ -137,23 +160,76 @@ public class YamlParser implements Parser {
         checkNotNull(StringUtils.trimToNull(path), "path must be not null");
 
         try {
+            final byte[] yaml = read(path);
             log.info("Checking schema for file " + path);
-            checkSchema(path);
+            final Stopwatch schemaValidation = Stopwatch.createStarted();
+            checkSchema(path, yaml);
+            metrics.recordPhase(MigrationMetrics.Phase.SCHEMA_VALIDATION, Duration.ofNanos(schemaValidation.elapsed(TimeUnit.NANOSECONDS)));
             log.info("Parsing file " + path);
-            final byte[] yaml = IOUtils.toByteArray(ResourceUtils.getResourceAsStream(path, this));
+            final Stopwatch parse = Stopwatch.createStarted();
             final MigrationFile migrationFile = yamlMapper.readValue(new ByteArrayInputStream(yaml), MigrationFile.class);
 
             final byte[] normalizedYaml = yamlMapper.writeValueAsBytes(migrationFile);
-            final String normalizedSha256Checksum = HashUtils.hashSha256(ByteBuffer.wrap(normalizedYaml));
+            final String normalizedSha256Checksum = calculateChecksum(normalizedYaml, migrationFile);
 
             if(log.isDebugEnabled()) {
                 log.debug("Original yaml: \n{}", new String(yaml, Charsets.UTF_8));
                 log.debug("Normalized yaml: \n{}", new String(normalizedYaml, Charsets.UTF_8));
             }
 
-            return new ChecksumedMigrationFile(migrationFile, normalizedSha256Checksum);
+            metrics.recordPhase(MigrationMetrics.Phase.PARSE, Duration.ofNanos(parse.elapsed(TimeUnit.NANOSECONDS)));
+            return new ChecksumedMigrationFile(migrationFile, normalizedSha256Checksum, HashUtils.hashSha256(ByteBuffer.wrap(yaml)));
         } catch (IOException e) {
             throw new InvalidSchemaException("Problem parsing yaml file " + path, e);
         }
     }
+
+    /**
+     * Checksum of the file as it is, without validating or parsing it. Equals {@link ChecksumedMigrationFile#getRawSha256Checksum()} of the same file.
+     */
+    public String calculateRawChecksum(final String path) {
+        checkNotNull(StringUtils.trimToNull(path), "path must be not null");
+
+        try {
+            return HashUtils.hashSha256(ByteBuffer.wrap(read(path)));
+        } catch (IOException e) {
+            throw new InvalidSchemaException("Problem reading yaml file " + path, e);
+        }
+    }
+
+    private byte[] read(final String path) throws IOException {
+        final InputStream inputStream = ResourceUtils.getResourceAsStream(path, this);
+        if (inputStream == null) {
+            throw new IOException("Resource " + path + " not found");
+        }
+
+        try {
+            return IOUtils.toByteArray(inputStream);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
+    private String calculateChecksum(final byte[] normalizedYaml, final MigrationFile migrationFile) throws IOException {
+        final List<String> dataFiles = migrationFile.getMigrations().stream()
+                .filter(e -> e instanceof BulkLoadMigrationFileEntry)
+                .map(e -> ((BulkLoadMigrationFileEntry) e).getFile())
+                .collect(Collectors.toList());
+        if (dataFiles.isEmpty()) {
+            return HashUtils.hashSha256(ByteBuffer.wrap(normalizedYaml));
+        }
+
+        // Referenced data files are part of the checksum. They are streamed through the digest and never held on heap.
+        final List<InputStream> inputStreams = new LinkedList<>();
+        try {
+            inputStreams.add(new ByteArrayInputStream(normalizedYaml));
+            for (String dataFile : dataFiles) {
+                inputStreams.add(ResourceUtils.openResourceOrFile(dataFile, this));
+            }
+
+            return HashUtils.hashSha256(new SequenceInputStream(Collections.enumeration(inputStreams)));
+        } finally {
+            inputStreams.forEach(IOUtils::closeQuietly);
+        }
+    }
 }
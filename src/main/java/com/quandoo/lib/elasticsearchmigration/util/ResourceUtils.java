@@ -17,6 +17,8 @@ package com.quandoo.lib.elasticsearchmigration.util;
 
 import lombok.experimental.UtilityClass;
 
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
 /**
@@ -30,4 +32,12 @@ public class ResourceUtils {
         final InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(resource);
         return in == null ? thisRef.getClass().getResourceAsStream(resource) : in;
     }
+
+    /**
+     * Opens a classpath resource or, if there is no such resource, a file from the filesystem.
+     */
+    public InputStream openResourceOrFile(String location, Object thisRef) throws IOException {
+        final InputStream in = getResourceAsStream(location, thisRef);
+        return in == null ? new FileInputStream(location) : in;
+    }
 }
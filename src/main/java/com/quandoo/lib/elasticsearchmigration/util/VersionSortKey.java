@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.util;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import lombok.experimental.UtilityClass;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Encodes a version like 1.2.10 into a string which sorts lexicographically in the same order as {@link VersionComparator}
+ * sorts the versions. Every segment is zero padded and the key is terminated with a character sorting after the delimiter,
+ * so a version sorts after all longer versions sharing its prefix (1.0 after 1.0.0).
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+@UtilityClass
+public class VersionSortKey {
+
+    private static final int SEGMENT_LENGTH = 10;
+    private static final String TERMINATOR = "~";
+
+    public static String of(final String version) {
+        checkNotNull(version, "version must not be null");
+
+        final StringBuilder sortKey = new StringBuilder();
+        for (String segment : Splitter.on('.').split(version)) {
+            if (sortKey.length() > 0) {
+                sortKey.append('.');
+            }
+            sortKey.append(Strings.padStart(String.valueOf(Integer.parseInt(segment)), SEGMENT_LENGTH, '0'));
+        }
+
+        return sortKey.append(TERMINATOR).toString();
+    }
+}
@@ -15,9 +15,15 @@
  */
 package com.quandoo.lib.elasticsearchmigration;
 
+import com.google.common.collect.ImmutableMap;
 import com.quandoo.lib.elasticsearchmigration.model.es.MigrationEntry;
 import com.quandoo.lib.elasticsearchmigration.model.es.MigrationEntryMeta;
 import com.quandoo.lib.elasticsearchmigration.model.es.State;
+import com.quandoo.lib.elasticsearchmigration.model.input.MigrationType;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
@@ -89,4 +95,44 @@ public class ElasticsearchMigrationIntegrationTest extends AbstractESTest {
                 "706b413aefb36d7cbb34ac810249db1f8e70e2bc953f4183f4ffdc082614af61"
         ));
     }
+
+    @Test
+    public void testMigrateWithTunedClient() throws IOException, InterruptedException, ExecutionException {
+        final ElasticsearchConfig elasticsearchConfig = ElasticsearchConfig.builder(new URL("http://localhost:9200"))
+                .maxConnectionsPerRoute(2)
+                .maxConnectionsTotal(4)
+                .connectionRequestTimeoutInMillis(5000)
+                .timeoutOverrides(ImmutableMap.of(
+                        MigrationType.CREATE_INDEX, RequestTimeouts.builder().socketTimeoutInMillis(120000).build(),
+                        MigrationType.REINDEX, RequestTimeouts.builder().socketTimeoutInMillis(120000).build()
+                ))
+                .compressRequests(true)
+                .compressionThresholdInBytes(0)
+                .keepAliveInMillis(10000)
+                .tcpKeepAlive(true)
+                .build();
+
+        try (ElasticsearchMigration elasticsearchMigration = new ElasticsearchMigration(ElasticsearchMigrationConfig.builder("test", elasticsearchConfig).basePackage("changeset").build())) {
+            elasticsearchMigration.migrate();
+        }
+
+        assertThat(getFromIndex(MigrationEntryMeta.INDEX, "test-1.1.2", MigrationEntry.class).getState(), is(State.SUCCESS));
+    }
+
+    @Test
+    public void testMigrateWithExternalClient() throws IOException, InterruptedException, ExecutionException {
+        try (RestHighLevelClient restHighLevelClient = new RestHighLevelClient(RestClient.builder(new HttpHost("localhost", 9200, "http")))) {
+            try (ElasticsearchMigration elasticsearchMigration = new ElasticsearchMigration(
+                    ElasticsearchMigrationConfig.builder("test", ElasticsearchConfig.builder(new URL("http://localhost:9200")).build()).basePackage("changeset").build(),
+                    restHighLevelClient
+            )) {
+                elasticsearchMigration.migrate();
+            }
+
+            // The external client stays open
+            assertThat(restHighLevelClient.ping(RequestOptions.DEFAULT), is(true));
+        }
+
+        assertThat(getFromIndex(MigrationEntryMeta.INDEX, "test-1.1.2", MigrationEntry.class).getState(), is(State.SUCCESS));
+    }
 }
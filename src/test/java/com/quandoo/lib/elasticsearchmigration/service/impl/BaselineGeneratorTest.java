@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public class BaselineGeneratorTest {
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final ObjectMapper yamlMapper = new ObjectMapper(new YAMLFactory());
+    private final BaselineGenerator baselineGenerator = new BaselineGenerator(new RestHighLevelClient(RestClient.builder(new HttpHost("localhost", 9200))));
+
+    @Test
+    public void toYaml() throws Exception {
+        final JsonNode pipelines = jsonMapper.readTree("{\"test_pipeline\":{\"processors\":[]}}");
+        final JsonNode templates = jsonMapper.readTree("{\"test_template\":{\"order\":0,\"index_patterns\":[\"test_*\"],\"settings\":{},\"mappings\":{},\"aliases\":{}}}");
+        final JsonNode indices = jsonMapper.readTree("{" +
+                "\"test_index_2\":{\"aliases\":{},\"mappings\":{},\"settings\":{\"index\":{\"number_of_shards\":\"1\"}}}," +
+                "\"test_index_1\":{\"aliases\":{\"test_alias\":{}},\"mappings\":{\"properties\":{\"name\":{\"type\":\"keyword\"}}}," +
+                "\"settings\":{\"index\":{\"number_of_shards\":\"2\",\"uuid\":\"abc\",\"creation_date\":\"1\",\"provided_name\":\"test_index_1\",\"version\":{\"created\":\"7040099\"}}}}," +
+                "\"elasticsearch_migration_version\":{\"aliases\":{},\"mappings\":{},\"settings\":{}}," +
+                "\".kibana\":{\"aliases\":{},\"mappings\":{},\"settings\":{}}" +
+                "}");
+
+        final JsonNode migrations = yamlMapper.readTree(baselineGenerator.toYaml(pipelines, templates, indices)).get("migrations");
+
+        final List<String> types = StreamSupport.stream(migrations.spliterator(), false).map(e -> e.get("type").asText()).collect(Collectors.toList());
+        assertThat(types, contains("CREATE_INGEST_PIPELINE", "CREATE_OR_UPDATE_INDEX_TEMPLATE", "CREATE_INDEX", "CREATE_INDEX"));
+        assertThat(migrations.get(0).get("id").asText(), is("test_pipeline"));
+        assertThat(migrations.get(1).get("template").asText(), is("test_template"));
+        assertThat(migrations.get(2).get("index").asText(), is("test_index_1"));
+        assertThat(migrations.get(3).get("index").asText(), is("test_index_2"));
+
+        final JsonNode definition = jsonMapper.readTree(migrations.get(2).get("definition").asText());
+        assertThat(definition, is(jsonMapper.readTree("{" +
+                "\"settings\":{\"index\":{\"number_of_shards\":\"2\"}}," +
+                "\"mappings\":{\"properties\":{\"name\":{\"type\":\"keyword\"}}}," +
+                "\"aliases\":{\"test_alias\":{}}" +
+                "}")));
+    }
+}
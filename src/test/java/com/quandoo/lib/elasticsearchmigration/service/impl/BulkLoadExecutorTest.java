@@ -0,0 +1,222 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.migration.BulkLoadMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.OpType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public class BulkLoadExecutorTest {
+
+    private static final String LOADED = "{\"took\":5,\"errors\":false,\"items\":[]}";
+    private static final String CREATED = "{\"create\":{\"_index\":\"test_index\",\"_id\":\"%s\",\"status\":201}}";
+    private static final String REJECTED = "{\"create\":{\"_index\":\"test_index\",\"_id\":\"%s\",\"status\":429," +
+            "\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"rejected execution of coordinating operation\"}}}";
+    private static final String FAILED = "{\"create\":{\"_index\":\"test_index\",\"_id\":\"%s\",\"status\":400," +
+            "\"error\":{\"type\":\"mapper_parsing_exception\",\"reason\":\"failed to parse field [user]\"}}}";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void executeBatchesBySize() throws Exception {
+        final String file = write("documents.ndjson", "{\"id\":\"1\"}", "{\"id\":\"2\"}", "", "{\"id\":\"3\"}", "{\"id\":\"4\"}", "{\"id\":\"5\"}");
+        try (StubElasticsearch elasticsearch = new StubElasticsearch().respondByDefault(200, LOADED)) {
+            final int itemSize = bulkBody("1").getBytes(Charsets.UTF_8).length;
+
+            createExecutor(elasticsearch, 1000, itemSize * 2 + 1, 1).execute(migration(file), new StepStatistics());
+
+            final List<StubElasticsearch.StubRequest> requests = elasticsearch.getRequests();
+            assertThat(requests, hasSize(3));
+            assertThat(requests.get(0).getBody(), is(bulkBody("1", "2")));
+            assertThat(requests.get(1).getBody(), is(bulkBody("3", "4")));
+            assertThat(requests.get(2).getBody(), is(bulkBody("5")));
+            assertThat(requests.get(0).getQuery(), containsString("refresh=false"));
+        }
+    }
+
+    @Test
+    public void executeDecompressesGzippedFile() throws Exception {
+        final Path file = directory.resolve("documents.ndjson.gz");
+        try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(file))) {
+            outputStream.write("{\"id\":\"1\"}\n{\"id\":\"2\"}\n".getBytes(Charsets.UTF_8));
+        }
+        try (StubElasticsearch elasticsearch = new StubElasticsearch().respondByDefault(200, LOADED)) {
+
+            createExecutor(elasticsearch, 1000, Long.MAX_VALUE, 1).execute(migration(file.toString()), new StepStatistics());
+
+            assertThat(elasticsearch.getRequests(), hasSize(1));
+            assertThat(elasticsearch.getRequests().get(0).getBody(), is(bulkBody("1", "2")));
+        }
+    }
+
+    @Test
+    public void executeBlocksReaderWhileBatchesAreInFlight() throws Exception {
+        final String file = write("documents.ndjson", "{\"id\":\"1\"}", "{\"id\":\"2\"}", "{\"id\":\"3\"}", "{\"id\":\"4\"}", "{\"id\":\"5\"}",
+                "{\"id\":\"6\"}", "{\"id\":\"7\"}", "{\"id\":\"8\"}", "{\"id\":\"9\"}");
+        try (StubElasticsearch elasticsearch = new StubElasticsearch().respondDelayed(200, LOADED, 1000).respondByDefault(200, LOADED)) {
+            final AtomicInteger readLines = new AtomicInteger();
+            final BulkLoadExecutor bulkLoadExecutor = new BulkLoadExecutor(createDocumentBulkExecutor(elasticsearch, 1, Long.MAX_VALUE), new ObjectMapper(), 1) {
+                @Override
+                BufferedReader open(final BulkLoadMigration migration) throws IOException {
+                    return new BufferedReader(super.open(migration)) {
+                        @Override
+                        public String readLine() throws IOException {
+                            final String line = super.readLine();
+                            if (line != null) {
+                                readLines.incrementAndGet();
+                            }
+                            return line;
+                        }
+                    };
+                }
+            };
+
+            final CompletableFuture<Void> load = CompletableFuture.runAsync(() -> bulkLoadExecutor.execute(migration(file), new StepStatistics()));
+            waitFor(() -> elasticsearch.getRequests().size() == 1);
+            Thread.sleep(200);
+
+            // One batch is sent, one waits for the worker and the reader blocks handing over the third
+            assertThat(readLines.get(), is(4));
+            assertThat(elasticsearch.getRequests(), hasSize(1));
+
+            load.get(5, TimeUnit.SECONDS);
+            assertThat(readLines.get(), is(9));
+            assertThat(elasticsearch.getRequests(), hasSize(9));
+        }
+    }
+
+    @Test
+    public void executeRetriesRejectedItems() throws Exception {
+        final String file = write("documents.ndjson", "{\"id\":\"1\"}", "{\"id\":\"2\"}");
+        try (StubElasticsearch elasticsearch = new StubElasticsearch()
+                .respond(200, bulkResponse(String.format(CREATED, "1"), String.format(REJECTED, "2")))
+                .respond(429, "{\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"rejected\"},\"status\":429}")
+                .respond(200, LOADED)) {
+            final StepStatistics statistics = new StepStatistics();
+
+            createExecutor(elasticsearch, 1000, Long.MAX_VALUE, 1).execute(migration(file), statistics);
+
+            final List<StubElasticsearch.StubRequest> requests = elasticsearch.getRequests();
+            assertThat(requests, hasSize(3));
+            assertThat(requests.get(0).getBody(), is(bulkBody("1", "2")));
+            assertThat(requests.get(1).getBody(), is(bulkBody("2")));
+            assertThat(requests.get(2).getBody(), is(bulkBody("2")));
+            assertThat(statistics.toStep(1, 1, "BULK_LOAD").getRetries(), is(2));
+        }
+    }
+
+    @Test
+    public void executeFailsOnItemError() throws Exception {
+        final String file = write("documents.ndjson", "{\"id\":\"1\"}", "{\"id\":\"2\"}", "{\"id\":\"3\"}", "{\"id\":\"4\"}", "{\"id\":\"5\"}",
+                "{\"id\":\"6\"}", "{\"id\":\"7\"}", "{\"id\":\"8\"}", "{\"id\":\"9\"}", "{\"id\":\"10\"}");
+        try (StubElasticsearch elasticsearch = new StubElasticsearch()
+                .respond(200, LOADED)
+                .respond(200, bulkResponse(String.format(CREATED, "3"), String.format(FAILED, "4")))
+                .respondByDefault(200, LOADED)) {
+
+            final MigrationFailedException exception = assertThrows(MigrationFailedException.class,
+                    () -> createExecutor(elasticsearch, 2, Long.MAX_VALUE, 1).execute(migration(file), new StepStatistics()));
+
+            assertThat(exception.getMessage(), startsWith("Loading " + file + " into test_index failed after "));
+            assertThat(exception.getMessage(), endsWith("Message: Bulk request failed for 1 item(s): " + file + ":4: mapper_parsing_exception: failed to parse field [user]"));
+            // Reading stops at the failure, only batches already handed to the worker are still sent
+            assertThat(elasticsearch.getRequests().size(), lessThan(5));
+        }
+    }
+
+    @Test
+    public void executeFailsOnMissingIdField() throws Exception {
+        final String file = write("documents.ndjson", "{\"id\":\"1\"}", "{\"name\":\"2\"}");
+        try (StubElasticsearch elasticsearch = new StubElasticsearch().respondByDefault(200, LOADED)) {
+
+            final MigrationFailedException exception = assertThrows(MigrationFailedException.class,
+                    () -> createExecutor(elasticsearch, 1000, Long.MAX_VALUE, 1).execute(migration(file), new StepStatistics()));
+
+            assertThat(exception.getMessage(), is("Document " + file + ":2 has no value for id field 'id'"));
+            assertThat(elasticsearch.getRequests(), hasSize(0));
+        }
+    }
+
+    private BulkLoadMigration migration(final String file) {
+        return new BulkLoadMigration("test_index", file, Optional.of("id"), Optional.empty());
+    }
+
+    private String write(final String name, final String... lines) throws IOException {
+        final Path file = directory.resolve(name);
+        Files.write(file, String.join("\n", lines).getBytes(Charsets.UTF_8));
+        return file.toString();
+    }
+
+    private String bulkBody(final String... ids) {
+        final StringBuilder body = new StringBuilder();
+        for (String id : ids) {
+            body.append("{\"").append(OpType.CREATE.name().toLowerCase()).append("\":{\"_index\":\"test_index\",\"_id\":\"").append(id).append("\"}}\n")
+                    .append("{\"id\":\"").append(id).append("\"}\n");
+        }
+        return body.toString();
+    }
+
+    private String bulkResponse(final String... items) {
+        return "{\"took\":5,\"errors\":true,\"items\":[" + String.join(",", items) + "]}";
+    }
+
+    private void waitFor(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat("Condition not met in time", System.currentTimeMillis() < deadline, is(true));
+            Thread.sleep(10);
+        }
+    }
+
+    private DocumentBulkExecutor createDocumentBulkExecutor(final StubElasticsearch elasticsearch, final int maxActions, final long maxSizeInBytes) {
+        return new DocumentBulkExecutor(elasticsearch.createClient(), new ObjectMapper(), maxActions, maxSizeInBytes, 3);
+    }
+
+    private BulkLoadExecutor createExecutor(final StubElasticsearch elasticsearch, final int maxActions, final long maxSizeInBytes, final int parallelism) {
+        return new BulkLoadExecutor(createDocumentBulkExecutor(elasticsearch, maxActions, maxSizeInBytes), new ObjectMapper(), parallelism);
+    }
+}
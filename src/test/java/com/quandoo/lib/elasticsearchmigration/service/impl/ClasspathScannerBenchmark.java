@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.google.common.base.Stopwatch;
+import org.reflections.Reflections;
+import org.reflections.scanners.ResourcesScanner;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Compares {@link ClasspathScanner} with the Reflections resource scan it replaced on a generated fat jar. Not run as
+ * part of the build:
+ * <pre>
+ * java -cp target/test-classes:target/classes:&lt;test classpath&gt; com.quandoo.lib.elasticsearchmigration.service.impl.ClasspathScannerBenchmark [sizeInMb]
+ * </pre>
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public class ClasspathScannerBenchmark {
+
+    private static final String BASE_PACKAGE = "es.migration";
+    private static final int ENTRY_SIZE = 4096;
+    private static final int MIGRATION_COUNT = 100;
+    private static final int ITERATIONS = 5;
+
+    public static void main(final String[] args) throws Exception {
+        final int sizeInMb = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        final Path jar = Files.createTempFile("classpath-scanner-benchmark", ".jar");
+        try {
+            generateJar(jar, sizeInMb);
+            System.out.println("Generated " + Files.size(jar) / (1024 * 1024) + " MB jar " + jar);
+
+            try (URLClassLoader classLoader = new URLClassLoader(new URL[]{jar.toUri().toURL()}, null)) {
+                final Thread thread = Thread.currentThread();
+                final ClassLoader previousClassLoader = thread.getContextClassLoader();
+                thread.setContextClassLoader(classLoader);
+                try {
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        final Stopwatch reflections = Stopwatch.createStarted();
+                        final Set<String> reflectionsResources = new Reflections(BASE_PACKAGE, new ResourcesScanner())
+                                .getResources(YamlDirectoryMigrationSetProvider.MIGRATION_FILE_PATH_PATTERN);
+                        reflections.stop();
+
+                        final Stopwatch scanner = Stopwatch.createStarted();
+                        final Set<String> scannerResources = new ClasspathScanner(Collections.singletonList(classLoader))
+                                .getResources(BASE_PACKAGE, YamlDirectoryMigrationSetProvider.MIGRATION_FILE_PATH_PATTERN);
+                        scanner.stop();
+
+                        System.out.println(String.format("Iteration %d: Reflections %d ms (%d resources), ClasspathScanner %d ms (%d resources)",
+                                i + 1,
+                                reflections.elapsed(TimeUnit.MILLISECONDS),
+                                reflectionsResources.size(),
+                                scanner.elapsed(TimeUnit.MILLISECONDS),
+                                scannerResources.size()
+                        ));
+                    }
+                } finally {
+                    thread.setContextClassLoader(previousClassLoader);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(jar);
+        }
+    }
+
+    private static void generateJar(final Path jar, final int sizeInMb) throws IOException {
+        final Random random = new Random(0);
+        final byte[] content = new byte[ENTRY_SIZE];
+        final long entries = (long) sizeInMb * 1024 * 1024 / ENTRY_SIZE;
+
+        try (JarOutputStream jarOutputStream = new JarOutputStream(Files.newOutputStream(jar))) {
+            writeEntry(jarOutputStream, "es/", null);
+            writeEntry(jarOutputStream, "es/migration/", null);
+            for (int i = 0; i < MIGRATION_COUNT; i++) {
+                writeEntry(jarOutputStream, "es/migration/V" + i + "__migration.yaml", "migrations: []".getBytes(StandardCharsets.UTF_8));
+            }
+            for (long i = 0; i < entries; i++) {
+                if (i % 1000 == 0) {
+                    writeEntry(jarOutputStream, "lib/package" + i / 1000 + "/", null);
+                }
+                // Random content doesn't compress, the jar ends up with the requested size
+                random.nextBytes(content);
+                writeEntry(jarOutputStream, "lib/package" + i / 1000 + "/Resource" + i + ".class", content);
+            }
+        }
+    }
+
+    private static void writeEntry(final JarOutputStream jarOutputStream, final String name, final byte[] content) throws IOException {
+        jarOutputStream.putNextEntry(new JarEntry(name));
+        if (content != null) {
+            jarOutputStream.write(content);
+        }
+        jarOutputStream.closeEntry();
+    }
+}
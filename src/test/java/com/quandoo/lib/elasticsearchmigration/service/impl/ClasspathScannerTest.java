@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public class ClasspathScannerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void getResourcesFromDirectory() {
+        final ClasspathScanner classpathScanner = new ClasspathScanner();
+
+        assertThat(classpathScanner.getResources("com.quandoo.lib.elasticsearchmigration.service.impl", YamlDirectoryMigrationSetProvider.MIGRATION_FILE_PATH_PATTERN), containsInAnyOrder(
+                "com/quandoo/lib/elasticsearchmigration/service/impl/V1_0_0__migration_one.yaml",
+                "com/quandoo/lib/elasticsearchmigration/service/impl/V1_2_0__migration_two.yaml",
+                "com/quandoo/lib/elasticsearchmigration/service/impl/V1_10_0__migration_three.yaml"
+        ));
+    }
+
+    @Test
+    public void getResourcesFromJar() throws IOException {
+        final Path jar = tempDir.resolve("migrations.jar");
+        try (JarOutputStream jarOutputStream = new JarOutputStream(Files.newOutputStream(jar))) {
+            writeEntry(jarOutputStream, "es/");
+            writeEntry(jarOutputStream, "es/migration/");
+            writeEntry(jarOutputStream, "es/migration/V1_0_0__init.yaml");
+            writeEntry(jarOutputStream, "es/migration/README.md");
+            writeEntry(jarOutputStream, "es/migration/sub/");
+            writeEntry(jarOutputStream, "es/migration/sub/V2__nested.yaml");
+            writeEntry(jarOutputStream, "es/other/");
+            writeEntry(jarOutputStream, "es/other/V3__other.yaml");
+        }
+
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{jar.toUri().toURL()}, null)) {
+            final ClasspathScanner classpathScanner = new ClasspathScanner(Collections.singletonList(classLoader));
+
+            assertThat(classpathScanner.getResources("es.migration", YamlDirectoryMigrationSetProvider.MIGRATION_FILE_PATH_PATTERN), containsInAnyOrder(
+                    "es/migration/V1_0_0__init.yaml",
+                    "es/migration/sub/V2__nested.yaml"
+            ));
+        }
+    }
+
+    private void writeEntry(final JarOutputStream jarOutputStream, final String name) throws IOException {
+        jarOutputStream.putNextEntry(new JarEntry(name));
+        if (!name.endsWith("/")) {
+            jarOutputStream.write("migrations: []".getBytes(StandardCharsets.UTF_8));
+        }
+        jarOutputStream.closeEntry();
+    }
+}
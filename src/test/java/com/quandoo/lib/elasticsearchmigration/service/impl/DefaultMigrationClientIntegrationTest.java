@@ -424,6 +424,46 @@ public class DefaultMigrationClientIntegrationTest extends AbstractESTest {
 
         assertThat(checkDocumentExists("test_index_1", "1"), is(true));
         assertMigrationEntry();
+        // The finished task isn't resumed anymore
+        final MigrationEntry migrationEntry = getFromIndex(MigrationEntryMeta.INDEX, "test-1.0.0", MigrationEntry.class);
+        assertThat(migrationEntry.getTaskId(), nullValue());
+        assertThat(migrationEntry.getCurrentStep(), nullValue());
+    }
+
+    @Test
+    public void testDeferredRefreshBeforeReindex() {
+
+        createIndex("test_index_2", loadResource("create_index.json"));
+
+        final MigrationSet migrationSet = new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(
+                                        new CreateIndexMigration("test_index_1", loadResource("create_index.json")),
+                                        new IndexDocumentMigration("test_index_1", Optional.of("1"), Optional.empty(), loadResource("index_document.json")),
+                                        new ReindexMigration(loadResource("reindex.json"))
+                                ),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity"
+                                )
+
+                        )
+                )
+        );
+
+        final RestClientBuilder builder = RestClient.builder(new HttpHost("localhost", 9200, "http"));
+        final DefaultMigrationClient defaultMigrationClient = new DefaultMigrationClient(
+                new RestHighLevelClient(builder),
+                ElasticsearchMigrationConfig.builder(IDENTIFIER, ElasticsearchConfig.builder(Collections.emptySet()).build())
+                        .refreshPolicy(RefreshPolicy.DEFERRED)
+                        .build()
+        );
+        defaultMigrationClient.applyMigrationSet(migrationSet);
+
+        assertThat(checkDocumentExists("test_index_2", "1"), is(true));
+        assertMigrationEntry();
     }
 
     @Test
@@ -598,6 +638,138 @@ public class DefaultMigrationClientIntegrationTest extends AbstractESTest {
         assertMigrationEntry();
     }
 
+    @Test
+    public void testWaitsForVersionInProgressOfLockHolder() {
+
+        final DefaultMigrationClient defaultMigrationClient = createClient(false, false);
+        defaultMigrationClient.applyMigrationSet(new MigrationSet(Collections.emptyList()));
+
+        // Another process holds the lock while it applies the version
+        indexDocument(LockEntryMeta.INDEX, "test-global", loadResource("lock_entry.json"));
+        indexDocument(MigrationEntryMeta.INDEX, "test-1.0.0", loadResource("in_progress_elasticsearchmigration_version_entry.json"));
+        scheduler.schedule(() -> {
+            indexDocument(MigrationEntryMeta.INDEX, "test-1.0.0", loadResource("successful_elasticsearchmigration_version_entry.json"));
+            deleteDocument(LockEntryMeta.INDEX, "test-global");
+        }, 5, TimeUnit.SECONDS);
+
+        final MigrationSet migrationSet = new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(new CreateIndexMigration("test_index", loadResource("create_index.json"))),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity"
+                                )
+
+                        )
+                )
+        );
+
+        defaultMigrationClient.applyMigrationSet(migrationSet);
+
+        // Applied by the other process
+        assertThat(checkIndexExists("test_index"), is(false));
+        assertMigrationEntry();
+    }
+
+    @Test
+    public void testExpiredLockTakenOver() {
+
+        final DefaultMigrationClient defaultMigrationClient = createClient(false, false);
+        defaultMigrationClient.applyMigrationSet(new MigrationSet(Collections.emptyList()));
+
+        indexDocument(LockEntryMeta.INDEX, "test-global", loadResource("expired_lock_entry.json"));
+
+        final MigrationSet migrationSet = new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(new CreateIndexMigration("test_index", loadResource("create_index.json"))),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity"
+                                )
+
+                        )
+                )
+        );
+
+        defaultMigrationClient.applyMigrationSet(migrationSet);
+
+        assertThat(checkIndexExists("test_index"), is(true));
+        assertMigrationEntry();
+    }
+
+    @Test
+    public void testBootstrapFailureRecordedWithBufferedVersions() {
+
+        final RestClientBuilder builder = RestClient.builder(new HttpHost("localhost", 9200, "http"));
+        final DefaultMigrationClient defaultMigrationClient = new DefaultMigrationClient(
+                new RestHighLevelClient(builder),
+                ElasticsearchMigrationConfig.builder(IDENTIFIER, ElasticsearchConfig.builder(Collections.emptySet()).build())
+                        .bootstrapHistoryBatchSize(10)
+                        .build()
+        );
+
+        final MigrationSet migrationSet = new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(new CreateOrUpdateIndexTemplateMigration("test_template", loadResource("create_template.json"))),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity"
+                                )
+                        ),
+                        new MigrationSetEntry(
+                                ImmutableList.of(new UpdateMappingMigration(ImmutableSet.of("missing_index"), loadResource("update_mapping.json"))),
+                                new MigrationMeta(
+                                        "20d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.1.0",
+                                        "missing"
+                                )
+                        )
+                )
+        );
+
+        assertThrows(MigrationFailedException.class, () -> {
+            defaultMigrationClient.applyMigrationSet(migrationSet);
+        });
+
+        assertMigrationEntry();
+        final MigrationEntry failedMigrationEntry = getFromIndex(MigrationEntryMeta.INDEX, "test-1.1.0", MigrationEntry.class);
+        assertThat(failedMigrationEntry.getState(), is(State.FAILURE));
+        assertThat(failedMigrationEntry.getFailureMessage(), notNullValue());
+    }
+
+    @Test
+    public void testApplyMigrationsWithBinaryWireFormat() {
+        final MigrationSet migrationSet = new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(
+                                        new CreateIndexMigration("test_index", loadResource("create_index.json")),
+                                        new IndexDocumentMigration("test_index", Optional.of("1"), Optional.empty(), "{\"user\": \"kimchy\"}")
+                                ),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity"
+                                )
+                        )
+                )
+        );
+
+        createClient(WireFormat.SMILE).applyMigrationSet(migrationSet);
+        createClient(WireFormat.CBOR).applyMigrationSet(migrationSet);
+        // The history written with SMILE is verified with the same checksums over JSON
+        createClient(WireFormat.JSON).applyMigrationSet(migrationSet);
+
+        assertThat(checkIndexExists("test_index"), is(true));
+        assertMigrationEntry();
+    }
+
     @Test
     public void testMigrationFailedAfterAllRetries() throws ExecutionException, InterruptedException, IOException {
 
@@ -737,6 +909,226 @@ public class DefaultMigrationClientIntegrationTest extends AbstractESTest {
         });
     }
 
+    @Test
+    public void testUnchangedChangesetsVerifiedWithRawChecksums() {
+        final DefaultMigrationClient defaultMigrationClient = createClient(false, false);
+        defaultMigrationClient.applyMigrationSet(new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(new CreateIndexMigration("test_index", loadResource("create_index.json"))),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity",
+                                        Optional.of("raw")
+                                )
+                        )
+                )
+        ));
+
+        assertThat(getFromIndex(MigrationEntryMeta.INDEX, "test-1.0.0", MigrationEntry.class).getRawSha256Checksum(), is("raw"));
+        assertThat(getFromIndex(MigrationEntryMeta.INDEX, "test-head", MigrationHead.class).getRawChainHash(), notNullValue());
+
+        // Parsing the changeset would fail, the unchanged raw checksum has to be enough
+        defaultMigrationClient.applyMigrationSet(new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                () -> {
+                                    throw new IllegalStateException("Changeset parsed");
+                                },
+                                new MigrationMeta(
+                                        () -> {
+                                            throw new IllegalStateException("Changeset parsed");
+                                        },
+                                        "1.0.0",
+                                        "singularity",
+                                        Optional.of("raw")
+                                ),
+                                () -> {
+                                    throw new IllegalStateException("Changeset parsed");
+                                }
+                        )
+                )
+        ));
+    }
+
+    @Test
+    public void testHeadWrittenAfterMigration() {
+        createIndex("test_index", loadResource("create_index.json"));
+
+        final DefaultMigrationClient defaultMigrationClient = createClient(false, false);
+        defaultMigrationClient.applyMigrationSet(createIndexDocumentMigrationSet());
+
+        final MigrationHead head = getFromIndex(MigrationEntryMeta.INDEX, "test-head", MigrationHead.class);
+        assertThat(head.getIdentifier(), is(IDENTIFIER));
+        assertThat(head.getState(), is(State.SUCCESS));
+        assertThat(head.getLatestVersion(), is("1.0.0"));
+        assertThat(head.getVersionCount(), is(1));
+        assertThat(head.getChainHash(), not(isEmptyString()));
+    }
+
+    @Test
+    public void testMissingHeadRepaired() {
+        final DefaultMigrationClient defaultMigrationClient = createClient(false, false);
+        defaultMigrationClient.applyMigrationSet(new MigrationSet(Collections.emptyList()));
+
+        // History written before the head existed
+        deleteDocument(MigrationEntryMeta.INDEX, "test-head");
+        indexDocument(MigrationEntryMeta.INDEX, "test-1.0.0", loadResource("successful_elasticsearchmigration_version_entry.json"));
+
+        final MigrationSet migrationSet = new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(new CreateIndexMigration("test_index", loadResource("create_index.json"))),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity"
+                                )
+                        ),
+                        new MigrationSetEntry(
+                                ImmutableList.of(new CreateIndexMigration("test_index_2", loadResource("create_index.json"))),
+                                new MigrationMeta(
+                                        "20d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.2.0",
+                                        "duality"
+                                )
+                        )
+                )
+        );
+
+        defaultMigrationClient.applyMigrationSet(migrationSet);
+
+        assertThat(checkIndexExists("test_index"), is(false));
+        assertThat(checkIndexExists("test_index_2"), is(true));
+        final MigrationHead head = getFromIndex(MigrationEntryMeta.INDEX, "test-head", MigrationHead.class);
+        assertThat(head.getState(), is(State.SUCCESS));
+        assertThat(head.getLatestVersion(), is("1.2.0"));
+        assertThat(head.getVersionCount(), is(2));
+    }
+
+    @Test
+    public void testMatchingHeadSkipsHistorySearch() {
+        createIndex("test_index", loadResource("create_index.json"));
+
+        final DefaultMigrationClient defaultMigrationClient = createClient(false, false);
+        defaultMigrationClient.applyMigrationSet(createIndexDocumentMigrationSet());
+
+        // Only a search of the history would notice the version is gone and apply it again
+        deleteDocument(MigrationEntryMeta.INDEX, "test-1.0.0");
+        deleteDocument("test_index", "1");
+
+        defaultMigrationClient.applyMigrationSet(createIndexDocumentMigrationSet());
+
+        assertThat(checkDocumentExists("test_index", "1"), is(false));
+        assertThat(checkDocumentExists(MigrationEntryMeta.INDEX, "test-1.0.0"), is(false));
+    }
+
+    @Test
+    public void testMismatchingHeadFallsBackToHistorySearch() {
+        createIndex("test_index", loadResource("create_index.json"));
+
+        final DefaultMigrationClient defaultMigrationClient = createClient(false, false);
+        defaultMigrationClient.applyMigrationSet(createIndexDocumentMigrationSet());
+
+        deleteDocument(MigrationEntryMeta.INDEX, "test-1.0.0");
+        deleteDocument("test_index", "1");
+        indexDocument(MigrationEntryMeta.INDEX, "test-head", loadResource("mismatching_head_entry.json"));
+
+        defaultMigrationClient.applyMigrationSet(createIndexDocumentMigrationSet());
+
+        assertThat(checkDocumentExists("test_index", "1"), is(true));
+        assertMigrationEntry();
+        final MigrationHead head = getFromIndex(MigrationEntryMeta.INDEX, "test-head", MigrationHead.class);
+        assertThat(head.getVersionCount(), is(1));
+        assertThat(head.getChainHash(), not("mismatch"));
+    }
+
+    @Test
+    public void testHistoryReadWithHeadConsistentWithLocalVersions() {
+        createIndex("test_index", loadResource("create_index.json"));
+
+        final DefaultMigrationClient defaultMigrationClient = createClient(false, false);
+        defaultMigrationClient.applyMigrationSet(createIndexDocumentMigrationSet());
+
+        final MigrationSet migrationSet = new MigrationSet(
+                ImmutableList.<MigrationSetEntry>builder()
+                        .addAll(createIndexDocumentMigrationSet().getMigrations())
+                        .add(new MigrationSetEntry(
+                                ImmutableList.of(new CreateIndexMigration("test_index_2", loadResource("create_index.json"))),
+                                new MigrationMeta(
+                                        "20d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.2.0",
+                                        "duality"
+                                )
+                        ))
+                        .build()
+        );
+
+        defaultMigrationClient.applyMigrationSet(migrationSet);
+
+        assertThat(checkIndexExists("test_index_2"), is(true));
+        assertMigrationEntry();
+        assertThat(getFromIndex(MigrationEntryMeta.INDEX, "test-1.2.0", MigrationEntry.class).getState(), is(State.SUCCESS));
+        assertThat(getFromIndex(MigrationEntryMeta.INDEX, "test-head", MigrationHead.class).getVersionCount(), is(2));
+    }
+
+    @Test
+    public void testHistorySearchedWhenHeadDisagreesWithLocalVersions() {
+        createIndex("test_index", loadResource("create_index.json"));
+
+        // Version 1.1.0 fails as its index exists already
+        final MigrationSet failingMigrationSet = new MigrationSet(
+                ImmutableList.<MigrationSetEntry>builder()
+                        .addAll(createIndexDocumentMigrationSet().getMigrations())
+                        .add(new MigrationSetEntry(
+                                ImmutableList.of(new CreateIndexMigration("test_index", loadResource("create_index.json"))),
+                                new MigrationMeta(
+                                        "30d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.1.0",
+                                        "trinity"
+                                )
+                        ))
+                        .build()
+        );
+        final DefaultMigrationClient defaultMigrationClient = createClient(false, false);
+        assertThrows(MigrationFailedException.class, () -> defaultMigrationClient.applyMigrationSet(failingMigrationSet));
+        assertThat(getFromIndex(MigrationEntryMeta.INDEX, "test-head", MigrationHead.class).getState(), is(State.FAILURE));
+
+        // Reading only the local versions misses the failed 1.1.0, the head doesn't match that and the whole history is searched
+        final MigrationSet migrationSet = new MigrationSet(
+                ImmutableList.<MigrationSetEntry>builder()
+                        .addAll(createIndexDocumentMigrationSet().getMigrations())
+                        .add(new MigrationSetEntry(
+                                ImmutableList.of(new CreateIndexMigration("test_index_2", loadResource("create_index.json"))),
+                                new MigrationMeta(
+                                        "20d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.2.0",
+                                        "duality"
+                                )
+                        ))
+                        .build()
+        );
+
+        assertThrows(MigrationFailedException.class, () -> defaultMigrationClient.applyMigrationSet(migrationSet));
+        assertThat(checkIndexExists("test_index_2"), is(false));
+    }
+
+    private MigrationSet createIndexDocumentMigrationSet() {
+        return new MigrationSet(
+                ImmutableList.of(
+                        new MigrationSetEntry(
+                                ImmutableList.of(new IndexDocumentMigration("test_index", Optional.of("1"), Optional.of(OpType.INDEX), loadResource("index_document.json"))),
+                                new MigrationMeta(
+                                        "10d798ee9a8265432b6b9c621adeec1eb5ae9a79a6d5c3a684e06e6021163007",
+                                        "1.0.0",
+                                        "singularity"
+                                )
+                        )
+                )
+        );
+    }
+
     private void assertMigrationEntry() {
         final MigrationEntry migrationEntry = getFromIndex(MigrationEntryMeta.INDEX, "test-1.0.0", MigrationEntry.class);
         assertThat(migrationEntry.getName(), is("singularity"));
@@ -752,6 +1144,14 @@ public class DefaultMigrationClientIntegrationTest extends AbstractESTest {
         return createClient(ignorePreviousFailures, allowOlderVersions, 15000, 5);
     }
 
+    private DefaultMigrationClient createClient(final WireFormat wireFormat) {
+        final RestClientBuilder builder = RestClient.builder(new HttpHost("localhost", 9200, "http"));
+        return new DefaultMigrationClient(
+                new RestHighLevelClient(builder),
+                ElasticsearchMigrationConfig.builder(IDENTIFIER, ElasticsearchConfig.builder(Collections.emptySet()).wireFormat(wireFormat).build()).build()
+        );
+    }
+
     private DefaultMigrationClient createClient(boolean ignorePreviousFailures, boolean allowOlderVersions, int backoffPeriodMillis, int retryCount) {
         final RestClientBuilder builder = RestClient.builder(new HttpHost("localhost", 9200, "http"));
         return new DefaultMigrationClient("test", new RestHighLevelClient(builder), ignorePreviousFailures, allowOlderVersions, backoffPeriodMillis, retryCount);
@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.quandoo.lib.elasticsearchmigration.model.migration.ReindexMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.SlicedMigration;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public class DefaultMigrationClientTest {
+
+    @Test
+    public void sliceByShardsOfSourceIndices() throws Exception {
+        try (StubElasticsearch elasticsearch = new StubElasticsearch()
+                .respond(200, "{\"index_1\":{\"settings\":{\"index\":{\"number_of_shards\":\"3\"}}},\"index_2\":{\"settings\":{\"index\":{\"number_of_shards\":\"2\"}}}}")
+                .respond(200, "{\"_nodes\":{\"total\":8}}");
+             DefaultMigrationClient migrationClient = createClient(elasticsearch)) {
+
+            final SlicedMigration migration = migrationClient.slice(new ReindexMigration("{\"source\":{\"index\":[\"index_1\",\"index_2\"]},\"dest\":{\"index\":\"index_3\"}}"));
+
+            assertThat(migration.getSlices(), is(Optional.of(5)));
+            assertThat(elasticsearch.getRequests().get(0).getPath(), is("/index_1,index_2/_settings/index.number_of_shards"));
+            assertThat(elasticsearch.getRequests().get(1).getPath(), is("/_nodes/data:true"));
+        }
+    }
+
+    @Test
+    public void sliceCappedByDataNodes() throws Exception {
+        try (StubElasticsearch elasticsearch = new StubElasticsearch()
+                .respond(200, "{\"index_1\":{\"settings\":{\"index\":{\"number_of_shards\":\"6\"}}}}")
+                .respond(200, "{\"_nodes\":{\"total\":2}}");
+             DefaultMigrationClient migrationClient = createClient(elasticsearch)) {
+
+            final SlicedMigration migration = migrationClient.slice(new ReindexMigration("{\"source\":{\"index\":\"index_1\"},\"dest\":{\"index\":\"index_2\"}}"));
+
+            assertThat(migration.getSlices(), is(Optional.of(2)));
+        }
+    }
+
+    @Test
+    public void sliceKeepsExplicitSlices() throws Exception {
+        try (StubElasticsearch elasticsearch = new StubElasticsearch();
+             DefaultMigrationClient migrationClient = createClient(elasticsearch)) {
+
+            final SlicedMigration migration = migrationClient.slice(new ReindexMigration("{\"source\":{\"index\":\"index_1\"},\"dest\":{\"index\":\"index_2\"}}", Optional.of(1)));
+
+            assertThat(migration.getSlices(), is(Optional.of(1)));
+            assertThat(elasticsearch.getRequests(), is(empty()));
+        }
+    }
+
+    @Test
+    public void sliceIgnoresMissingSourceIndex() throws Exception {
+        try (StubElasticsearch elasticsearch = new StubElasticsearch()
+                .respond(200, "{}")
+                .respond(200, "{\"_nodes\":{\"total\":2}}");
+             DefaultMigrationClient migrationClient = createClient(elasticsearch)) {
+
+            final SlicedMigration migration = migrationClient.slice(new ReindexMigration("{\"source\":{\"index\":\"missing_index\"},\"dest\":{\"index\":\"index_2\"}}"));
+
+            assertThat(migration.getSlices(), is(Optional.of(1)));
+            assertThat(elasticsearch.getRequests().get(0).getPath(), is("/missing_index/_settings/index.number_of_shards"));
+            assertThat(elasticsearch.getRequests().get(0).getQuery(), is("ignore_unavailable=true"));
+        }
+    }
+
+    @Test
+    public void sliceSkipsRemoteSource() throws Exception {
+        try (StubElasticsearch elasticsearch = new StubElasticsearch();
+             DefaultMigrationClient migrationClient = createClient(elasticsearch)) {
+
+            final SlicedMigration migration = migrationClient.slice(new ReindexMigration("{\"source\":{\"remote\":{\"host\":\"http://otherhost:9200\"},\"index\":\"index_1\"},\"dest\":{\"index\":\"index_2\"}}"));
+
+            assertThat(migration.getSlices(), is(Optional.empty()));
+            assertThat(elasticsearch.getRequests(), is(empty()));
+        }
+    }
+
+    private DefaultMigrationClient createClient(final StubElasticsearch elasticsearch) {
+        return new DefaultMigrationClient("test", elasticsearch.createClient(), false, false, 0, 0);
+    }
+}
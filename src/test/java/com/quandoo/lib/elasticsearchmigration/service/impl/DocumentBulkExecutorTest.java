@@ -0,0 +1,280 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.base.Charsets;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.es.WireFormat;
+import com.quandoo.lib.elasticsearchmigration.model.migration.DeleteDocumentMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.DocumentMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.IndexDocumentMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.OpType;
+import com.quandoo.lib.elasticsearchmigration.model.migration.UpdateDocumentMigration;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public class DocumentBulkExecutorTest {
+
+    private static final String CREATED = "{\"index\":{\"_index\":\"test_index\",\"_id\":\"%s\",\"status\":201}}";
+    private static final String REJECTED = "{\"index\":{\"_index\":\"test_index\",\"_id\":\"%s\",\"status\":429," +
+            "\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"rejected execution of coordinating operation\"}}}";
+    private static final String FAILED = "{\"index\":{\"_index\":\"test_index\",\"_id\":\"%s\",\"status\":400," +
+            "\"error\":{\"type\":\"mapper_parsing_exception\",\"reason\":\"failed to parse field [user]\"}}}";
+
+    private final RestHighLevelClient restHighLevelClient = new RestHighLevelClient(RestClient.builder(new HttpHost("localhost", 9200, "http")));
+
+    @Test
+    public void toBulkItem() {
+        final DocumentBulkExecutor documentBulkExecutor = createExecutor(1000, Long.MAX_VALUE);
+
+        assertThat(payload(documentBulkExecutor, new IndexDocumentMigration("test_index", Optional.of("1"), Optional.empty(), "{\n  \"user\": \"kimchy\"\n}")),
+                is("{\"create\":{\"_index\":\"test_index\",\"_id\":\"1\"}}\n{   \"user\": \"kimchy\" }\n"));
+        assertThat(payload(documentBulkExecutor, new IndexDocumentMigration("test_index", Optional.empty(), Optional.of(OpType.INDEX), "{}")),
+                is("{\"index\":{\"_index\":\"test_index\"}}\n{}\n"));
+        assertThat(payload(documentBulkExecutor, new UpdateDocumentMigration("test_index", "1", "{\"doc\":{}}")),
+                is("{\"update\":{\"_index\":\"test_index\",\"_id\":\"1\"}}\n{\"doc\":{}}\n"));
+        assertThat(payload(documentBulkExecutor, new DeleteDocumentMigration("test_index", "1")),
+                is("{\"delete\":{\"_index\":\"test_index\",\"_id\":\"1\"}}\n"));
+    }
+
+    @Test
+    public void toBulkItemKeepsMultiByteCharacters() {
+        final DocumentBulkExecutor documentBulkExecutor = createExecutor(1000, Long.MAX_VALUE);
+
+        assertThat(payload(documentBulkExecutor, new IndexDocumentMigration("test_index", Optional.of("1"), Optional.empty(), "{\r\n  \"city\": \"Düsseldorf 東京\"\n}")),
+                is("{\"create\":{\"_index\":\"test_index\",\"_id\":\"1\"}}\n{    \"city\": \"Düsseldorf 東京\" }\n"));
+    }
+
+    @Test
+    public void toBulkItemAsSmile() throws Exception {
+        final ObjectMapper objectMapper = new ObjectMapper();
+        final DocumentBulkExecutor documentBulkExecutor = createExecutor(WireFormat.SMILE);
+
+        final byte[] payload = documentBulkExecutor.toBulkItem(new IndexDocumentMigration("test_index", Optional.of("1"), Optional.empty(), "{\"user\": \"kimchy\"}")).getPayload();
+        final List<JsonNode> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < payload.length; i++) {
+            if (payload[i] == (byte) 0xFF) {
+                lines.add(new ObjectMapper(new SmileFactory()).readTree(Arrays.copyOfRange(payload, start, i)));
+                start = i + 1;
+            }
+        }
+
+        assertThat(start, is(payload.length));
+        assertThat(lines, contains(objectMapper.readTree("{\"create\":{\"_index\":\"test_index\",\"_id\":\"1\"}}"), objectMapper.readTree("{\"user\":\"kimchy\"}")));
+    }
+
+    @Test
+    public void toBulkItemAsCborFallsBackToJson() {
+        assertThat(payload(createExecutor(WireFormat.CBOR), new IndexDocumentMigration("test_index", Optional.of("1"), Optional.empty(), "{}")),
+                is("{\"create\":{\"_index\":\"test_index\",\"_id\":\"1\"}}\n{}\n"));
+    }
+
+    @Test
+    public void partitionByActions() {
+        final DocumentBulkExecutor documentBulkExecutor = createExecutor(2, Long.MAX_VALUE);
+
+        final List<List<DocumentBulkExecutor.BulkItem>> batches = documentBulkExecutor.partition(ImmutableList.of(
+                new DeleteDocumentMigration("test_index", "1"),
+                new DeleteDocumentMigration("test_index", "2"),
+                new DeleteDocumentMigration("test_index", "3"),
+                new DeleteDocumentMigration("test_index", "4"),
+                new DeleteDocumentMigration("test_index", "5")
+        ));
+
+        assertThat(batches, hasSize(3));
+        assertThat(batches.get(0), hasSize(2));
+        assertThat(batches.get(1), hasSize(2));
+        assertThat(batches.get(2), hasSize(1));
+    }
+
+    @Test
+    public void partitionBySize() {
+        final DeleteDocumentMigration migration = new DeleteDocumentMigration("test_index", "1");
+        final int itemSize = createExecutor(1000, Long.MAX_VALUE).toBulkItem(migration).getPayload().length;
+        final DocumentBulkExecutor documentBulkExecutor = createExecutor(1000, itemSize * 2 + 1);
+
+        final List<List<DocumentBulkExecutor.BulkItem>> batches = documentBulkExecutor.partition(ImmutableList.of(migration, migration, migration, migration, migration));
+
+        assertThat(batches, hasSize(3));
+        assertThat(batches.get(0), hasSize(2));
+        assertThat(batches.get(1), hasSize(2));
+        assertThat(batches.get(2), hasSize(1));
+    }
+
+    @Test
+    public void partitionOversizedItem() {
+        final DocumentBulkExecutor documentBulkExecutor = createExecutor(1000, 1);
+
+        final List<List<DocumentBulkExecutor.BulkItem>> batches = documentBulkExecutor.partition(ImmutableList.of(
+                new DeleteDocumentMigration("test_index", "1"),
+                new DeleteDocumentMigration("test_index", "2")
+        ));
+
+        assertThat(batches, hasSize(2));
+    }
+
+    @Test
+    public void supports() {
+        assertThat(ImmutableList.of(
+                DocumentBulkExecutor.supports(new IndexDocumentMigration("test_index", Optional.of("1"), Optional.empty(), "{}")),
+                DocumentBulkExecutor.supports(new IndexDocumentMigration("test_index", Optional.of("1"), Optional.of(OpType.INDEX), "{}")),
+                DocumentBulkExecutor.supports(new IndexDocumentMigration("test_index", Optional.of("1"), Optional.of(OpType.UPDATE), "{}")),
+                DocumentBulkExecutor.supports(new IndexDocumentMigration("test_index", Optional.of("1"), Optional.of(OpType.DELETE), "{}")),
+                DocumentBulkExecutor.supports(new UpdateDocumentMigration("test_index", "1", "{}")),
+                DocumentBulkExecutor.supports(new DeleteDocumentMigration("test_index", "1"))
+        ), contains(true, true, false, false, true, true));
+    }
+
+    @Test
+    public void executeRetriesOnlyRejectedItems() throws Exception {
+        try (StubElasticsearch elasticsearch = new StubElasticsearch()
+                .respond(200, bulkResponse(true, String.format(CREATED, "1"), String.format(REJECTED, "2"), String.format(CREATED, "3")))
+                .respond(200, bulkResponse(false, String.format(CREATED, "2")))) {
+            final StepStatistics statistics = new StepStatistics();
+
+            createExecutor(elasticsearch, 3).execute(documents("1", "2", "3"), "false", statistics);
+
+            final List<StubElasticsearch.StubRequest> requests = elasticsearch.getRequests();
+            assertThat(requests, hasSize(2));
+            assertThat(requests.get(0).getBody(), is(bulkBody("1", "2", "3")));
+            assertThat(requests.get(1).getBody(), is(bulkBody("2")));
+            assertThat(statistics.toStep(1, 1, "INDEX_DOCUMENT").getRetries(), is(1));
+        }
+    }
+
+    @Test
+    public void executeRetriesRejectedRequest() throws Exception {
+        try (StubElasticsearch elasticsearch = new StubElasticsearch()
+                .respond(429, "{\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"rejected\"},\"status\":429}")
+                .respond(200, bulkResponse(false, String.format(CREATED, "1"), String.format(CREATED, "2")))) {
+
+            createExecutor(elasticsearch, 3).execute(documents("1", "2"), "false");
+
+            final List<StubElasticsearch.StubRequest> requests = elasticsearch.getRequests();
+            assertThat(requests, hasSize(2));
+            assertThat(requests.get(0).getBody(), is(bulkBody("1", "2")));
+            assertThat(requests.get(1).getBody(), is(bulkBody("1", "2")));
+        }
+    }
+
+    @Test
+    public void executeFailsOnItemError() throws Exception {
+        try (StubElasticsearch elasticsearch = new StubElasticsearch()
+                .respond(200, bulkResponse(true, String.format(CREATED, "1"), String.format(FAILED, "2"), String.format(REJECTED, "3")))) {
+
+            final MigrationFailedException exception = assertThrows(MigrationFailedException.class,
+                    () -> createExecutor(elasticsearch, 3).execute(documents("1", "2", "3"), "false"));
+
+            assertThat(exception.getMessage(), is("Bulk request failed for 1 item(s): test_index/2 (INDEX): mapper_parsing_exception: failed to parse field [user]"));
+            assertThat(elasticsearch.getRequests(), hasSize(1));
+        }
+    }
+
+    @Test
+    public void executeGivesUpAfterRetryCount() throws Exception {
+        try (StubElasticsearch elasticsearch = new StubElasticsearch()
+                .respondByDefault(200, bulkResponse(true, String.format(REJECTED, "1")))) {
+
+            final Stopwatch stopwatch = Stopwatch.createStarted();
+            final MigrationFailedException exception = assertThrows(MigrationFailedException.class,
+                    () -> createExecutor(elasticsearch, 2).execute(documents("1"), "false"));
+
+            assertThat(exception.getMessage(), containsString("rejected for 1 item(s) after 2 retries: test_index/1 (INDEX)"));
+            assertThat(elasticsearch.getRequests(), hasSize(3));
+            // Backs off 100ms and 200ms
+            assertThat(stopwatch.elapsed(TimeUnit.MILLISECONDS), greaterThanOrEqualTo(300L));
+        }
+    }
+
+    @Test
+    public void executeParsesSmileResponse() throws Exception {
+        final ObjectMapper objectMapper = new ObjectMapper();
+        final byte[] response = new ObjectMapper(new SmileFactory()).writeValueAsBytes(objectMapper.readTree(bulkResponse(true, String.format(FAILED, "1"))));
+        try (StubElasticsearch elasticsearch = new StubElasticsearch().respond(200, WireFormatCodec.SMILE_CONTENT_TYPE, response)) {
+            final DocumentBulkExecutor documentBulkExecutor = new DocumentBulkExecutor(
+                    elasticsearch.createClient(), objectMapper, 1000, Long.MAX_VALUE, 3, new WireFormatCodec(WireFormat.SMILE, objectMapper.getFactory())
+            );
+
+            final MigrationFailedException exception = assertThrows(MigrationFailedException.class, () -> documentBulkExecutor.execute(documents("1"), "false"));
+
+            assertThat(exception.getMessage(), is("Bulk request failed for 1 item(s): test_index/1 (INDEX): mapper_parsing_exception: failed to parse field [user]"));
+            assertThat(elasticsearch.getRequests().get(0).getHeader("Accept"), is("application/json"));
+        }
+    }
+
+    private List<DocumentMigration> documents(final String... ids) {
+        final List<DocumentMigration> documents = new ArrayList<>();
+        for (String id : ids) {
+            documents.add(new IndexDocumentMigration("test_index", Optional.of(id), Optional.of(OpType.INDEX), "{\"user\":\"kimchy\"}"));
+        }
+        return documents;
+    }
+
+    private String bulkBody(final String... ids) {
+        final StringBuilder body = new StringBuilder();
+        for (String id : ids) {
+            body.append("{\"index\":{\"_index\":\"test_index\",\"_id\":\"").append(id).append("\"}}\n{\"user\":\"kimchy\"}\n");
+        }
+        return body.toString();
+    }
+
+    private String bulkResponse(final boolean errors, final String... items) {
+        return "{\"took\":5,\"errors\":" + errors + ",\"items\":[" + String.join(",", items) + "]}";
+    }
+
+    private String payload(final DocumentBulkExecutor documentBulkExecutor, final DocumentMigration migration) {
+        return new String(documentBulkExecutor.toBulkItem(migration).getPayload(), Charsets.UTF_8);
+    }
+
+    private DocumentBulkExecutor createExecutor(final int maxActions, final long maxSizeInBytes) {
+        return new DocumentBulkExecutor(restHighLevelClient, new ObjectMapper(), maxActions, maxSizeInBytes, 3);
+    }
+
+    private DocumentBulkExecutor createExecutor(final StubElasticsearch elasticsearch, final int retryCount) {
+        return new DocumentBulkExecutor(elasticsearch.createClient(), new ObjectMapper(), 1000, Long.MAX_VALUE, retryCount);
+    }
+
+    private DocumentBulkExecutor createExecutor(final WireFormat wireFormat) {
+        final ObjectMapper objectMapper = new ObjectMapper();
+        return new DocumentBulkExecutor(restHighLevelClient, objectMapper, 1000, Long.MAX_VALUE, 3, new WireFormatCodec(wireFormat, objectMapper.getFactory()));
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public class LeaseLockTest {
+
+    private static final String INDEX_RESPONSE = "{\"_index\":\"elasticsearch_migration_lock\",\"_type\":\"_doc\",\"_id\":\"test-global\",\"_version\":1," +
+            "\"result\":\"created\",\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},\"_seq_no\":0,\"_primary_term\":1}";
+    private static final Duration LEASE_DURATION = Duration.ofMillis(600);
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new Jdk8Module()).registerModule(new JavaTimeModule());
+
+    @Test
+    public void heldWhileRenewed() throws Exception {
+        try (StubElasticsearch elasticsearch = new StubElasticsearch().respondByDefault(200, INDEX_RESPONSE)) {
+            final LeaseLock leaseLock = new LeaseLock(elasticsearch.createClient(), objectMapper, "test-global", LEASE_DURATION);
+
+            assertThat(leaseLock.acquire(), is(true));
+            Thread.sleep(LEASE_DURATION.toMillis() * 2);
+
+            leaseLock.checkHeld();
+            assertThat(elasticsearch.getRequests().size() > 2, is(true));
+            elasticsearch.respondByDefault(200, INDEX_RESPONSE.replace("created", "deleted"));
+            leaseLock.release();
+        }
+    }
+
+    @Test
+    public void lostWhenNotRenewedForAWholeLease() throws Exception {
+        final StubElasticsearch elasticsearch = new StubElasticsearch().respondByDefault(200, INDEX_RESPONSE);
+        final LeaseLock leaseLock = new LeaseLock(elasticsearch.createClient(), objectMapper, "test-global", LEASE_DURATION);
+        assertThat(leaseLock.acquire(), is(true));
+
+        // Renewals fail with IO errors from now on
+        elasticsearch.close();
+        Thread.sleep(LEASE_DURATION.toMillis() + 100);
+
+        final MigrationFailedException exception = assertThrows(MigrationFailedException.class, leaseLock::checkHeld);
+        assertThat(exception.getMessage(), containsString("was lost"));
+    }
+
+    @Test
+    public void lostWhenRenewalsAreRejected() throws Exception {
+        try (StubElasticsearch elasticsearch = new StubElasticsearch().respond(201, INDEX_RESPONSE).respondByDefault(503, "{}")) {
+            final LeaseLock leaseLock = new LeaseLock(elasticsearch.createClient(), objectMapper, "test-global", LEASE_DURATION);
+            assertThat(leaseLock.acquire(), is(true));
+
+            Thread.sleep(LEASE_DURATION.toMillis() + 100);
+
+            assertThrows(MigrationFailedException.class, leaseLock::checkHeld);
+        }
+    }
+
+    @Test
+    public void closeStopsHeartbeat() throws Exception {
+        try (StubElasticsearch elasticsearch = new StubElasticsearch().respondByDefault(200, INDEX_RESPONSE)) {
+            final LeaseLock leaseLock = new LeaseLock(elasticsearch.createClient(), objectMapper, "test-global", LEASE_DURATION);
+            assertThat(leaseLock.acquire(), is(true));
+
+            leaseLock.close();
+            final int requests = elasticsearch.getRequests().size();
+            Thread.sleep(LEASE_DURATION.toMillis());
+
+            assertThat(elasticsearch.getRequests().size(), is(requests));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.quandoo.lib.elasticsearchmigration.service.MigrationMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public class MicrometerMigrationMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MicrometerMigrationMetrics migrationMetrics = new MicrometerMigrationMetrics(meterRegistry);
+
+    @Test
+    public void recordPhase() {
+        migrationMetrics.recordPhase(MigrationMetrics.Phase.LOCK_WAIT, Duration.ofMillis(150));
+        migrationMetrics.recordPhase(MigrationMetrics.Phase.LOCK_WAIT, Duration.ofMillis(50));
+
+        assertThat(meterRegistry.get("elasticsearch.migration.phase").tag("phase", "LOCK_WAIT").timer().count(), is(2L));
+        assertThat(meterRegistry.get("elasticsearch.migration.phase").tag("phase", "LOCK_WAIT").timer().totalTime(TimeUnit.MILLISECONDS), is(200.0));
+    }
+
+    @Test
+    public void recordStep() {
+        migrationMetrics.recordStep("REINDEX", Duration.ofSeconds(2), 100, 300, 1);
+        migrationMetrics.recordStep("REINDEX", Duration.ofSeconds(1), 50, 200, 2);
+
+        assertThat(meterRegistry.get("elasticsearch.migration.step").tag("type", "REINDEX").timer().count(), is(2L));
+        assertThat(meterRegistry.get("elasticsearch.migration.bytes.sent").tag("type", "REINDEX").counter().count(), is(150.0));
+        assertThat(meterRegistry.get("elasticsearch.migration.bytes.received").tag("type", "REINDEX").counter().count(), is(500.0));
+        assertThat(meterRegistry.get("elasticsearch.migration.retries").tag("type", "REINDEX").counter().count(), is(3.0));
+    }
+
+    @Test
+    public void incrementLockConflicts() {
+        migrationMetrics.incrementLockConflicts();
+        migrationMetrics.incrementLockConflicts();
+
+        assertThat(meterRegistry.get("elasticsearch.migration.lock.conflicts").counter().count(), is(2.0));
+    }
+}
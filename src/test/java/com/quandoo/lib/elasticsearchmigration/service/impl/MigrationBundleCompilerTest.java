@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.quandoo.lib.elasticsearchmigration.model.bundle.MigrationBundle;
+import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSet;
+import com.quandoo.lib.elasticsearchmigration.model.migration.MigrationSetEntry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public class MigrationBundleCompilerTest {
+
+    private static final String BASE_PACKAGE = "com.quandoo.lib.elasticsearchmigration.service.impl";
+
+    @Test
+    public void bundleMatchesYamlChangesets() throws Exception {
+        final MigrationBundleCompiler migrationBundleCompiler = new MigrationBundleCompiler();
+        final MigrationBundle migrationBundle = migrationBundleCompiler.compile(BASE_PACKAGE);
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        migrationBundleCompiler.write(migrationBundle, outputStream);
+
+        final MigrationSet fromBundle = new BundleMigrationSetProvider().read(new ByteArrayInputStream(outputStream.toByteArray()));
+        final MigrationSet fromYaml = new YamlDirectoryMigrationSetProvider().getMigrationSet(BASE_PACKAGE);
+
+        assertThat(fromBundle.getMigrations(), hasSize(3));
+        assertThat(fromBundle.getMigrations().stream().map(e -> e.getMigrationMeta().getSha256Checksum()).collect(Collectors.toList()), contains(
+                "de6e1367a5bad35d63931ea9fc9ef2e4f53b0a6e2d3e4b5ecbea5e918d3e3917",
+                "c02446548fa38297c926ddaf755774fcb595b1cb765f4c21f96b2131d28831a0",
+                "b87fd41e28149029486b0a5c78d92bdc749469e0531dd6be954196ae664841e4"
+        ));
+        for (int i = 0; i < fromYaml.getMigrations().size(); i++) {
+            assertSameEntry(fromBundle.getMigrations().get(i), fromYaml.getMigrations().get(i));
+        }
+        assertThat(fromBundle.getBaseline().isPresent(), is(true));
+        assertSameEntry(fromBundle.getBaseline().get(), fromYaml.getBaseline().get());
+    }
+
+    private void assertSameEntry(final MigrationSetEntry actual, final MigrationSetEntry expected) {
+        assertThat(actual.getMigrationMeta().getVersion(), is(expected.getMigrationMeta().getVersion()));
+        assertThat(actual.getMigrationMeta().getName(), is(expected.getMigrationMeta().getName()));
+        assertThat(actual.getMigrationMeta().getSha256Checksum(), is(expected.getMigrationMeta().getSha256Checksum()));
+        assertThat(actual.getMigration(), equalTo(expected.getMigration()));
+        assertThat(actual.getRefreshPolicy(), equalTo(expected.getRefreshPolicy()));
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.migration.AliasesMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.CreateIndexMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.CreateIngestPipelineMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.CreateOrUpdateIndexTemplateMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.DeleteIndexMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.Migration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.UpdateMappingMigration;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public class MigrationGraphExecutorTest {
+
+    @Test
+    public void plan() {
+        final List<Set<Integer>> dependencies = MigrationGraphExecutor.plan(ImmutableList.of(
+                new CreateOrUpdateIndexTemplateMigration("template_1", "{}"),
+                new CreateIngestPipelineMigration("pipeline_1", "{}"),
+                new CreateIndexMigration("index_1", "{}"),
+                new CreateIndexMigration("index_2", "{}"),
+                new UpdateMappingMigration(ImmutableSet.of("index_1"), "{}"),
+                new AliasesMigration("{}"),
+                new DeleteIndexMigration("index_2")
+        ), Collections.emptySet());
+
+        assertThat(dependencies.get(0), empty());
+        assertThat(dependencies.get(1), empty());
+        assertThat(dependencies.get(2), containsInAnyOrder(0, 1));
+        assertThat(dependencies.get(3), containsInAnyOrder(0, 1));
+        assertThat(dependencies.get(4), containsInAnyOrder(0, 1, 2));
+        assertThat(dependencies.get(5), containsInAnyOrder(0, 1, 2, 3, 4));
+        assertThat(dependencies.get(6), containsInAnyOrder(0, 1, 3, 5));
+    }
+
+    @Test
+    public void planCreateIndexWithAliases() {
+        final List<Set<Integer>> dependencies = MigrationGraphExecutor.plan(ImmutableList.of(
+                new CreateIndexMigration("index_1", "{\"aliases\": {\"alias_1\": {}}}"),
+                new CreateIndexMigration("index_2", "{}")
+        ), Collections.emptySet());
+
+        assertThat(dependencies.get(1), contains(0));
+    }
+
+    @Test
+    public void planTemplateAfterIndexChanges() {
+        final List<Set<Integer>> dependencies = MigrationGraphExecutor.plan(ImmutableList.of(
+                new CreateIndexMigration("index_1", "{}"),
+                new CreateIngestPipelineMigration("pipeline_1", "{}"),
+                new CreateOrUpdateIndexTemplateMigration("template_1", "{}"),
+                new CreateOrUpdateIndexTemplateMigration("template_2", "{}")
+        ), Collections.emptySet());
+
+        assertThat(dependencies.get(1), contains(0));
+        assertThat(dependencies.get(2), contains(0));
+        assertThat(dependencies.get(3), contains(0));
+    }
+
+    @Test
+    public void planAliasesAndPatternsAsBarriers() {
+        final List<Set<Integer>> dependencies = MigrationGraphExecutor.plan(ImmutableList.of(
+                new UpdateMappingMigration(ImmutableSet.of("index_1"), "{}"),
+                new UpdateMappingMigration(ImmutableSet.of("existing_alias"), "{}"),
+                new UpdateMappingMigration(ImmutableSet.of("index_2"), "{}"),
+                new UpdateMappingMigration(ImmutableSet.of("index_*"), "{}"),
+                new UpdateMappingMigration(ImmutableSet.of("index_3"), "{}"),
+                new UpdateMappingMigration(ImmutableSet.of("template_alias"), "{}"),
+                new CreateOrUpdateIndexTemplateMigration("template_1", "{\"aliases\": {\"template_alias\": {}}}")
+        ), ImmutableSet.of("existing_alias"));
+
+        assertThat(dependencies.get(1), contains(0));
+        assertThat(dependencies.get(2), contains(1));
+        assertThat(dependencies.get(3), containsInAnyOrder(0, 1, 2));
+        assertThat(dependencies.get(4), containsInAnyOrder(1, 3));
+        assertThat(dependencies.get(5), containsInAnyOrder(0, 1, 2, 3, 4));
+    }
+
+    @Test
+    public void planAliasCreatedInRunAsBarrier() {
+        final List<Set<Integer>> dependencies = MigrationGraphExecutor.plan(ImmutableList.of(
+                new AliasesMigration("{\"actions\": [{\"add\": {\"index\": \"index_1\", \"alias\": \"alias_1\"}}, {\"add\": {\"index\": \"index_2\", \"aliases\": [\"alias_2\"]}}]}"),
+                new UpdateMappingMigration(ImmutableSet.of("index_1"), "{}"),
+                new UpdateMappingMigration(ImmutableSet.of("alias_1"), "{}"),
+                new UpdateMappingMigration(ImmutableSet.of("alias_2"), "{}")
+        ), Collections.emptySet());
+
+        assertThat(dependencies.get(1), contains(0));
+        assertThat(dependencies.get(2), containsInAnyOrder(0, 1));
+        assertThat(dependencies.get(3), containsInAnyOrder(0, 1, 2));
+    }
+
+    @Test
+    public void executeKeepsOrderOfDependentMigrations() {
+        final List<Migration> migrations = ImmutableList.of(
+                new CreateIndexMigration("index_1", "{}"),
+                new CreateIndexMigration("index_2", "{}"),
+                new UpdateMappingMigration(ImmutableSet.of("index_1"), "{}"),
+                new UpdateMappingMigration(ImmutableSet.of("index_2"), "{}")
+        );
+        final List<Migration> applied = Collections.synchronizedList(new LinkedList<>());
+
+        new MigrationGraphExecutor(4, Collections::emptySet).execute(migrations, applied::add);
+
+        assertThat(applied.size(), is(4));
+        assertThat(applied.indexOf(migrations.get(0)) < applied.indexOf(migrations.get(2)), is(true));
+        assertThat(applied.indexOf(migrations.get(1)) < applied.indexOf(migrations.get(3)), is(true));
+    }
+
+    @Test
+    public void executeReportsFirstFailure() {
+        final List<Migration> migrations = ImmutableList.of(
+                new CreateIndexMigration("index_1", "{}"),
+                new CreateIndexMigration("index_2", "{}"),
+                new UpdateMappingMigration(ImmutableSet.of("index_1"), "{}")
+        );
+
+        final MigrationFailedException exception = assertThrows(MigrationFailedException.class, () -> new MigrationGraphExecutor(4, Collections::emptySet).execute(migrations, e -> {
+            if (e instanceof CreateIndexMigration) {
+                throw new MigrationFailedException(e.getUrl());
+            }
+        }));
+
+        assertThat(exception.getMessage(), is("/index_1"));
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.quandoo.lib.elasticsearchmigration.model.es.MigrationEntry;
+import com.quandoo.lib.elasticsearchmigration.model.es.MigrationStepRecord;
+import com.quandoo.lib.elasticsearchmigration.model.es.WireFormat;
+import com.quandoo.lib.elasticsearchmigration.util.VersionComparator;
+import com.quandoo.lib.elasticsearchmigration.util.VersionSortKey;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public class MigrationHistoryReaderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .registerModule(new Jdk8Module())
+            .registerModule(new JavaTimeModule());
+    private final MigrationHistoryReader migrationHistoryReader = new MigrationHistoryReader(
+            new RestHighLevelClient(RestClient.builder(new HttpHost("localhost", 9200, "http"))),
+            objectMapper,
+            new WireFormatCodec(WireFormat.JSON, objectMapper.getFactory())
+    );
+
+    @Test
+    public void readPage() throws Exception {
+        for (WireFormat wireFormat : WireFormat.values()) {
+            readPage(wireFormat);
+        }
+    }
+
+    private void readPage(final WireFormat wireFormat) throws Exception {
+        final List<MigrationEntry> migrationEntries = new ArrayList<>();
+        final Optional<Object[]> searchAfter = migrationHistoryReader.readPage(parser(wireFormat,
+                "{\"hits\":{\"hits\":[" +
+                        "{\"_source\":{\"identifier\":\"test\",\"version\":\"1.0.0\",\"name\":\"a\",\"sha256Checksum\":\"x\",\"state\":\"SUCCESS\",\"created\":\"2018-06-12T19:23:37.941Z\",\"versionSortKey\":\"0000000001.0000000000.0000000000~\"},\"sort\":[\"0000000001.0000000000.0000000000~\",\"1.0.0\"]}," +
+                        "{\"sort\":[\"~\",\"1.1.0\"],\"_source\":{\"identifier\":\"test\",\"version\":\"1.1.0\",\"name\":\"b\",\"sha256Checksum\":\"y\",\"state\":\"FAILURE\",\"created\":\"2018-06-12T19:23:37.941Z\"}}" +
+                        "]}}"
+        ), migrationEntries);
+
+        assertThat(migrationEntries.stream().map(MigrationEntry::getVersion).collect(Collectors.toList()), contains("1.0.0", "1.1.0"));
+        assertThat(migrationEntries.get(1).getVersionSortKey() == null, is(true));
+        assertThat(searchAfter.isPresent(), is(false));
+    }
+
+    @Test
+    public void toStepRecords() throws Exception {
+        final List<MigrationStepRecord> stepRecords = migrationHistoryReader.toStepRecords(objectMapper.readTree(
+                "{\"hits\":{\"hits\":[" +
+                        "{\"_source\":{\"identifier\":\"a\",\"version\":\"1.0.0\",\"name\":\"first\"},\"inner_hits\":{\"steps\":{\"hits\":{\"hits\":[" +
+                        "{\"_source\":{\"step\":3,\"stepCount\":1,\"type\":\"CREATE_INDEX\",\"started\":\"2018-06-12T19:23:37.941Z\",\"finished\":\"2018-06-12T19:23:38.941Z\",\"durationInMillis\":5000,\"requestBytes\":10,\"responseBytes\":20,\"retries\":0}},{\"_source\":{\"step\":1,\"stepCount\":1,\"type\":\"CREATE_INDEX\",\"started\":\"2018-06-12T19:23:37.941Z\",\"finished\":\"2018-06-12T19:23:38.941Z\",\"durationInMillis\":100,\"requestBytes\":10,\"responseBytes\":20,\"retries\":0}}" +
+                        "]}}}}," +
+                        "{\"_source\":{\"identifier\":\"b\",\"version\":\"2.0.0\",\"name\":\"second\"},\"inner_hits\":{\"steps\":{\"hits\":{\"hits\":[" +
+                        "{\"_source\":{\"step\":0,\"stepCount\":1,\"type\":\"CREATE_INDEX\",\"started\":\"2018-06-12T19:23:37.941Z\",\"finished\":\"2018-06-12T19:23:38.941Z\",\"durationInMillis\":1000,\"requestBytes\":10,\"responseBytes\":20,\"retries\":0}}" +
+                        "]}}}}" +
+                        "]}}"
+        ));
+
+        assertThat(stepRecords.stream().map(e -> e.getIdentifier() + ":" + e.getVersion() + ":" + e.getStep().getStep()).collect(Collectors.toList()), contains("a:1.0.0:3", "b:2.0.0:0", "a:1.0.0:1"));
+        assertThat(stepRecords.get(0).getStep().getTook() == null, is(true));
+    }
+
+    @Test
+    public void readEmptyPage() throws Exception {
+        final List<MigrationEntry> migrationEntries = new ArrayList<>();
+        final Optional<Object[]> searchAfter = migrationHistoryReader.readPage(parser(WireFormat.JSON, "{}"), migrationEntries);
+
+        assertThat(migrationEntries, empty());
+        assertThat(searchAfter.isPresent(), is(false));
+    }
+
+    @Test
+    public void versionSortKeyOrder() {
+        final List<String> versions = ImmutableList.of("1.0", "1.0.0", "1.10.0", "2.0.0", "1.2.0", "10.0.0", "1.2");
+        final List<String> expected = new ArrayList<>(versions);
+        expected.sort(new VersionComparator<>(Pattern.compile("^((?:\\d+\\.)*\\d+)$"), 1, ".", e -> e));
+        final List<String> actual = new ArrayList<>(versions);
+        actual.sort((a, b) -> VersionSortKey.of(a).compareTo(VersionSortKey.of(b)));
+
+        assertThat(actual, is(expected));
+    }
+
+    /**
+     * @return a parser for the content sent in the given format, as it would be for a search response
+     */
+    private JsonParser parser(final WireFormat wireFormat, final String content) throws IOException {
+        final WireFormatCodec wireFormatCodec = new WireFormatCodec(wireFormat, objectMapper.getFactory());
+        return wireFormatCodec.createParser(wireFormatCodec.toEntity(ByteBuffer.wrap(content.getBytes(Charsets.UTF_8))));
+    }
+}
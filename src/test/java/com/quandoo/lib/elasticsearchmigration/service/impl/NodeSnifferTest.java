@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.quandoo.lib.elasticsearchmigration.model.es.NodeRole;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public class NodeSnifferTest {
+
+    private static final String NODES_HTTP = "{\"_nodes\": {\"total\": 3, \"successful\": 3, \"failed\": 0}, \"cluster_name\": \"docker-cluster\", \"nodes\": {" +
+            "\"aWdPe5RxQ_2t3GxQd2dh6A\": {\"name\": \"master-1\", \"version\": \"7.4.2\", \"roles\": [\"master\"], \"attributes\": {\"xpack.installed\": \"true\"}," +
+            " \"http\": {\"bound_address\": [\"0.0.0.0:9200\"], \"publish_address\": \"10.0.0.1:9200\"}}," +
+            "\"Xk3Vm7c1R8uYhnKqPw0Zbg\": {\"name\": \"data-1\", \"version\": \"7.4.2\", \"roles\": [\"ingest\", \"data\"], \"attributes\": {}," +
+            " \"http\": {\"bound_address\": [\"[::]:9200\", \"0.0.0.0:9200\"], \"publish_address\": \"data-1.es.local/10.0.0.2:9200\"}}," +
+            "\"bT8c7yN2Qq6Dq0J0jS1bmw\": {\"name\": \"coordinating-1\", \"version\": \"7.4.2\", \"roles\": [], \"attributes\": {}," +
+            " \"http\": {\"bound_address\": [\"0.0.0.0:9201\"], \"publish_address\": \"10.0.0.3:9201\"}}," +
+            "\"p0Hn4zJcQ9uW5xsl7a2c1Q\": {\"name\": \"no-http-1\", \"version\": \"7.4.2\", \"roles\": [\"data\"], \"attributes\": {}}" +
+            "}}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void parseNodes() throws Exception {
+        final List<Node> nodes = NodeSniffer.parseNodes(objectMapper.readTree(NODES_HTTP), "https");
+
+        assertThat(nodes.stream().map(Node::getHost).collect(Collectors.toList()), contains(
+                new HttpHost("10.0.0.1", 9200, "https"),
+                new HttpHost("data-1.es.local", 9200, "https"),
+                new HttpHost("10.0.0.3", 9201, "https")
+        ));
+        assertThat(nodes.get(0).getName(), is("master-1"));
+        assertThat(nodes.get(0).getVersion(), is("7.4.2"));
+        assertThat(nodes.get(0).getRoles().isMasterEligible(), is(true));
+        assertThat(nodes.get(0).getRoles().isData(), is(false));
+        assertThat(nodes.get(0).getAttributes().get("xpack.installed"), contains("true"));
+        assertThat(nodes.get(1).getRoles().isData(), is(true));
+        assertThat(nodes.get(1).getRoles().isIngest(), is(true));
+        assertThat(nodes.get(1).getBoundHosts(), containsInAnyOrder(new HttpHost("[::]", 9200, "https"), new HttpHost("0.0.0.0", 9200, "https")));
+    }
+
+    @Test
+    public void parseAddress() {
+        assertThat(NodeSniffer.parseAddress("10.0.0.1:9200", "http"), is(new HttpHost("10.0.0.1", 9200, "http")));
+        assertThat(NodeSniffer.parseAddress("es-1/10.0.0.1:9200", "http"), is(new HttpHost("es-1", 9200, "http")));
+        assertThat(NodeSniffer.parseAddress("/10.0.0.1:9200", "http"), is(new HttpHost("10.0.0.1", 9200, "http")));
+    }
+
+    @Test
+    public void selectNodesByRole() throws Exception {
+        final Node seed = new Node(new HttpHost("localhost", 9200));
+        final List<Node> sniffed = ImmutableList.<Node>builder()
+                .add(seed)
+                .addAll(NodeSniffer.parseNodes(objectMapper.readTree(NODES_HTTP), "http"))
+                .build();
+
+        assertThat(select(ImmutableSet.of(NodeRole.DATA, NodeRole.INGEST, NodeRole.COORDINATING_ONLY), sniffed), contains("localhost", "data-1.es.local", "10.0.0.3"));
+        assertThat(select(ImmutableSet.of(NodeRole.COORDINATING_ONLY), sniffed), contains("localhost", "10.0.0.3"));
+        assertThat(select(ImmutableSet.of(NodeRole.MASTER), sniffed), contains("localhost", "10.0.0.1"));
+        assertThat(select(ImmutableSet.of(NodeRole.INGEST), sniffed), contains("localhost", "data-1.es.local"));
+    }
+
+    @Test
+    public void failureDuringSniffRemovesNodeUntilNextSniff() throws Exception {
+        final HttpHost failedHost = new HttpHost("127.0.0.1", 1, "http");
+        try (StubElasticsearch elasticsearch = new StubElasticsearch()) {
+            final String nodesHttp = "{\"nodes\": {" +
+                    "\"live\": {\"name\": \"live\", \"roles\": [\"data\"], \"http\": {\"publish_address\": \"" + elasticsearch.getHost().toHostString() + "\"}}," +
+                    "\"failed\": {\"name\": \"failed\", \"roles\": [\"data\"], \"http\": {\"publish_address\": \"" + failedHost.toHostString() + "\"}}" +
+                    "}}";
+            elasticsearch.respondDelayed(200, nodesHttp, 500).respondByDefault(200, nodesHttp);
+            final RestClient sniffClient = RestClient.builder(elasticsearch.getHost()).build();
+            final RestClient client = RestClient.builder(elasticsearch.getHost(), failedHost).build();
+
+            try (NodeSniffer nodeSniffer = new NodeSniffer(sniffClient, ImmutableList.of(client), "http", 60000, 60000)) {
+                nodeSniffer.start();
+                waitFor(() -> elasticsearch.getRequests().size() == 1);
+
+                // The node fails while the first sniff is running, which then sets it again
+                nodeSniffer.sniffOnFailure(new Node(failedHost));
+                assertThat(hosts(client), contains(elasticsearch.getHost()));
+
+                // The sniff after the failure still runs and keeps the node out
+                waitFor(() -> elasticsearch.getRequests().size() == 2);
+                Thread.sleep(200);
+                assertThat(hosts(client), contains(elasticsearch.getHost()));
+            }
+        }
+    }
+
+    private List<HttpHost> hosts(final RestClient client) {
+        return client.getNodes().stream().map(Node::getHost).collect(Collectors.toList());
+    }
+
+    private void waitFor(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat("Condition not met in time", System.currentTimeMillis() < deadline, is(true));
+            Thread.sleep(10);
+        }
+    }
+
+    private List<String> select(final Set<NodeRole> nodeRoles, final List<Node> nodes) {
+        final List<Node> selected = new ArrayList<>(nodes);
+        new NodeRoleSelector(nodeRoles).select(selected);
+        return selected.stream().map(e -> e.getHost().getHostName()).collect(Collectors.toList());
+    }
+}
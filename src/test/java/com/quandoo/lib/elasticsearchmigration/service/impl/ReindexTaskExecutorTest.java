@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.quandoo.lib.elasticsearchmigration.exception.MigrationFailedException;
+import com.quandoo.lib.elasticsearchmigration.model.es.WireFormat;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public class ReindexTaskExecutorTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ReindexTaskExecutor reindexTaskExecutor = new ReindexTaskExecutor(
+            new RestHighLevelClient(RestClient.builder(new HttpHost("localhost", 9200, "http"))),
+            objectMapper,
+            new WireFormatCodec(WireFormat.JSON, objectMapper.getFactory())
+    );
+
+    @Test
+    public void toResult() throws Exception {
+        final ReindexTaskExecutor.ReindexResult reindexResult = reindexTaskExecutor.toResult("node:1", objectMapper.readTree(
+                "{\"completed\":true,\"response\":{\"total\":3,\"created\":2,\"updated\":1,\"deleted\":0,\"version_conflicts\":0,\"failures\":[]}}"
+        ));
+
+        assertThat(reindexResult.getTotal(), is(3L));
+        assertThat(reindexResult.getCreated(), is(2L));
+        assertThat(reindexResult.getUpdated(), is(1L));
+    }
+
+    @Test
+    public void awaitCompletionParsesSmileResponse() throws Exception {
+        final byte[] response = new ObjectMapper(new SmileFactory()).writeValueAsBytes(objectMapper.readTree(
+                "{\"completed\":true,\"response\":{\"total\":3,\"created\":3,\"failures\":[]}}"
+        ));
+        try (StubElasticsearch elasticsearch = new StubElasticsearch().respond(200, WireFormatCodec.SMILE_CONTENT_TYPE, response)) {
+            final ReindexTaskExecutor smileReindexTaskExecutor = new ReindexTaskExecutor(
+                    elasticsearch.createClient(),
+                    objectMapper,
+                    new WireFormatCodec(WireFormat.SMILE, objectMapper.getFactory())
+            );
+
+            final ReindexTaskExecutor.ReindexResult reindexResult = smileReindexTaskExecutor.awaitCompletion("node:1");
+
+            assertThat(reindexResult.getTotal(), is(3L));
+            assertThat(reindexResult.getCreated(), is(3L));
+            assertThat(elasticsearch.getRequests().get(0).getPath(), is("/_tasks/node:1"));
+        }
+    }
+
+    @Test
+    public void toResultWithFailures() throws Exception {
+        final MigrationFailedException exception = assertThrows(MigrationFailedException.class, () -> reindexTaskExecutor.toResult("node:1", objectMapper.readTree(
+                "{\"completed\":true,\"response\":{\"total\":1,\"failures\":[{\"index\":\"test_index\",\"id\":\"1\",\"cause\":{\"type\":\"mapper_parsing_exception\",\"reason\":\"failed to parse\"}}]}}"
+        )));
+
+        assertThat(exception.getMessage(), containsString("test_index/1: mapper_parsing_exception: failed to parse"));
+    }
+
+    @Test
+    public void toResultWithError() throws Exception {
+        final MigrationFailedException exception = assertThrows(MigrationFailedException.class, () -> reindexTaskExecutor.toResult("node:1", objectMapper.readTree(
+                "{\"completed\":true,\"error\":{\"type\":\"index_not_found_exception\",\"reason\":\"no such index\"}}"
+        )));
+
+        assertThat(exception.getMessage(), containsString("index_not_found_exception: no such index"));
+    }
+}
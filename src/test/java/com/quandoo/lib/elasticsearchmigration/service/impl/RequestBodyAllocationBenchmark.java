@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.google.common.io.ByteStreams;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.Option;
+import com.quandoo.lib.elasticsearchmigration.model.migration.CreateIndexMigration;
+import com.quandoo.lib.elasticsearchmigration.model.migration.Migration;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.nio.entity.NByteArrayEntity;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Compares the allocations of sending a large mapping body as String, encoded into a {@link StringEntity} and re-parsed
+ * for its parameters on every request, with sending the bytes encoded once at parse time. Not run as part of the build:
+ * <pre>
+ * java -cp target/test-classes:target/classes:&lt;test classpath&gt; com.quandoo.lib.elasticsearchmigration.service.impl.RequestBodyAllocationBenchmark [fieldCount]
+ * </pre>
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public class RequestBodyAllocationBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 200;
+    private static final int ITERATIONS = 1000;
+
+    public static void main(final String[] args) throws Exception {
+        final int fieldCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        final String definition = generateMapping(fieldCount);
+        final Migration migration = new CreateIndexMigration("benchmark_index", definition);
+        System.out.println("Generated mapping with " + fieldCount + " fields, " + definition.length() / 1024 + " KB");
+
+        run("String body", () -> {
+            final String numberOfReplicas = String.valueOf(Optional.ofNullable(
+                    JsonPath.parse(migration.getBody(), com.jayway.jsonpath.Configuration.defaultConfiguration().addOptions(Option.SUPPRESS_EXCEPTIONS))
+                            .read("$.settings.number_of_replicas")
+            ).orElse(0));
+            send(new StringEntity(migration.getBody(), ContentType.APPLICATION_JSON));
+            return numberOfReplicas.length();
+        });
+        run("Byte body", () -> {
+            final Map<String, String> parameters = migration.getParameters();
+            final ByteBuffer body = migration.getBodyBytes();
+            send(new NByteArrayEntity(body.array(), body.arrayOffset() + body.position(), body.remaining(), ContentType.APPLICATION_JSON));
+            return parameters.size();
+        });
+    }
+
+    private static void run(final String name, final Request request) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            request.perform();
+        }
+
+        final long startBytes = allocatedBytes();
+        final long startNanos = System.nanoTime();
+        long blackhole = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            blackhole += request.perform();
+        }
+        final long nanos = System.nanoTime() - startNanos;
+        final long bytes = allocatedBytes() - startBytes;
+
+        System.out.println(String.format("%s: %d KB allocated and %d us per request (%d)",
+                name,
+                bytes / ITERATIONS / 1024,
+                nanos / ITERATIONS / 1000,
+                blackhole
+        ));
+    }
+
+    private static void send(final HttpEntity entity) throws IOException {
+        entity.writeTo(ByteStreams.nullOutputStream());
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static String generateMapping(final int fieldCount) {
+        final StringBuilder mapping = new StringBuilder("{\n  \"settings\": {\n    \"number_of_replicas\": 1\n  },\n  \"mappings\": {\n    \"properties\": {\n");
+        for (int i = 0; i < fieldCount; i++) {
+            mapping.append("      \"field_").append(i).append("\": {\n        \"type\": \"keyword\",\n        \"ignore_above\": 256\n      }")
+                    .append(i < fieldCount - 1 ? ",\n" : "\n");
+        }
+        return mapping.append("    }\n  }\n}").toString();
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        long perform() throws IOException;
+    }
+}
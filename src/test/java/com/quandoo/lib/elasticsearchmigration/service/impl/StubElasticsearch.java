@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.http.HttpHost;
+import org.apache.http.entity.ContentType;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local HTTP server answering requests with canned responses, in the order they were added. Once they are used up
+ * the default response is sent.
+ *
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+class StubElasticsearch implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Deque<StubResponse> responses = new ConcurrentLinkedDeque<>();
+    private final List<StubRequest> requests = Collections.synchronizedList(new ArrayList<>());
+    private volatile StubResponse defaultResponse = new StubResponse(404, ContentType.APPLICATION_JSON, "{}".getBytes(Charsets.UTF_8), 0);
+
+    StubElasticsearch() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    StubElasticsearch respond(final int status, final String body) {
+        return respond(status, ContentType.APPLICATION_JSON, body.getBytes(Charsets.UTF_8));
+    }
+
+    StubElasticsearch respond(final int status, final ContentType contentType, final byte[] body) {
+        responses.add(new StubResponse(status, contentType, body, 0));
+        return this;
+    }
+
+    /**
+     * Sends the response only after the delay, the requests after it are answered meanwhile
+     */
+    StubElasticsearch respondDelayed(final int status, final String body, final long delayInMillis) {
+        responses.add(new StubResponse(status, ContentType.APPLICATION_JSON, body.getBytes(Charsets.UTF_8), delayInMillis));
+        return this;
+    }
+
+    StubElasticsearch respondByDefault(final int status, final String body) {
+        defaultResponse = new StubResponse(status, ContentType.APPLICATION_JSON, body.getBytes(Charsets.UTF_8), 0);
+        return this;
+    }
+
+    RestHighLevelClient createClient() {
+        return new RestHighLevelClient(RestClient.builder(getHost()));
+    }
+
+    HttpHost getHost() {
+        return new HttpHost("127.0.0.1", server.getAddress().getPort(), "http");
+    }
+
+    List<StubRequest> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        final Headers headers = new Headers();
+        headers.putAll(exchange.getRequestHeaders());
+        requests.add(new StubRequest(
+                exchange.getRequestMethod(),
+                exchange.getRequestURI().getPath(),
+                exchange.getRequestURI().getRawQuery(),
+                new String(ByteStreams.toByteArray(exchange.getRequestBody()), Charsets.UTF_8),
+                headers
+        ));
+
+        final StubResponse response = responses.isEmpty() ? defaultResponse : responses.poll();
+        if (response.getDelayInMillis() > 0) {
+            try {
+                Thread.sleep(response.getDelayInMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        final byte[] body = response.getBody();
+        exchange.getResponseHeaders().add("Content-Type", response.getContentType().toString());
+        exchange.sendResponseHeaders(response.getStatus(), body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    /**
+     * Stops answering, further requests fail as if the cluster were unreachable
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class StubResponse {
+
+        private final int status;
+        private final ContentType contentType;
+        private final byte[] body;
+        private final long delayInMillis;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static class StubRequest {
+
+        private final String method;
+        private final String path;
+        private final String query;
+        private final String body;
+        private final Headers headers;
+
+        String getHeader(final String name) {
+            return headers.getFirst(name);
+        }
+    }
+}
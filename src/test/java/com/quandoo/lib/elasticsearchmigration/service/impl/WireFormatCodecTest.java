@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2019 Quandoo GmbH (account.oss@quandoo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.quandoo.lib.elasticsearchmigration.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.quandoo.lib.elasticsearchmigration.model.es.WireFormat;
+import org.apache.http.HttpEntity;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * @author Emir Dizdarevic
+ * @since 1.4.0
+ */
+public class WireFormatCodecTest {
+
+    private static final String BODY = "{\"settings\": {\"number_of_replicas\": 1}, \"mappings\": {\"properties\": {\"user\": {\"type\": \"keyword\"}}}}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void toEntityAsJson() throws Exception {
+        final HttpEntity entity = new WireFormatCodec(WireFormat.JSON, objectMapper.getFactory()).toEntity(body());
+
+        assertThat(entity.getContentType().getValue(), is("application/json; charset=UTF-8"));
+        assertThat(entity.getContentEncoding(), nullValue());
+        assertThat(new String(ByteStreams.toByteArray(entity.getContent()), Charsets.UTF_8), is(BODY));
+    }
+
+    @Test
+    public void toEntityAsBinary() throws Exception {
+        final HttpEntity smile = new WireFormatCodec(WireFormat.SMILE, objectMapper.getFactory()).toEntity(body());
+        final HttpEntity cbor = new WireFormatCodec(WireFormat.CBOR, objectMapper.getFactory()).toEntity(body());
+
+        assertThat(smile.getContentType().getValue(), is("application/smile"));
+        assertThat(new ObjectMapper(new SmileFactory()).readTree(smile.getContent()), is(objectMapper.readTree(BODY)));
+        assertThat(cbor.getContentType().getValue(), is("application/cbor"));
+        assertThat(new ObjectMapper(new CBORFactory()).readTree(cbor.getContent()), is(objectMapper.readTree(BODY)));
+    }
+
+    @Test
+    public void toEntityCompressedFromThreshold() throws Exception {
+        final HttpEntity below = new WireFormatCodec(WireFormat.JSON, objectMapper.getFactory(), BODY.length() + 1).toEntity(body());
+        final HttpEntity above = new WireFormatCodec(WireFormat.JSON, objectMapper.getFactory(), BODY.length()).toEntity(body());
+
+        assertThat(below.getContentEncoding(), nullValue());
+        assertThat(above.getContentEncoding().getValue(), is("gzip"));
+        assertThat(above.getContentType().getValue(), is("application/json; charset=UTF-8"));
+        try (InputStream content = new GZIPInputStream(above.getContent())) {
+            assertThat(new String(ByteStreams.toByteArray(content), Charsets.UTF_8), is(BODY));
+        }
+    }
+
+    @Test
+    public void createParserByContentType() throws Exception {
+        for (WireFormat wireFormat : WireFormat.values()) {
+            final WireFormatCodec wireFormatCodec = new WireFormatCodec(wireFormat, objectMapper.getFactory());
+            // The parser is chosen by the entity, not by the configured format
+            final WireFormatCodec jsonCodec = new WireFormatCodec(WireFormat.JSON, objectMapper.getFactory());
+
+            assertThat(objectMapper.readTree(jsonCodec.createParser(wireFormatCodec.toEntity(body()))), is(objectMapper.readTree(BODY)));
+        }
+    }
+
+    private ByteBuffer body() {
+        return ByteBuffer.wrap(BODY.getBytes(Charsets.UTF_8));
+    }
+}
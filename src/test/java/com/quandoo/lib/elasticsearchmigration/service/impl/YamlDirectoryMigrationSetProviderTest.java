@@ -17,10 +17,12 @@ package com.quandoo.lib.elasticsearchmigration.service.impl;
 
 import com.quandoo.lib.elasticsearchmigration.model.migration.*;
 import com.google.common.collect.*;
+import com.quandoo.lib.elasticsearchmigration.service.MigrationMetrics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.net.*;
+import java.time.Duration;
 import java.util.*;
 import java.util.stream.*;
 
@@ -80,4 +82,102 @@ public class YamlDirectoryMigrationSetProviderTest {
         ));
 
     }
+
+    @Test
+    public void getMigrationSetWithBaseline() {
+        final MigrationSet migrationSet = yamlDirectoryMigrationSetProvider.getMigrationSet("com.quandoo.lib.elasticsearchmigration.service.impl");
+
+        assertThat(migrationSet.getBaseline().isPresent(), is(true));
+        assertThat(migrationSet.getBaseline().get().getMigrationMeta().getVersion(), is("1.2.0"));
+        assertThat(migrationSet.getBaseline().get().getMigrationMeta().getName(), is("baseline"));
+        assertThat(migrationSet.getBaseline().get().getMigration(), contains(
+                new CreateIndexMigration("test_index_1", "{}"),
+                new CreateIndexMigration("test_index_2", "{}")
+        ));
+    }
+
+    @Test
+    public void getMigrationSetRecordsPhases() {
+        final List<MigrationMetrics.Phase> phases = new ArrayList<>();
+        final MigrationMetrics metrics = new NoopMigrationMetrics() {
+            @Override
+            public void recordPhase(final Phase phase, final Duration duration) {
+                phases.add(phase);
+            }
+        };
+
+        new YamlDirectoryMigrationSetProvider(metrics).getMigrationSet("com.quandoo.lib.elasticsearchmigration.service.impl");
+
+        assertThat(phases.stream().filter(MigrationMetrics.Phase.SCAN::equals).count(), is(1L));
+        assertThat(phases.stream().filter(MigrationMetrics.Phase.SCHEMA_VALIDATION::equals).count(), is(4L));
+        assertThat(phases.stream().filter(MigrationMetrics.Phase.PARSE::equals).count(), is(4L));
+    }
+
+    @Test
+    public void getMigrationSetInParallelKeepsOrder() {
+        final MigrationSet sequential = new YamlDirectoryMigrationSetProvider(new NoopMigrationMetrics(), 1).getMigrationSet("com.quandoo.lib.elasticsearchmigration.service.impl");
+        final MigrationSet parallel = new YamlDirectoryMigrationSetProvider(new NoopMigrationMetrics(), 4).getMigrationSet("com.quandoo.lib.elasticsearchmigration.service.impl");
+
+        assertThat(parallel.getMigrations().stream().map(e -> e.getMigrationMeta().getVersion()).collect(Collectors.toList()), contains("1.0.0", "1.2.0", "1.10.0"));
+        assertThat(
+                parallel.getMigrations().stream().map(e -> e.getMigrationMeta().getSha256Checksum()).collect(Collectors.toList()),
+                equalTo(sequential.getMigrations().stream().map(e -> e.getMigrationMeta().getSha256Checksum()).collect(Collectors.toList()))
+        );
+        assertThat(
+                parallel.getMigrations().stream().flatMap(e -> e.getMigration().stream()).collect(Collectors.toList()),
+                equalTo(sequential.getMigrations().stream().flatMap(e -> e.getMigration().stream()).collect(Collectors.toList()))
+        );
+    }
+
+    @Test
+    public void getMigrationSetLazily() {
+        final List<MigrationMetrics.Phase> phases = new ArrayList<>();
+        final MigrationMetrics metrics = new NoopMigrationMetrics() {
+            @Override
+            public void recordPhase(final Phase phase, final Duration duration) {
+                phases.add(phase);
+            }
+        };
+
+        final MigrationSet eager = new YamlDirectoryMigrationSetProvider(new NoopMigrationMetrics(), 1, false).getMigrationSet("com.quandoo.lib.elasticsearchmigration.service.impl");
+        final MigrationSet lazy = new YamlDirectoryMigrationSetProvider(metrics, 1, true).getMigrationSet("com.quandoo.lib.elasticsearchmigration.service.impl");
+
+        assertThat(phases, not(hasItem(MigrationMetrics.Phase.PARSE)));
+        assertThat(
+                lazy.getMigrations().stream().map(e -> e.getMigrationMeta().getRawSha256Checksum()).collect(Collectors.toList()),
+                equalTo(eager.getMigrations().stream().map(e -> e.getMigrationMeta().getRawSha256Checksum()).collect(Collectors.toList()))
+        );
+        assertThat(lazy.getMigrations().get(0).getMigrationMeta().getRawSha256Checksum().isPresent(), is(true));
+
+        assertThat(lazy.getMigrations().get(0).getMigration(), equalTo(eager.getMigrations().get(0).getMigration()));
+        assertThat(phases.stream().filter(MigrationMetrics.Phase.PARSE::equals).count(), is(1L));
+        assertThat(lazy.getMigrations().get(0).getMigrationMeta().getSha256Checksum(), is("de6e1367a5bad35d63931ea9fc9ef2e4f53b0a6e2d3e4b5ecbea5e918d3e3917"));
+        assertThat(phases.stream().filter(MigrationMetrics.Phase.PARSE::equals).count(), is(1L));
+    }
+
+    @Test
+    public void getMigrationSetLazilyReleasesDefinitions() {
+        final List<MigrationMetrics.Phase> phases = new ArrayList<>();
+        final MigrationMetrics metrics = new NoopMigrationMetrics() {
+            @Override
+            public void recordPhase(final Phase phase, final Duration duration) {
+                phases.add(phase);
+            }
+        };
+
+        final MigrationSet lazy = new YamlDirectoryMigrationSetProvider(metrics, 1, true).getMigrationSet("com.quandoo.lib.elasticsearchmigration.service.impl");
+        final MigrationSetEntry migrationSetEntry = lazy.getMigrations().get(0);
+
+        // Only computing the checksum doesn't keep the parsed file
+        migrationSetEntry.getMigrationMeta().getSha256Checksum();
+        assertThat(phases.stream().filter(MigrationMetrics.Phase.PARSE::equals).count(), is(1L));
+        final List<Migration> migrations = migrationSetEntry.getMigration();
+        assertThat(phases.stream().filter(MigrationMetrics.Phase.PARSE::equals).count(), is(2L));
+        assertThat(migrationSetEntry.getMigration(), sameInstance(migrations));
+
+        migrationSetEntry.release();
+        assertThat(migrationSetEntry.getMigration(), equalTo(migrations));
+        assertThat(migrationSetEntry.getMigration(), not(sameInstance(migrations)));
+        assertThat(phases.stream().filter(MigrationMetrics.Phase.PARSE::equals).count(), is(3L));
+    }
 }
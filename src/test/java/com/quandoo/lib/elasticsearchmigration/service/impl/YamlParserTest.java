@@ -17,6 +17,7 @@ package com.quandoo.lib.elasticsearchmigration.service.impl;
 
 import com.quandoo.lib.elasticsearchmigration.exception.InvalidSchemaException;
 import com.quandoo.lib.elasticsearchmigration.model.input.AliasesMigrationFileEntry;
+import com.quandoo.lib.elasticsearchmigration.model.input.BulkLoadMigrationFileEntry;
 import com.quandoo.lib.elasticsearchmigration.model.input.ChecksumedMigrationFile;
 import com.quandoo.lib.elasticsearchmigration.model.input.CreateIndexMigrationFileEntry;
 import com.quandoo.lib.elasticsearchmigration.model.input.CreateIngestPipelineMigrationFileEntry;
@@ -72,6 +73,28 @@ public class YamlParserTest {
         ));
     }
 
+    @Test
+    public void parseBulkLoad() throws URISyntaxException {
+        final YamlParser yamlParser = new YamlParser();
+        final ChecksumedMigrationFile checksumedMigrationFile = yamlParser.parse("bulk_load.yaml");
+
+        assertThat(checksumedMigrationFile.getMigrationFile().getMigrations(), contains(
+                instanceOf(BulkLoadMigrationFileEntry.class)
+        ));
+
+        assertThat(checksumedMigrationFile.getSha256Checksum(), is(
+                "172b74b30800e4cf420e750bc944299b86554a06c2eab1dec1e2786ca2106c8f"
+        ));
+    }
+
+    @Test
+    public void parseBulkLoadMissingFile() throws URISyntaxException {
+        assertThrows(InvalidSchemaException.class, () -> {
+            final YamlParser yamlParser = new YamlParser();
+            yamlParser.parse("bulk_load_missing_file.yaml");
+        });
+    }
+
     @Test
     public void parseFailure() throws URISyntaxException {
         assertThrows(InvalidSchemaException.class, () -> {